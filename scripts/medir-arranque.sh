@@ -0,0 +1,91 @@
+#!/usr/bin/env bash
+# Mide el tiempo desde que se lanza la JVM hasta la primera respuesta 200 de la aplicación,
+# en tres modos de arranque:
+#   normal   java -jar con el JAR empaquetado, como el Dockerfile anterior
+#   cds      JAR extraído + archivo AppCDS generado con una ejecución de entrenamiento
+#   aot-cds  lo mismo con el contexto procesado por Spring AOT (perfil Maven "aot"), como el Dockerfile actual
+#
+# Uso: scripts/medir-arranque.sh [repeticiones]          (por defecto 5)
+#
+# Variables de entorno:
+#   URL          petición a medir (por defecto http://localhost:8083/fiados/listar)
+#   JAVA         ejecutable de Java 21 (por defecto java)
+#   EXTRA_ARGS   argumentos extra para la JVM en cada arranque medido
+#   SPRING_DATASOURCE_URL, SPRING_DATASOURCE_USERNAME, SPRING_DATASOURCE_PASSWORD  base de datos a usar
+#
+# Sin base de datos se puede medir igual el arranque contra /actuator/info:
+#   URL=http://localhost:8083/actuator/info EXTRA_ARGS="$(echo -Dfiados.arranque.entrenamiento=true \
+#     -Dspring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false \
+#     -Dspring.jpa.database-platform=org.hibernate.dialect.MySQLDialect)" scripts/medir-arranque.sh
+set -euo pipefail
+
+REPETICIONES="${1:-5}"
+URL="${URL:-http://localhost:8083/fiados/listar}"
+JAVA="${JAVA:-java}"
+EXTRA_ARGS="${EXTRA_ARGS:-}"
+JAR=fiados-0.0.1-SNAPSHOT.jar
+RAIZ="$(cd "$(dirname "$0")/.." && pwd)"
+DESTINO="$RAIZ/target/arranque"
+
+# Misma configuración que la ejecución de entrenamiento del Dockerfile: arranca sin base de datos
+# y termina en cuanto el contexto se refresca.
+ENTRENAMIENTO="-Dspring.context.exit=onRefresh -Dfiados.arranque.entrenamiento=true \
+-Dspring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false \
+-Dspring.jpa.database-platform=org.hibernate.dialect.MySQLDialect"
+
+preparar() {
+    local modo="$1" perfil="$2" aot="$3"
+    echo "Preparando modo $modo..." >&2
+    (cd "$RAIZ" && ./mvnw -q $perfil package -DskipTests)
+    rm -rf "$DESTINO/$modo"
+    mkdir -p "$DESTINO/$modo"
+    if [ "$modo" = normal ]; then
+        cp "$RAIZ/target/$JAR" "$DESTINO/$modo/"
+        return
+    fi
+    "$JAVA" -Djarmode=tools -jar "$RAIZ/target/$JAR" extract --destination "$DESTINO/$modo/app"
+    (cd "$DESTINO/$modo/app" && "$JAVA" -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled="$aot" \
+        $ENTRENAMIENTO -jar "$JAR" > entrenamiento.log 2>&1)
+}
+
+# Imprime los milisegundos hasta la primera respuesta 200 de $URL.
+medir() {
+    local modo="$1" directorio args
+    case "$modo" in
+        normal)  directorio="$DESTINO/normal"; args="" ;;
+        cds)     directorio="$DESTINO/cds/app"; args="-XX:SharedArchiveFile=app.jsa" ;;
+        aot-cds) directorio="$DESTINO/aot-cds/app"; args="-XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true" ;;
+    esac
+    local inicio fin pid
+    inicio=$(date +%s%N)
+    (cd "$directorio" && exec "$JAVA" $args $EXTRA_ARGS -jar "$JAR" > "$DESTINO/$modo.log" 2>&1) &
+    pid=$!
+    until curl -sf -o /dev/null "$URL"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "La aplicación terminó antes de responder; ver $DESTINO/$modo.log" >&2
+            exit 1
+        fi
+        sleep 0.02
+    done
+    fin=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo $(( (fin - inicio) / 1000000 ))
+}
+
+mediana() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+preparar normal "" false
+preparar cds "" false
+preparar aot-cds "-Paot" true
+
+printf "%-8s %10s   %s\n" modo "mediana" "tiempos (ms) hasta la primera respuesta de $URL"
+for modo in normal cds aot-cds; do
+    tiempos=()
+    for _ in $(seq "$REPETICIONES"); do
+        tiempos+=("$(medir "$modo")")
+    done
+    printf "%-8s %8s ms   %s\n" "$modo" "$(printf '%s\n' "${tiempos[@]}" | mediana)" "${tiempos[*]}"
+done
@@ -0,0 +1,92 @@
+package com.crudmysql.fiados.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Compara JSON, Smile y CBOR para las listas de fiados que devuelve /fiados/listar:
+ * tiempo de serialización y de lectura, y bytes enviados con y sin gzip.
+ * Los ObjectMapper se arman igual que en FormatosBinariosConfig: el mismo builder con otra fábrica.
+ *
+ * Los bytes no son un tiempo y JMH no los reporta; se imprimen una vez por combinación al iniciar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiadosFormatosBenchmark {
+
+    @Param({ "json", "smile", "cbor" })
+    public String formato;
+
+    @Param({ "1000", "100000" })
+    public int tamano;
+
+    private ObjectMapper objectMapper;
+    private ArrayList<FiadosModel> fiados;
+    private byte[] serializado;
+
+    @Setup
+    public void iniciar() throws Exception {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        objectMapper = switch (formato) {
+            case "smile" -> builder.factory(new SmileFactory()).build();
+            case "cbor" -> builder.factory(new CBORFactory()).build();
+            default -> builder.build();
+        };
+        fiados = new ArrayList<>(FiadosServiceBenchmark.generarFiados(tamano,
+                new SplittableRandom(FiadosServiceBenchmark.SEMILLA)));
+        long id = 1;
+        for (FiadosModel fiado : fiados) {
+            fiado.setId(id++);
+            fiado.setVersion(0L);
+        }
+        serializado = objectMapper.writeValueAsBytes(fiados);
+        System.out.printf("%n%s, %d fiados: %d bytes, %d bytes con gzip%n",
+                formato, tamano, serializado.length, comprimido(serializado));
+    }
+
+    @Benchmark
+    public byte[] serializar() throws Exception {
+        return objectMapper.writeValueAsBytes(fiados);
+    }
+
+    @Benchmark
+    public ArrayList<FiadosModel> deserializar() throws Exception {
+        return objectMapper.readValue(serializado, new TypeReference<ArrayList<FiadosModel>>() { });
+    }
+
+    private static int comprimido(byte[] datos) throws IOException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(salida)) {
+            gzip.write(datos);
+        }
+        return salida.size();
+    }
+
+}
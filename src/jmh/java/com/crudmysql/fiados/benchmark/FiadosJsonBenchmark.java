@@ -0,0 +1,66 @@
+package com.crudmysql.fiados.benchmark;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Mide la serialización y lectura con Jackson de listas grandes de fiados,
+ * como las que devuelve /fiados/listar. El ObjectMapper se arma con
+ * Jackson2ObjectMapperBuilder, igual que el que configura Spring Boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiadosJsonBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int tamano;
+
+    private ObjectMapper objectMapper;
+    private ArrayList<FiadosModel> fiados;
+    private byte[] json;
+
+    @Setup
+    public void iniciar() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        fiados = new ArrayList<>(FiadosServiceBenchmark.generarFiados(tamano,
+                new SplittableRandom(FiadosServiceBenchmark.SEMILLA)));
+        long id = 1;
+        for (FiadosModel fiado : fiados) {
+            fiado.setId(id++);
+        }
+        json = objectMapper.writeValueAsBytes(fiados);
+    }
+
+    @Benchmark
+    public byte[] serializar() throws Exception {
+        return objectMapper.writeValueAsBytes(fiados);
+    }
+
+    @Benchmark
+    public ArrayList<FiadosModel> deserializar() throws Exception {
+        return objectMapper.readValue(json, new TypeReference<ArrayList<FiadosModel>>() { });
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.crudmysql.fiados.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.crudmysql.fiados.FiadosApplication;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.services.FiadosService;
+
+/**
+ * Mide las operaciones principales de FiadosService contra una base H2 en memoria
+ * (perfil "test", modo MySQL) con el contexto de Spring completo, incluidos JPA y la caché.
+ * Los datos se generan con una semilla fija para que las corridas sean comparables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiadosServiceBenchmark {
+
+    static final long SEMILLA = 42L;
+
+    @Param({ "10000" })
+    public int filas;
+
+    // "caffeine" mide obtenerPorId con la caché; "none" mide el camino hasta la base.
+    @Param({ "caffeine", "none" })
+    public String cache;
+
+    private ConfigurableApplicationContext contexto;
+    private FiadosService fiadosService;
+    private List<Long> ids;
+    private SplittableRandom azar;
+
+    @Setup(Level.Trial)
+    public void iniciar() {
+        contexto = new SpringApplicationBuilder(FiadosApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                // Como argumentos de línea de comandos, para que tengan prioridad sobre application.properties.
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.cache.type=" + cache,
+                        "--logging.level.root=WARN");
+        fiadosService = contexto.getBean(FiadosService.class);
+        ids = fiadosService.guardarLote(generarFiados(filas, new SplittableRandom(SEMILLA))).ids();
+        azar = new SplittableRandom(SEMILLA);
+    }
+
+    @TearDown(Level.Trial)
+    public void terminar() {
+        contexto.close();
+    }
+
+    @Benchmark
+    public ArrayList<FiadosModel> obtenerFiados() {
+        return fiadosService.obtenerFiados();
+    }
+
+    @Benchmark
+    public FiadosModel obtenerPorId() {
+        return fiadosService.obtenerPorId(ids.get(azar.nextInt(ids.size())));
+    }
+
+    @Benchmark
+    public FiadosModel guardarFiado() {
+        return fiadosService.guardarFiado(generarFiado(azar));
+    }
+
+    static List<FiadosModel> generarFiados(int cantidad, SplittableRandom azar) {
+        List<FiadosModel> fiados = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            fiados.add(generarFiado(azar));
+        }
+        return fiados;
+    }
+
+    static FiadosModel generarFiado(SplittableRandom azar) {
+        FiadosModel fiado = new FiadosModel();
+        fiado.setNombreCliente("Cliente " + azar.nextInt(2_000));
+        fiado.setMonto(BigDecimal.valueOf(azar.nextLong(100, 1_000_000), 2));
+        fiado.setFecha(LocalDate.of(2024, 1, 1).plusDays(azar.nextInt(365)));
+        fiado.setEstado(azar.nextInt(3) == 0 ? "Pagado" : "Pendiente");
+        return fiado;
+    }
+
+}
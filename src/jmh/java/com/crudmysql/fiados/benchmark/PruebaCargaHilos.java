@@ -0,0 +1,129 @@
+package com.crudmysql.fiados.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.crudmysql.fiados.FiadosApplication;
+import com.crudmysql.fiados.services.FiadosService;
+
+/**
+ * Prueba de carga que compara el modo de hilos de plataforma con el de hilos virtuales.
+ * Levanta la aplicación dos veces sobre H2 (perfil "test", sin caché para que cada petición
+ * llegue a la base) y la somete a la misma carga mixta: 80% obtenerPorId y 20% listar/pagina.
+ * Informa peticiones por segundo, percentiles de latencia y rechazos (503) de cada modo.
+ *
+ * Se ejecuta con:
+ *   ./mvnw -Pbenchmark test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.crudmysql.fiados.benchmark.PruebaCargaHilos
+ * Parámetros opcionales (propiedades del sistema): carga.clientes, carga.segundos, carga.hilosTomcat.
+ */
+public class PruebaCargaHilos {
+
+    private static final int FILAS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int clientes = Integer.getInteger("carga.clientes", 400);
+        int segundos = Integer.getInteger("carga.segundos", 20);
+        int hilosTomcat = Integer.getInteger("carga.hilosTomcat", 200);
+
+        List<String> informes = new ArrayList<>();
+        for (boolean virtuales : new boolean[] { false, true }) {
+            ConfigurableApplicationContext contexto = new SpringApplicationBuilder(FiadosApplication.class)
+                    .profiles("test")
+                    .run("--server.port=0",
+                            "--spring.threads.virtual.enabled=" + virtuales,
+                            "--server.tomcat.threads.max=" + hilosTomcat,
+                            "--spring.cache.type=none",
+                            "--logging.level.root=WARN");
+            try {
+                contexto.getBean(FiadosService.class)
+                        .guardarLote(FiadosServiceBenchmark.generarFiados(FILAS, new SplittableRandom(42)));
+                int puerto = ((WebServerApplicationContext) contexto).getWebServer().getPort();
+                // Una pasada corta de calentamiento antes de medir.
+                cargar(puerto, clientes, Duration.ofSeconds(Math.max(1, segundos / 4)));
+                Resultado resultado = cargar(puerto, clientes, Duration.ofSeconds(segundos));
+                informes.add((virtuales ? "virtuales  " : "plataforma ") + resultado);
+            } finally {
+                contexto.close();
+            }
+        }
+        System.out.println();
+        System.out.println("modo       clientes=" + clientes + " segundos=" + segundos + " hilosTomcat=" + hilosTomcat);
+        informes.forEach(System.out::println);
+    }
+
+    private static Resultado cargar(int puerto, int clientes, Duration duracion) throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long fin = System.nanoTime() + duracion.toNanos();
+        AtomicLong rechazos = new AtomicLong();
+        List<long[]> latenciasPorCliente = new ArrayList<>();
+        List<Thread> hilos = new ArrayList<>();
+        for (int c = 0; c < clientes; c++) {
+            long[][] propias = { new long[1024] };
+            int[] cantidad = { 0 };
+            SplittableRandom azar = new SplittableRandom(c);
+            hilos.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < fin) {
+                    String ruta = azar.nextInt(5) == 0
+                            ? "/fiados/listar/pagina?limite=100&despuesDe=" + azar.nextInt(FILAS)
+                            : "/fiados/obtenerPorId/" + (1 + azar.nextInt(FILAS));
+                    long inicio = System.nanoTime();
+                    try {
+                        HttpResponse<Void> respuesta = http.send(
+                                HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + ruta)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (respuesta.statusCode() != 200) {
+                            rechazos.incrementAndGet();
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        rechazos.incrementAndGet();
+                        continue;
+                    }
+                    if (cantidad[0] == propias[0].length) {
+                        propias[0] = Arrays.copyOf(propias[0], cantidad[0] * 2);
+                    }
+                    propias[0][cantidad[0]++] = System.nanoTime() - inicio;
+                }
+                synchronized (latenciasPorCliente) {
+                    latenciasPorCliente.add(Arrays.copyOf(propias[0], cantidad[0]));
+                }
+            }));
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        long[] latencias = latenciasPorCliente.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Resultado(latencias, rechazos.get(), duracion);
+    }
+
+    private record Resultado(long[] latencias, long rechazos, Duration duracion) {
+
+        private double percentilMs(double p) {
+            if (latencias.length == 0) {
+                return Double.NaN;
+            }
+            return latencias[(int) Math.min(latencias.length - 1, Math.ceil(p * latencias.length) - 1)] / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("peticiones/s=%.0f p50=%.2fms p99=%.2fms p999=%.2fms rechazos=%d",
+                    latencias.length / (double) duracion.toSeconds(),
+                    percentilMs(0.50), percentilMs(0.99), percentilMs(0.999), rechazos);
+        }
+    }
+
+}
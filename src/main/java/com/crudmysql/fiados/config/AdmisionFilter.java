@@ -0,0 +1,277 @@
+package com.crudmysql.fiados.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Control de admisión de /fiados: cada petición se acepta o se rechaza apenas llega, sin esperar
+ * turno, para que los scripts que piden listados completos no agoten el pool de Hikari y dejen a
+ * las cajas esperando conexión.
+ *
+ * - Algunos endpoints tienen su propio tope de peticiones en curso (fiados.admision.limites.*);
+ *   pasado ese tope la petición recibe 429.
+ * - Todas comparten un límite adaptativo (LimiteAdaptativo) que baja cuando las respuestas de las
+ *   cajas y las consultas comunes se vuelven lentas y sube cuando vuelven a ser rápidas. Cada clase
+ *   de prioridad puede ocupar solo su cuota del límite: los listados masivos la mitad, las consultas
+ *   comunes el 80 %, y lo que queda es siempre de las cajas. Pasada su cuota la petición recibe 503.
+ *
+ * Los rechazos llevan Retry-After. Las respuestas en streaming ocupan su lugar hasta terminar de
+ * escribirse, pero no cuentan para la latencia. /fiados/cambios no pasa por aquí: sus conexiones
+ * duran horas y solo usan la base para la instantánea inicial, que CanalCambiosFiados acota por su
+ * cuenta. Corre antes que LimiteConcurrenciaFilter, que con hilos virtuales
+ * sigue limitando cuántas de las peticiones admitidas tocan la base a la vez.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+@ConditionalOnProperty(name = "fiados.admision.habilitada", havingValue = "true")
+@EnableConfigurationProperties(AdmisionProperties.class)
+public class AdmisionFilter extends OncePerRequestFilter {
+
+    // De mayor a menor prioridad.
+    public enum Prioridad {
+        // Lo que usan las cajas en cada venta: alta, consulta y cambios de un fiado.
+        CAJA,
+        // Búsquedas, páginas y resúmenes.
+        GENERAL,
+        // Listados completos, exportación, importación, altas y bajas en lote y tareas de mantenimiento.
+        MASIVA
+    }
+
+    private record Regla(HttpMethod metodo, PathPattern patron, String nombre, Prioridad prioridad) {
+    }
+
+    private static final Regla GENERAL = new Regla(null, null, null, Prioridad.GENERAL);
+
+    private static final List<Regla> REGLAS = List.of(
+            regla(HttpMethod.GET, "/fiados/obtenerPorId/{id}", "obtener-por-id", Prioridad.CAJA),
+            regla(HttpMethod.POST, "/fiados/guardar", "guardar", Prioridad.CAJA),
+            regla(HttpMethod.PATCH, "/fiados/{id}", "actualizar", Prioridad.CAJA),
+            regla(HttpMethod.DELETE, "/fiados/eliminar/{id}", "eliminar", Prioridad.CAJA),
+            regla(HttpMethod.POST, "/fiados/marcarPagados", "marcar-pagados", Prioridad.CAJA),
+            regla(HttpMethod.GET, "/fiados/clientes/buscar", "buscar-clientes", Prioridad.CAJA),
+            regla(HttpMethod.GET, "/fiados/listar", "listar", Prioridad.MASIVA),
+            regla(HttpMethod.GET, "/fiados/listar/stream", "listar-stream", Prioridad.MASIVA),
+            regla(HttpMethod.GET, "/fiados/exportar", "exportar", Prioridad.MASIVA),
+            regla(HttpMethod.POST, "/fiados/importar", "importar", Prioridad.MASIVA),
+            regla(HttpMethod.POST, "/fiados/guardarLote", "guardar-lote", Prioridad.MASIVA),
+            regla(HttpMethod.DELETE, "/fiados/eliminar", "eliminar-lote", Prioridad.MASIVA),
+            regla(HttpMethod.POST, "/fiados/resumenes/verificar", "verificar-resumenes", Prioridad.MASIVA),
+            regla(HttpMethod.POST, "/fiados/tiendas/{tienda}/mover", "mover-tienda", Prioridad.MASIVA));
+
+    private final LimiteAdaptativo limite;
+    private final Map<Prioridad, Double> cuotas = new EnumMap<>(Prioridad.class);
+    private final Map<String, Semaphore> porEndpoint = new HashMap<>();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final Map<Prioridad, AtomicInteger> enCursoPorPrioridad = new EnumMap<>(Prioridad.class);
+    private final Map<Prioridad, Counter> rechazosSobrecarga = new EnumMap<>(Prioridad.class);
+    private final Map<Prioridad, Counter> rechazosEndpoint = new EnumMap<>(Prioridad.class);
+    private final long reintentarSobrecarga;
+    private final long reintentarEndpoint;
+
+    public AdmisionFilter(AdmisionProperties propiedades, MeterRegistry meterRegistry) {
+        this.limite = new LimiteAdaptativo(propiedades.limiteInicial(), propiedades.limiteMinimo(),
+                propiedades.limiteMaximo(), propiedades.tolerancia(), propiedades.latenciaAceptable());
+        cuotas.put(Prioridad.CAJA, 1.0);
+        cuotas.put(Prioridad.GENERAL, propiedades.cuotaGeneral());
+        cuotas.put(Prioridad.MASIVA, propiedades.cuotaMasiva());
+        propiedades.limites().forEach((nombre, maximo) -> {
+            if (REGLAS.stream().noneMatch(regla -> regla.nombre().equals(nombre))) {
+                throw new IllegalStateException("Endpoint desconocido en fiados.admision.limites: " + nombre);
+            }
+            porEndpoint.put(nombre, new Semaphore(maximo));
+        });
+        this.reintentarSobrecarga = segundos(propiedades.reintentarSobrecarga());
+        this.reintentarEndpoint = segundos(propiedades.reintentarEndpoint());
+
+        Gauge.builder("fiados.admision.limite", limite, LimiteAdaptativo::actual)
+                .description("Peticiones a /fiados en curso que admite el límite adaptativo")
+                .register(meterRegistry);
+        Gauge.builder("fiados.admision.latencia.base", limite, LimiteAdaptativo::latenciaBaseMilisegundos)
+                .description("Latencia sin carga que usa el límite adaptativo")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        for (Prioridad prioridad : Prioridad.values()) {
+            String clase = prioridad.name().toLowerCase();
+            AtomicInteger contador = new AtomicInteger();
+            enCursoPorPrioridad.put(prioridad, contador);
+            Gauge.builder("fiados.admision.en.curso", contador, AtomicInteger::get)
+                    .description("Peticiones a /fiados admitidas que siguen en curso")
+                    .tag("prioridad", clase)
+                    .register(meterRegistry);
+            rechazosSobrecarga.put(prioridad, Counter.builder("fiados.admision.rechazos")
+                    .description("Peticiones a /fiados rechazadas por el control de admisión")
+                    .tags("prioridad", clase, "motivo", "sobrecarga")
+                    .register(meterRegistry));
+            rechazosEndpoint.put(prioridad, Counter.builder("fiados.admision.rechazos")
+                    .description("Peticiones a /fiados rechazadas por el control de admisión")
+                    .tags("prioridad", clase, "motivo", "endpoint")
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String ruta = ruta(request);
+        return !ruta.startsWith("/fiados") || ruta.equals("/fiados/cambios");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Regla regla = clasificar(request);
+        Prioridad prioridad = regla.prioridad();
+        Semaphore delEndpoint = regla.nombre() != null ? porEndpoint.get(regla.nombre()) : null;
+        if (delEndpoint != null && !delEndpoint.tryAcquire()) {
+            rechazosEndpoint.get(prioridad).increment();
+            rechazar(response, HttpStatus.TOO_MANY_REQUESTS, reintentarEndpoint,
+                    "Demasiadas peticiones en curso a este endpoint");
+            return;
+        }
+        if (!admitir(prioridad)) {
+            if (delEndpoint != null) {
+                delEndpoint.release();
+            }
+            rechazosSobrecarga.get(prioridad).increment();
+            rechazar(response, HttpStatus.SERVICE_UNAVAILABLE, reintentarSobrecarga, "Servicio sobrecargado");
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        boolean fallida = true;
+        try {
+            chain.doFilter(request, response);
+            fallida = false;
+        } finally {
+            if (request.isAsyncStarted()) {
+                // La respuesta se sigue escribiendo en otro hilo: el lugar se libera cuando termina.
+                request.getAsyncContext().addListener(new Liberar(prioridad, delEndpoint));
+            } else {
+                // Los listados masivos tardan por su tamaño, no por la carga: solo miden las demás.
+                if (prioridad != Prioridad.MASIVA) {
+                    long fin = System.nanoTime();
+                    limite.registrar(fin - inicio, fin, fallida || response.getStatus() >= 500, enCurso.get());
+                }
+                liberar(prioridad, delEndpoint);
+            }
+        }
+    }
+
+    // Ocupa un lugar si hay menos peticiones en curso que la cuota de la prioridad en el límite actual.
+    private boolean admitir(Prioridad prioridad) {
+        int tope = Math.max(1, (int) (limite.actual() * cuotas.get(prioridad)));
+        while (true) {
+            int actual = enCurso.get();
+            if (actual >= tope) {
+                return false;
+            }
+            if (enCurso.compareAndSet(actual, actual + 1)) {
+                enCursoPorPrioridad.get(prioridad).incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private void liberar(Prioridad prioridad, Semaphore delEndpoint) {
+        enCursoPorPrioridad.get(prioridad).decrementAndGet();
+        enCurso.decrementAndGet();
+        if (delEndpoint != null) {
+            delEndpoint.release();
+        }
+    }
+
+    private static void rechazar(HttpServletResponse response, HttpStatus estado, long reintentarEn, String mensaje)
+            throws IOException {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(reintentarEn));
+        response.sendError(estado.value(), mensaje);
+    }
+
+    private static Regla clasificar(HttpServletRequest request) {
+        PathContainer ruta = PathContainer.parsePath(ruta(request));
+        for (Regla regla : REGLAS) {
+            if (regla.metodo().matches(request.getMethod()) && regla.patron().matches(ruta)) {
+                return regla;
+            }
+        }
+        return GENERAL;
+    }
+
+    private static String ruta(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static Regla regla(HttpMethod metodo, String patron, String nombre, Prioridad prioridad) {
+        return new Regla(metodo, PathPatternParser.defaultInstance.parse(patron), nombre, prioridad);
+    }
+
+    // Retry-After va en segundos enteros.
+    private static long segundos(Duration espera) {
+        return Math.max(1, (espera.toMillis() + 999) / 1000);
+    }
+
+    // Libera el lugar de una respuesta asíncrona (streaming) al completarse, fallar o vencer.
+    private final class Liberar implements AsyncListener {
+
+        private final Prioridad prioridad;
+        private final Semaphore delEndpoint;
+        private boolean liberado;
+
+        private Liberar(Prioridad prioridad, Semaphore delEndpoint) {
+            this.prioridad = prioridad;
+            this.delEndpoint = delEndpoint;
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            if (!liberado) {
+                liberado = true;
+                liberar(prioridad, delEndpoint);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            onComplete(event);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onComplete(event);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Un nuevo ciclo asíncrono quita los listeners: hay que volver a registrarse.
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.crudmysql.fiados.config;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuración del control de admisión de /fiados (fiados.admision.*).
+ *
+ * @param habilitada            activa AdmisionFilter
+ * @param limiteInicial         peticiones en curso permitidas al arrancar, antes de medir latencias
+ * @param limiteMinimo          el límite adaptativo nunca baja de aquí
+ * @param limiteMaximo          ni sube de aquí
+ * @param latenciaAceptable     una respuesta más rápida que esto nunca cuenta como lenta
+ * @param tolerancia            una respuesta es lenta si tarda más que tolerancia veces la latencia sin carga
+ * @param cuotaGeneral          parte del límite que pueden ocupar las consultas comunes
+ * @param cuotaMasiva           parte del límite que pueden ocupar los listados completos, exportaciones e
+ *                              importaciones; el resto queda siempre para las cajas
+ * @param limites               peticiones en curso por endpoint, con el nombre que le da AdmisionFilter
+ * @param reintentarSobrecarga  Retry-After de las respuestas 503 por sobrecarga
+ * @param reintentarEndpoint    Retry-After de las respuestas 429 por el límite de un endpoint
+ */
+@ConfigurationProperties("fiados.admision")
+public record AdmisionProperties(
+        @DefaultValue("false") boolean habilitada,
+        @DefaultValue("20") int limiteInicial,
+        @DefaultValue("4") int limiteMinimo,
+        @DefaultValue("200") int limiteMaximo,
+        @DefaultValue("50ms") Duration latenciaAceptable,
+        @DefaultValue("2.0") double tolerancia,
+        @DefaultValue("0.8") double cuotaGeneral,
+        @DefaultValue("0.5") double cuotaMasiva,
+        @DefaultValue Map<String, Integer> limites,
+        @DefaultValue("1s") Duration reintentarSobrecarga,
+        @DefaultValue("5s") Duration reintentarEndpoint) {
+}
@@ -0,0 +1,28 @@
+package com.crudmysql.fiados.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Ajustes del arranque.
+ *
+ * Con fiados.arranque.entrenamiento=true la aplicación arranca sin base de datos: no aplica las
+ * migraciones (y Hibernate, con hibernate.boot.allow_jdbc_metadata_access=false, no consulta la
+ * base). Lo usa el Dockerfile para la ejecución de entrenamiento que genera el archivo CDS, que
+ * corre durante la construcción de la imagen y termina apenas el contexto se refresca.
+ */
+@Configuration
+public class ArranqueConfig {
+
+    @Bean
+    FlywayMigrationStrategy estrategiaMigracion(@Value("${fiados.arranque.entrenamiento:false}") boolean entrenamiento) {
+        return flyway -> {
+            if (!entrenamiento) {
+                flyway.migrate();
+            }
+        };
+    }
+
+}
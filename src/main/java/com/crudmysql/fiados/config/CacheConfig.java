@@ -0,0 +1,54 @@
+package com.crudmysql.fiados.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.CaffeineCacheMeterBinderProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Activa las anotaciones de caché (@Cacheable, @CachePut, @CacheEvict).
+ * El proveedor y sus límites se configuran con spring.cache.* en application.properties.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String CACHE_FIADOS = "fiados";
+
+    /**
+     * Envuelve el CacheManager para que, dentro de una transacción, @CachePut y @CacheEvict se apliquen
+     * recién después del commit. Si no, una lectura concurrente podía volver a guardar la fila anterior
+     * entre el desalojo y el commit, y un rollback dejaba en la caché un valor que nunca se guardó.
+     * Fuera de una transacción se aplican en el momento, como antes.
+     *
+     * Por dentro, cada caché es una CacheSellada: un @Cacheable que leyó la base antes del commit y
+     * guarda después del desalojo no deja la fila anterior hasta que venza (5 minutos).
+     */
+    @Bean
+    static BeanPostProcessor cacheTransaccional() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String nombre) {
+                if (bean instanceof CacheManager cacheManager && !(bean instanceof TransactionAwareCacheManagerProxy)) {
+                    return new TransactionAwareCacheManagerProxy(CacheSellada.envolver(cacheManager));
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Las métricas de la caché (cache_gets_total, ...) se toman de la Caffeine que envuelve CacheSellada.
+    @Bean
+    CacheMeterBinderProvider<CacheSellada> metricasCacheSellada() {
+        CaffeineCacheMeterBinderProvider caffeine = new CaffeineCacheMeterBinderProvider();
+        return (cache, etiquetas) -> cache.objetivo() instanceof CaffeineCache objetivo
+                ? caffeine.getMeterBinder(objetivo, etiquetas)
+                : null;
+    }
+
+}
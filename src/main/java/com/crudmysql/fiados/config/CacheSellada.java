@@ -0,0 +1,174 @@
+package com.crudmysql.fiados.config;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Caché que no deja que un @Cacheable guarde un valor leído antes de un desalojo posterior.
+ *
+ * Cada clave tiene un sello (una franja de FRANJAS contadores, por el hash de la clave) que sube con
+ * cada evict, clear y put que no completa un fallo. Al fallar un get se anota en el hilo la clave y
+ * su sello; el put que completa ese fallo se descarta si el sello cambió mientras se leía la base,
+ * y si cambia justo después de guardarlo el valor se vuelve a quitar. Descartar de más solo cuesta
+ * otra ida a la base. Dentro de TransactionAwareCacheManagerProxy, los desalojos llegan aquí
+ * después del commit, que es cuando los sellos tienen que subir.
+ */
+final class CacheSellada implements Cache {
+
+    // Dos claves que comparten franja se invalidan juntas: como mucho, un fallo de más.
+    private static final int FRANJAS = 1024;
+
+    /** Fallo de caché del hilo, pendiente del put que lo completa. */
+    private record Fallo(Object clave, long sello) {
+    }
+
+    private final Cache cache;
+    private final AtomicLongArray sellos = new AtomicLongArray(FRANJAS);
+    private final ThreadLocal<Fallo> fallo = new ThreadLocal<>();
+
+    CacheSellada(Cache cache) {
+        this.cache = cache;
+    }
+
+    /** Envuelve cada caché del administrador en una CacheSellada. */
+    static CacheManager envolver(CacheManager cacheManager) {
+        ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+        return new CacheManager() {
+            @Override
+            public Cache getCache(String nombre) {
+                Cache cache = cacheManager.getCache(nombre);
+                return cache == null ? null : caches.computeIfAbsent(nombre, n -> new CacheSellada(cache));
+            }
+
+            @Override
+            public Collection<String> getCacheNames() {
+                return cacheManager.getCacheNames();
+            }
+        };
+    }
+
+    Cache objetivo() {
+        return cache;
+    }
+
+    @Override
+    public String getName() {
+        return cache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return cache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object clave) {
+        // El sello se toma antes de leer la caché: un desalojo que llegue después se nota en el put.
+        long sello = sello(clave);
+        ValueWrapper valor = cache.get(clave);
+        if (valor == null) {
+            fallo.set(new Fallo(clave, sello));
+        } else {
+            fallo.remove();
+        }
+        return valor;
+    }
+
+    @Override
+    public <T> T get(Object clave, Class<T> tipo) {
+        return cache.get(clave, tipo);
+    }
+
+    // La carga la hace la caché de fondo (con Caffeine, atómica respecto de los desalojos de la clave).
+    @Override
+    public <T> T get(Object clave, Callable<T> cargador) {
+        return cache.get(clave, cargador);
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object clave) {
+        return cache.retrieve(clave);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object clave, Supplier<CompletableFuture<T>> cargador) {
+        return cache.retrieve(clave, cargador);
+    }
+
+    @Override
+    public void put(Object clave, Object valor) {
+        Fallo pendiente = fallo.get();
+        fallo.remove();
+        if (pendiente == null || !pendiente.clave().equals(clave)) {
+            // Un valor nuevo (por ejemplo, de @CachePut): los fallos en curso de esta clave quedan viejos.
+            sellar(clave);
+            cache.put(clave, valor);
+            return;
+        }
+        if (sello(clave) != pendiente.sello()) {
+            return;
+        }
+        cache.put(clave, valor);
+        if (sello(clave) != pendiente.sello()) {
+            cache.evict(clave);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object clave, Object valor) {
+        sellar(clave);
+        return cache.putIfAbsent(clave, valor);
+    }
+
+    // El sello sube antes de desalojar: un put que ya comprobó el sello y guarda después se deshace solo.
+    @Override
+    public void evict(Object clave) {
+        sellar(clave);
+        cache.evict(clave);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object clave) {
+        sellar(clave);
+        return cache.evictIfPresent(clave);
+    }
+
+    @Override
+    public void clear() {
+        sellarTodas();
+        cache.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        sellarTodas();
+        return cache.invalidate();
+    }
+
+    private long sello(Object clave) {
+        return sellos.get(franja(clave));
+    }
+
+    private void sellar(Object clave) {
+        sellos.incrementAndGet(franja(clave));
+    }
+
+    private void sellarTodas() {
+        for (int i = 0; i < FRANJAS; i++) {
+            sellos.incrementAndGet(i);
+        }
+    }
+
+    private static int franja(Object clave) {
+        int hash = clave.hashCode();
+        return (hash ^ (hash >>> 16)) & (FRANJAS - 1);
+    }
+}
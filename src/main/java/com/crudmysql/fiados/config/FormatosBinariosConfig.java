@@ -0,0 +1,78 @@
+package com.crudmysql.fiados.config;
+
+import java.util.Comparator;
+import java.util.List;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Respuestas en Smile y CBOR además de JSON, elegidas con el encabezado Accept.
+ *
+ * Son codificaciones binarias del mismo modelo de Jackson: los mismos campos y anotaciones que el
+ * JSON, pero sin texto que formatear ni volver a leer. Smile además guarda cada nombre de campo
+ * una sola vez y en los elementos siguientes lo referencia, que es lo que más pesa en los listados.
+ *
+ * Los convertidores usan el mismo Jackson2ObjectMapperBuilder que Spring Boot arma para JSON (fechas
+ * ISO, módulos, spring.jackson.*) y reemplazan a los que Spring MVC registra por defecto al
+ * encontrar estas librerías. JSON sigue primero: sin Accept o con un comodín la respuesta es JSON.
+ */
+@Configuration
+public class FormatosBinariosConfig {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    /**
+     * Formato binario que elegirá la negociación de contenido para este Accept, o null si la
+     * respuesta será JSON. Sirve para calcular el ETag antes de generar la respuesta: cada
+     * representación necesita el suyo.
+     */
+    public static MediaType formatoBinario(String accept) {
+        if (accept == null) {
+            return null;
+        }
+        List<MediaType> aceptados;
+        try {
+            aceptados = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        // Mayor calidad primero; a igual calidad decide el orden del servidor: JSON, Smile, CBOR.
+        aceptados.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType aceptado : aceptados) {
+            if (aceptado.getQualityValue() == 0) {
+                break;
+            }
+            if (aceptado.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+            if (aceptado.isCompatibleWith(APPLICATION_SMILE)) {
+                return APPLICATION_SMILE;
+            }
+            if (aceptado.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.crudmysql.fiados.config;
+
+import java.time.Duration;
+
+/**
+ * Límite de peticiones en curso que se ajusta con la latencia de las respuestas (AIMD).
+ *
+ * Guarda la latencia sin carga: el mínimo observado, que olvida de a poco para seguir a la base si
+ * se vuelve más lenta. Una respuesta es lenta si tarda más que tolerancia veces esa latencia y más
+ * que latenciaAceptable, o si falló con 5xx. Con una lenta el límite baja un 10 %, como mucho una
+ * vez por latencia observada, para que una ráfaga de respuestas lentas no lo derrumbe de golpe; con
+ * una rápida sube 1/límite, es decir una petición más por cada "límite" respuestas, solo si el límite
+ * estaba en uso: sin carga no crece sin control.
+ */
+final class LimiteAdaptativo {
+
+    private static final double REDUCCION = 0.9;
+    // Cuánto se acerca la latencia sin carga a cada muestra más lenta: la olvida en unas mil respuestas.
+    private static final double OLVIDO = 0.001;
+
+    private final int minimo;
+    private final int maximo;
+    private final double tolerancia;
+    private final double aceptableNanos;
+
+    private volatile double limite;
+    private volatile double latenciaBaseNanos = Double.NaN;
+    private long ultimaReduccion;
+    private boolean reducido;
+
+    LimiteAdaptativo(int inicial, int minimo, int maximo, double tolerancia, Duration latenciaAceptable) {
+        this.minimo = Math.max(1, minimo);
+        this.maximo = Math.max(this.minimo, maximo);
+        this.tolerancia = tolerancia;
+        this.aceptableNanos = latenciaAceptable.toNanos();
+        this.limite = Math.min(this.maximo, Math.max(this.minimo, inicial));
+    }
+
+    int actual() {
+        return (int) limite;
+    }
+
+    // Milisegundos; NaN hasta la primera respuesta.
+    double latenciaBaseMilisegundos() {
+        return latenciaBaseNanos / 1_000_000;
+    }
+
+    /**
+     * Registra una respuesta que tardó duracionNanos y terminó en ahoraNanos (System.nanoTime), con
+     * enCurso peticiones atendiéndose en ese momento.
+     */
+    synchronized void registrar(long duracionNanos, long ahoraNanos, boolean fallida, int enCurso) {
+        double base = latenciaBaseNanos;
+        if (Double.isNaN(base) || duracionNanos < base) {
+            base = duracionNanos;
+        } else {
+            base += (duracionNanos - base) * OLVIDO;
+        }
+        latenciaBaseNanos = base;
+
+        boolean lenta = fallida || (duracionNanos > aceptableNanos && duracionNanos > base * tolerancia);
+        if (lenta) {
+            if (!reducido || ahoraNanos - ultimaReduccion >= duracionNanos) {
+                limite = Math.max(minimo, limite * REDUCCION);
+                ultimaReduccion = ahoraNanos;
+                reducido = true;
+            }
+        } else if (enCurso * 2 >= limite) {
+            limite = Math.min(maximo, limite + 1 / limite);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.crudmysql.fiados.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Limita cuántas peticiones a /fiados se atienden a la vez cuando Tomcat usa hilos virtuales
+ * (spring.threads.virtual.enabled=true). Sin el tope de 200 hilos de plataforma, miles de
+ * peticiones podrían quedar esperando dentro del pool de Hikari hasta su connection-timeout;
+ * con este filtro esperan aquí, como máximo espera-maxima, y si no hay lugar reciben 503.
+ *
+ * Las respuestas en streaming (/listar/stream, /exportar) leen la base en otro hilo después de que
+ * el controlador devuelve: su lugar se libera cuando terminan de escribirse, no antes. /fiados/cambios
+ * no pasa por aquí: sus conexiones duran hasta duracion-conexion sin usar la base, y ocuparían un
+ * lugar todo ese tiempo; solo la instantánea inicial lee la base, con una conexión por cliente que
+ * la pide, que espera en el pool de Hikari como cualquier otra.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class LimiteConcurrenciaFilter extends OncePerRequestFilter {
+
+    private final Semaphore permisos;
+    private final long esperaMaximaNanos;
+
+    public LimiteConcurrenciaFilter(@Value("${fiados.concurrencia.maximo}") int maximo,
+            @Value("${fiados.concurrencia.espera-maxima:2s}") Duration esperaMaxima,
+            MeterRegistry meterRegistry) {
+        this.permisos = new Semaphore(maximo, true);
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        Gauge.builder("fiados.concurrencia.en.uso", permisos, p -> maximo - p.availablePermits())
+                .description("Peticiones a /fiados en curso con hilos virtuales")
+                .register(meterRegistry);
+        Gauge.builder("fiados.concurrencia.en.espera", permisos, Semaphore::getQueueLength)
+                .description("Peticiones a /fiados esperando un lugar")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String ruta = request.getRequestURI().substring(request.getContextPath().length());
+        return !ruta.startsWith("/fiados") || ruta.equals("/fiados/cambios");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean adquirido;
+        try {
+            adquirido = permisos.tryAcquire(esperaMaximaNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            adquirido = false;
+        }
+        if (!adquirido) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Demasiadas peticiones en curso");
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Liberar());
+            } else {
+                permisos.release();
+            }
+        }
+    }
+
+    // Libera el lugar de una respuesta asíncrona al completarse, fallar o vencer, una sola vez.
+    private final class Liberar implements AsyncListener {
+
+        private boolean liberado;
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            if (!liberado) {
+                liberado = true;
+                permisos.release();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            onComplete(event);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onComplete(event);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Un nuevo ciclo asíncrono quita los listeners: hay que volver a registrarse.
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
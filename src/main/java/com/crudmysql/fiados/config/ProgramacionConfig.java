@@ -0,0 +1,13 @@
+package com.crudmysql.fiados.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Activa las tareas programadas (@Scheduled), como el archivo de fiados saldados.
+ */
+@Configuration
+@EnableScheduling
+public class ProgramacionConfig {
+
+}
@@ -0,0 +1,169 @@
+package com.crudmysql.fiados.config;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * DataSource de solo lectura que reparte las conexiones entre las réplicas sanas (en ronda)
+ * y usa la primaria cuando ninguna lo está.
+ *
+ * Una réplica está sana si en la última verificación respondió la consulta de retraso con un
+ * valor menor o igual al retraso máximo. Si falla al pedirle una conexión se marca como caída
+ * en el momento, sin esperar a la verificación siguiente. Que su pool esté lleno no la marca: la
+ * lectura pasa a otra réplica o a la primaria y la réplica sigue recibiendo las siguientes; si
+ * está lleno al verificarla, conserva el estado anterior.
+ */
+public class ReplicasDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicasDataSource.class);
+
+    static final class Replica {
+
+        final String nombre;
+        final HikariDataSource dataSource;
+        volatile boolean sana;
+
+        Replica(String nombre, HikariDataSource dataSource) {
+            this.nombre = nombre;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primaria;
+    private final List<Replica> replicas;
+    private final long retrasoMaximoSegundos;
+    private final String consultaRetraso;
+    private final AtomicInteger turno = new AtomicInteger();
+    private final ScheduledExecutorService verificador;
+
+    public ReplicasDataSource(DataSource primaria, List<HikariDataSource> replicas, ReplicasProperties propiedades) {
+        this.primaria = primaria;
+        this.replicas = new ArrayList<>();
+        for (HikariDataSource replica : replicas) {
+            this.replicas.add(new Replica(replica.getPoolName(), replica));
+        }
+        this.retrasoMaximoSegundos = propiedades.retrasoMaximo().toSeconds();
+        this.consultaRetraso = propiedades.consultaRetraso();
+        this.verificador = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("fiados-verificador-replicas").daemon().factory());
+        long intervalo = propiedades.intervaloVerificacion().toMillis();
+        verificador.scheduleWithFixedDelay(this::verificar, 0, intervalo, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int cantidad = replicas.size();
+        int inicio = Math.floorMod(turno.getAndIncrement(), Math.max(1, cantidad));
+        for (int i = 0; i < cantidad; i++) {
+            Replica replica = replicas.get((inicio + i) % cantidad);
+            if (!replica.sana) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                if (esPoolLleno(e)) {
+                    log.debug("Réplica {} sin conexiones libres: {}", replica.nombre, e.getMessage());
+                    continue;
+                }
+                log.warn("La réplica {} no entregó una conexión; se deja de usar hasta la próxima verificación",
+                        replica.nombre, e);
+                replica.sana = false;
+            }
+        }
+        return primaria.getConnection();
+    }
+
+    // Hikari vence la espera con SQLTransientConnectionException; si además no pudo conectarse a la
+    // base, la causa es ese error. Sin causa, la réplica responde y solo faltaron conexiones libres.
+    static boolean esPoolLleno(SQLException e) {
+        return e instanceof SQLTransientConnectionException && e.getCause() == null;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // Lo que el contrato de DataSource prevé para una operación no soportada.
+        throw new SQLFeatureNotSupportedException("Las réplicas usan las credenciales configuradas");
+    }
+
+    /** Comprueba cada réplica y actualiza si puede recibir lecturas. */
+    public void verificar() {
+        for (Replica replica : replicas) {
+            boolean sana;
+            try {
+                Long retraso = consultarRetraso(replica.dataSource);
+                sana = retraso != null && retraso <= retrasoMaximoSegundos;
+                if (!sana) {
+                    log.debug("Réplica {} con retraso {} s, fuera de servicio", replica.nombre, retraso);
+                }
+            } catch (SQLException e) {
+                if (esPoolLleno(e)) {
+                    // No se pudo medir: la réplica conserva el estado de la verificación anterior.
+                    log.debug("Réplica {} sin conexiones libres para verificarla", replica.nombre);
+                    continue;
+                }
+                log.debug("Réplica {} no responde: {}", replica.nombre, e.getMessage());
+                sana = false;
+            } catch (RuntimeException e) {
+                log.debug("Réplica {} no responde: {}", replica.nombre, e.getMessage());
+                sana = false;
+            }
+            if (replica.sana != sana) {
+                log.info("Réplica {} ahora {}", replica.nombre, sana ? "recibe lecturas" : "fuera de servicio");
+            }
+            replica.sana = sana;
+        }
+    }
+
+    // Devuelve el retraso en segundos, o null si la réplica no está replicando.
+    private Long consultarRetraso(DataSource replica) throws SQLException {
+        try (Connection conexion = replica.getConnection();
+                Statement sentencia = conexion.createStatement();
+                ResultSet resultado = sentencia.executeQuery(consultaRetraso)) {
+            if (!resultado.next()) {
+                return null;
+            }
+            int columna = 1;
+            ResultSetMetaData metadatos = resultado.getMetaData();
+            for (int i = 1; i <= metadatos.getColumnCount(); i++) {
+                String etiqueta = metadatos.getColumnLabel(i);
+                if ("Seconds_Behind_Source".equalsIgnoreCase(etiqueta) || "Seconds_Behind_Master".equalsIgnoreCase(etiqueta)) {
+                    columna = i;
+                }
+            }
+            long retraso = resultado.getLong(columna);
+            return resultado.wasNull() ? null : retraso;
+        }
+    }
+
+    public int replicasSanas() {
+        return (int) replicas.stream().filter(replica -> replica.sana).count();
+    }
+
+    @Override
+    public void close() {
+        verificador.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+}
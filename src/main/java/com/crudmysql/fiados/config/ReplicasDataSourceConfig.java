@@ -0,0 +1,81 @@
+package com.crudmysql.fiados.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Separación de lecturas y escrituras (fiados.replicas.habilitadas=true).
+ *
+ * El DataSource que usa JPA es un LazyConnectionDataSourceProxy sobre la primaria: la conexión
+ * real se pide recién en la primera sentencia, cuando ya se sabe si la transacción es de solo
+ * lectura. Las transacciones de solo lectura de FiadosService obtienen así su
+ * conexión de ReplicasDataSource y el resto de la primaria.
+ */
+@Configuration
+// Con shards, cada shard es una base primaria sin réplicas: las dos opciones no se combinan.
+@ConditionalOnExpression("${fiados.replicas.habilitadas:false} and !${fiados.shards.habilitados:false}")
+@EnableConfigurationProperties(ReplicasProperties.class)
+public class ReplicasDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaria(DataSourceProperties propiedades) {
+        HikariDataSource primaria = propiedades.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primaria.setPoolName("primaria");
+        return primaria;
+    }
+
+    @Bean
+    ReplicasDataSource replicas(HikariDataSource primaria, DataSourceProperties primariaPropiedades,
+            ReplicasProperties propiedades, MeterRegistry meterRegistry) {
+        // Hikari deja el tamaño en -1 hasta validar la configuración; en ese caso vale su valor por defecto.
+        int tamanoPool = primaria.getMaximumPoolSize() > 0 ? primaria.getMaximumPoolSize() : 10;
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < propiedades.nodos().size(); i++) {
+            ReplicasProperties.Nodo nodo = propiedades.nodos().get(i);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + i);
+            pool.setJdbcUrl(nodo.url());
+            pool.setUsername(StringUtils.hasText(nodo.username()) ? nodo.username() : primariaPropiedades.determineUsername());
+            pool.setPassword(nodo.password() != null ? nodo.password() : primariaPropiedades.determinePassword());
+            pool.setMaximumPoolSize(tamanoPool);
+            pool.setConnectionTimeout(propiedades.esperaConexion().toMillis());
+            pool.setReadOnly(true);
+            // Si la réplica no está disponible al arrancar, el pool se crea igual y se reintenta después.
+            pool.setInitializationFailTimeout(-1);
+            pool.setMetricRegistry(meterRegistry);
+            pools.add(pool);
+        }
+        ReplicasDataSource replicas = new ReplicasDataSource(primaria, pools, propiedades);
+        Gauge.builder("fiados.replicas.sanas", replicas, ReplicasDataSource::replicasSanas)
+                .description("Réplicas que están recibiendo lecturas")
+                .register(meterRegistry);
+        return replicas;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource primaria, ReplicasDataSource replicas) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primaria);
+        proxy.setReadOnlyDataSource(replicas);
+        return proxy;
+    }
+
+}
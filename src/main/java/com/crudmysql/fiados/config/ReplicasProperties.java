@@ -0,0 +1,33 @@
+package com.crudmysql.fiados.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuración de las réplicas de lectura (fiados.replicas.*).
+ *
+ * @param habilitadas           activa el enrutamiento de lecturas a las réplicas
+ * @param nodos                 réplicas disponibles; las credenciales vacías se toman de spring.datasource
+ * @param retrasoMaximo         retraso de replicación tolerado; por encima, la réplica no recibe lecturas
+ * @param intervaloVerificacion cada cuánto se comprueba el estado y el retraso de cada réplica
+ * @param esperaConexion        tiempo máximo para obtener una conexión de una réplica antes de usar la primaria
+ * @param consultaRetraso       consulta que devuelve el retraso en segundos; si trae una columna
+ *                              Seconds_Behind_Source (SHOW REPLICA STATUS de MySQL) se usa esa,
+ *                              si no, la primera columna
+ */
+@ConfigurationProperties("fiados.replicas")
+public record ReplicasProperties(
+        @DefaultValue("false") boolean habilitadas,
+        @DefaultValue List<Nodo> nodos,
+        @DefaultValue("5s") Duration retrasoMaximo,
+        @DefaultValue("5s") Duration intervaloVerificacion,
+        @DefaultValue("1s") Duration esperaConexion,
+        @DefaultValue("SHOW REPLICA STATUS") String consultaRetraso) {
+
+    public record Nodo(String url, String username, String password) {
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.crudmysql.fiados.config;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * DataSource que entrega conexiones de la base del shard fijado en el hilo con {@link #en}.
+ * Sin shard fijado usa el principal (spring.datasource), que también guarda el directorio de tiendas.
+ *
+ * El shard se decide al pedir la conexión: como JPA la recibe a través de un
+ * LazyConnectionDataSourceProxy, basta con fijarlo antes de la primera sentencia de la transacción.
+ */
+public class ShardsDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    public static final String PRINCIPAL = "principal";
+
+    private static final ThreadLocal<String> ACTUAL = new ThreadLocal<>();
+
+    private final Map<String, HikariDataSource> shards;
+
+    public ShardsDataSource(Map<String, HikariDataSource> shards) {
+        this.shards = new LinkedHashMap<>(shards);
+        setTargetDataSources(new LinkedHashMap<>(shards));
+        setDefaultTargetDataSource(shards.values().iterator().next());
+        // Un nombre desconocido es un error de programación: no se cae silenciosamente al principal.
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Ejecuta la acción con el shard fijado en este hilo y deja el anterior al terminar.
+     */
+    public static <T> T en(String shard, Supplier<T> accion) {
+        String anterior = ACTUAL.get();
+        ACTUAL.set(shard);
+        try {
+            return accion.get();
+        } finally {
+            if (anterior == null) {
+                ACTUAL.remove();
+            } else {
+                ACTUAL.set(anterior);
+            }
+        }
+    }
+
+    // Shard fijado en este hilo, o null si se usa el principal.
+    public static String actual() {
+        return ACTUAL.get();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ACTUAL.get();
+    }
+
+    // Nombres de los shards en el orden de la configuración.
+    public List<String> nombres() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    // Base de un shard, para el trabajo que la recorre directamente (mover tiendas).
+    public DataSource dataSource(String nombre) {
+        DataSource dataSource = shards.get(nombre);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Shard desconocido: " + nombre);
+        }
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        shards.values().forEach(HikariDataSource::close);
+    }
+
+}
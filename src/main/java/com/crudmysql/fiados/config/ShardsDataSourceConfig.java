@@ -0,0 +1,115 @@
+package com.crudmysql.fiados.config;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Reparto de las tiendas en varias bases (fiados.shards.habilitados=true).
+ *
+ * spring.datasource es el shard "principal" y cada fiados.shards.nodos[i] otro shard con el mismo
+ * esquema. JPA usa un LazyConnectionDataSourceProxy sobre ShardsDataSource: la conexión real se pide
+ * en la primera sentencia, cuando ShardsFiados ya fijó en el hilo el shard de la tienda.
+ *
+ * Al arrancar se migran todos los shards y a cada uno se le reserva su propio tramo de ids en
+ * fiados_id_gen, así un id identifica al fiado en todas las bases y la caché por id sigue sirviendo.
+ * Los shards no tienen réplicas: con fiados.shards.habilitados se ignora fiados.replicas.
+ */
+@Configuration
+@ConditionalOnProperty(name = "fiados.shards.habilitados", havingValue = "true")
+@EnableConfigurationProperties(ShardsProperties.class)
+public class ShardsDataSourceConfig {
+
+    // Ids reservados para cada shard: el shard i genera desde i * IDS_POR_SHARD.
+    public static final long IDS_POR_SHARD = 1_000_000_000_000L;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource principal(DataSourceProperties propiedades) {
+        HikariDataSource principal = propiedades.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        principal.setPoolName(ShardsDataSource.PRINCIPAL);
+        return principal;
+    }
+
+    @Bean
+    ShardsDataSource shards(HikariDataSource principal, DataSourceProperties principalPropiedades,
+            ShardsProperties propiedades, MeterRegistry meterRegistry) {
+        // Hikari deja el tamaño en -1 hasta validar la configuración; en ese caso vale su valor por defecto.
+        int tamanoPool = principal.getMaximumPoolSize() > 0 ? principal.getMaximumPoolSize() : 10;
+        Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+        pools.put(ShardsDataSource.PRINCIPAL, principal);
+        for (ShardsProperties.Nodo nodo : propiedades.nodos()) {
+            if (pools.containsKey(nodo.nombre())) {
+                throw new IllegalStateException("Shard repetido en fiados.shards.nodos: " + nodo.nombre());
+            }
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + nodo.nombre());
+            pool.setJdbcUrl(nodo.url());
+            pool.setUsername(StringUtils.hasText(nodo.username()) ? nodo.username() : principalPropiedades.determineUsername());
+            pool.setPassword(nodo.password() != null ? nodo.password() : principalPropiedades.determinePassword());
+            pool.setMaximumPoolSize(tamanoPool);
+            pool.setMetricRegistry(meterRegistry);
+            pools.put(nodo.nombre(), pool);
+        }
+        return new ShardsDataSource(pools);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ShardsDataSource shards) {
+        return new LazyConnectionDataSourceProxy(shards);
+    }
+
+    // Flyway solo conoce el DataSource principal: las mismas migraciones se aplican en cada shard.
+    // Reemplaza la estrategia de ArranqueConfig y, como ella, no migra en la ejecución de entrenamiento.
+    @Bean
+    @Primary
+    FlywayMigrationStrategy migrarShards(ShardsDataSource shards,
+            @Value("${fiados.arranque.entrenamiento:false}") boolean entrenamiento) {
+        return flyway -> {
+            if (entrenamiento) {
+                return;
+            }
+            List<String> nombres = shards.nombres();
+            for (int i = 0; i < nombres.size(); i++) {
+                DataSource base = shards.dataSource(nombres.get(i));
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(base).load().migrate();
+                // Solo sube el valor: un shard que ya generó ids en su tramo sigue desde donde iba.
+                new JdbcTemplate(base).update("UPDATE fiados_id_gen SET siguiente_id = GREATEST(siguiente_id, ?)"
+                        + " WHERE entidad = 'fiados'", i * IDS_POR_SHARD + 51);
+            }
+            // Las tiendas que ya tienen fiados quedan en el shard donde están, aunque el anillo las
+            // ubicara en otro: así se conservan los fiados anteriores a habilitar los shards.
+            JdbcTemplate catalogo = new JdbcTemplate(shards.dataSource(ShardsDataSource.PRINCIPAL));
+            for (String nombre : nombres) {
+                List<String> tiendas = new JdbcTemplate(shards.dataSource(nombre)).queryForList(
+                        "SELECT tienda FROM fiados UNION SELECT tienda FROM fiados_historico", String.class);
+                for (String tienda : tiendas) {
+                    catalogo.update("INSERT INTO tiendas_shards (tienda, shard, moviendo) VALUES (?, ?, FALSE)"
+                            + " ON DUPLICATE KEY UPDATE shard = shard", tienda, nombre);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.crudmysql.fiados.config;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuración del reparto de tiendas en varias bases (fiados.shards.*).
+ *
+ * @param habilitados          activa el reparto; sin él todo queda en spring.datasource
+ * @param nodos                bases además de spring.datasource, que es el shard "principal" y guarda
+ *                             el directorio de tiendas; las credenciales vacías se toman de spring.datasource
+ * @param nodosVirtuales       puntos de cada base en el anillo de hash consistente
+ * @param intervaloDirectorio  cada cuánto se vuelve a leer el directorio, para ver las tiendas que
+ *                             movió otra instancia
+ * @param esperaCongelado      pausa entre congelar una tienda y empezar a copiarla, para que terminen
+ *                             las escrituras que ya estaban en curso en todas las instancias
+ * @param bloqueMovimiento     filas por sentencia al copiar y borrar una tienda que se mueve
+ */
+@ConfigurationProperties("fiados.shards")
+public record ShardsProperties(
+        @DefaultValue("false") boolean habilitados,
+        @DefaultValue List<Nodo> nodos,
+        @DefaultValue("128") int nodosVirtuales,
+        @DefaultValue("10s") Duration intervaloDirectorio,
+        @DefaultValue("20s") Duration esperaCongelado,
+        @DefaultValue("1000") int bloqueMovimiento) {
+
+    public record Nodo(String nombre, String url, String username, String password) {
+    }
+
+}
@@ -2,40 +2,365 @@ package com.crudmysql.fiados.controllers;
 
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.crudmysql.fiados.config.FormatosBinariosConfig;
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.ClienteEncontrado;
+import com.crudmysql.fiados.models.FiadoResumen;
 import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+import com.crudmysql.fiados.models.ResultadoImportacion;
+import com.crudmysql.fiados.models.ResultadoLote;
+import com.crudmysql.fiados.models.ResultadoMovimiento;
+import com.crudmysql.fiados.models.ResultadoVerificacion;
+import com.crudmysql.fiados.models.SaldoClienteModel;
+import com.crudmysql.fiados.models.TotalDiarioModel;
+import com.crudmysql.fiados.models.VersionTablaModel;
+import com.crudmysql.fiados.services.CanalCambiosFiados;
+import com.crudmysql.fiados.services.FiadosCsvService;
 import com.crudmysql.fiados.services.FiadosService;
+import com.crudmysql.fiados.services.IndiceClientes;
+import com.crudmysql.fiados.services.MovimientoTiendas;
+import com.crudmysql.fiados.services.ResumenesFiados;
+import com.crudmysql.fiados.services.VerificacionResumenes;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/fiados")
 public class FiadosController {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // Máximo de fiados por llamada a /guardarLote; lotes más grandes deben partirse en varias llamadas.
+    public static final int LIMITE_MAXIMO_LOTE = 50_000;
+
+    // Máximo de ids por llamada a DELETE /eliminar, para acotar el tamaño de la lista IN.
+    public static final int LIMITE_MAXIMO_ELIMINAR = 1000;
+
+    // Máximo de clientes por búsqueda en /clientes/buscar.
+    public static final int LIMITE_MAXIMO_BUSQUEDA = 100;
+
     @Autowired
     private FiadosService fiadosService;
 
+    @Autowired
+    private FiadosCsvService fiadosCsvService;
+
+    @Autowired
+    private CanalCambiosFiados canalCambios;
+
+    @Autowired
+    private IndiceClientes indiceClientes;
+
+    @Autowired
+    private ResumenesFiados resumenes;
+
+    @Autowired
+    private VerificacionResumenes verificacionResumenes;
+
+    // Solo existe con fiados.shards.habilitados=true.
+    @Autowired(required = false)
+    private MovimientoTiendas movimientoTiendas;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Distribución de la cantidad de fiados que devuelve cada llamada a /listar.
+    private DistributionSummary tamanoListado;
+
+    @PostConstruct
+    void registrarMetricas() {
+        tamanoListado = DistributionSummary.builder("fiados.listar.tamano")
+                .description("Cantidad de fiados devueltos por /fiados/listar")
+                .baseUnit("fiados")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
+    }
+
+    // Responde 304 si el cliente ya tiene la versión actual de la tabla (If-None-Match o
+    // If-Modified-Since), sin consultar ni serializar los fiados.
+    // Con incluirHistorico=true agrega los fiados saldados que se movieron a fiados_historico.
     @GetMapping("/listar")
-    public ArrayList<FiadosModel> obtenerFiados() {
-        System.out.println("Hola");
-        return fiadosService.obtenerFiados();
+    public ResponseEntity<ArrayList<FiadosModel>> obtenerFiados(
+            @RequestParam(defaultValue = "false") boolean incluirHistorico, WebRequest peticion) {
+        // La versión se lee antes que los datos: si alguien escribe en medio, la respuesta lleva la
+        // versión anterior y el cliente la vuelve a pedir en la consulta siguiente, nunca al revés.
+        VersionTablaModel version = fiadosService.obtenerVersionTabla();
+        // El archivo también sube la versión, así que sirve para ambos listados; solo cambia el ETag.
+        String etag = etagSegunFormato(
+                "fiados-" + version.getVersion() + (incluirHistorico ? "-historico" : ""), peticion);
+        if (peticion.checkNotModified(etag, version.getModificado().toEpochMilli())) {
+            return null;
+        }
+        ArrayList<FiadosModel> fiados = incluirHistorico
+                ? fiadosService.obtenerFiadosConHistorico()
+                : fiadosService.obtenerFiados();
+        tamanoListado.record(fiados.size());
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT).body(fiados);
+    }
+
+    @GetMapping("/listar/pagina")
+    public PaginaFiados obtenerPagina(@RequestParam(defaultValue = "0") Long despuesDe,
+            @RequestParam(defaultValue = "100") int limite) {
+        return fiadosService.obtenerPagina(despuesDe, limite);
+    }
+
+    // Devuelve todos los fiados como NDJSON (un objeto JSON por línea), escribiendo cada fila
+    // a medida que sale del cursor de la base de datos en vez de armar la lista completa.
+    @GetMapping(value = "/listar/stream", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamFiados() {
+        // Sin flush por cada objeto: el buffer de la respuesta decide cuándo enviar un bloque.
+        ObjectWriter escritor = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody cuerpo = salida -> {
+            JsonGenerator generador = objectMapper.getFactory().createGenerator(salida);
+            // El separador entre objetos es el salto de línea que se escribe abajo, no el espacio por defecto.
+            generador.setRootValueSeparator(null);
+            try {
+                fiadosService.recorrerFiados(fiado -> {
+                    try {
+                        escritor.writeValue(generador, fiado);
+                        generador.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generador.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(cuerpo);
+    }
+
+    // Eventos de cambio (Server-Sent Events) para no tener que consultar /listar periódicamente.
+    // Al reconectarse, EventSource envía Last-Event-ID y el canal continúa desde ese evento.
+    @GetMapping(value = "/cambios", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter cambios(@RequestHeader(value = "Last-Event-ID", required = false) String ultimoId) {
+        return canalCambios.suscribir(ultimoId);
+    }
+
+    // Exporta todos los fiados como CSV, escribiendo desde el cursor de la base a la respuesta.
+    @GetMapping("/exportar")
+    public ResponseEntity<StreamingResponseBody> exportarCsv() {
+        StreamingResponseBody cuerpo = salida -> {
+            Writer escritor = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 64 * 1024);
+            fiadosCsvService.exportar(escritor);
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"fiados.csv\"")
+                .body(cuerpo);
+    }
+
+    // Importa un CSV (mismo formato que /exportar) insertándolo por bloques; las líneas inválidas
+    // se informan en la respuesta sin detener la carga.
+    @PostMapping(value = "/importar", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResultadoImportacion importarCsv(@RequestParam("archivo") MultipartFile archivo) throws IOException {
+        try (Reader lector = new InputStreamReader(archivo.getInputStream(), StandardCharsets.UTF_8)) {
+            return fiadosCsvService.importar(lector);
+        }
+    }
+
+    @GetMapping("/porCliente")
+    public List<FiadoResumen> obtenerPorCliente(@RequestParam String nombreCliente,
+            @RequestParam(required = false) String estado,
+            @RequestParam(defaultValue = "100") int limite,
+            @RequestParam(defaultValue = "false") boolean incluirHistorico) {
+        if (incluirHistorico) {
+            return fiadosService.obtenerPorClienteConHistorico(nombreCliente, estado, limite);
+        }
+        return fiadosService.obtenerPorCliente(nombreCliente, estado, limite);
+    }
+
+    // Búsqueda de clientes por parte del nombre, sin distinguir tildes ni mayúsculas, para autocompletar
+    // en caja. Responde desde el índice en memoria con el saldo pendiente de cada cliente.
+    @GetMapping("/clientes/buscar")
+    public List<ClienteEncontrado> buscarClientes(@RequestParam String texto,
+            @RequestParam(defaultValue = "10") int limite) {
+        if (!indiceClientes.listo()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "El índice de clientes todavía se está construyendo");
+        }
+        return indiceClientes.buscar(texto, Math.min(limite, LIMITE_MAXIMO_BUSQUEDA));
+    }
+
+    @GetMapping("/porEstado/{estado}")
+    public List<FiadoResumen> obtenerPorEstado(@PathVariable String estado,
+            @RequestParam(defaultValue = "100") int limite) {
+        return fiadosService.obtenerPorEstado(estado, limite);
+    }
+
+    @GetMapping("/porFecha")
+    public List<FiadoResumen> obtenerPorFecha(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) String estado,
+            @RequestParam(defaultValue = "100") int limite) {
+        return fiadosService.obtenerPorFecha(desde, hasta, estado, limite);
+    }
+
+    @GetMapping("/total")
+    public BigDecimal sumarMonto(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) String estado) {
+        return fiadosService.sumarMonto(desde, hasta, estado);
+    }
+
+    // Saldos de saldos_clientes: los de un cliente (uno por estado) o, sin nombreCliente, los
+    // clientes de un estado de mayor a menor monto. Se lee una fila por cliente, no sus fiados.
+    @GetMapping("/resumenes/saldos")
+    public List<SaldoClienteModel> obtenerSaldos(@RequestParam(required = false) String nombreCliente,
+            @RequestParam(defaultValue = FiadosModel.ESTADO_PENDIENTE) String estado,
+            @RequestParam(defaultValue = "100") int limite) {
+        if (nombreCliente != null) {
+            return resumenes.saldosDeCliente(nombreCliente);
+        }
+        return resumenes.saldosPorEstado(estado, limite);
+    }
+
+    // Monto y cantidad de fiados por día entre dos fechas (inclusive), desde totales_diarios.
+    @GetMapping("/resumenes/diarios")
+    public List<TotalDiarioModel> obtenerTotalesDiarios(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return resumenes.totalesDiarios(desde, hasta);
+    }
+
+    // Compara los resúmenes con los fiados; con corregir=true además arregla las diferencias.
+    @PostMapping("/resumenes/verificar")
+    public ResultadoVerificacion verificarResumenes(@RequestParam(defaultValue = "false") boolean corregir) {
+        return verificacionResumenes.verificar(corregir);
+    }
+
+    // Mueve todos los fiados de la tienda al shard indicado; mientras dura, sus escrituras responden 503.
+    @PostMapping("/tiendas/{tienda}/mover")
+    public ResultadoMovimiento moverTienda(@PathVariable String tienda, @RequestParam String shard) {
+        if (movimientoTiendas == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Los shards no están habilitados");
+        }
+        try {
+            return movimientoTiendas.mover(tienda, shard);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
     }
 
     @PostMapping("/guardar")
     public FiadosModel guardarFiado(@RequestBody FiadosModel fiado) {
-        return fiadosService.guardarFiado(fiado);
+        try {
+            return fiadosService.guardarFiado(fiado);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "El fiado " + fiado.getId() + " fue modificado por otro usuario; vuelva a leerlo");
+        }
+    }
+
+    @PostMapping("/guardarLote")
+    public ResultadoLote guardarLote(@RequestBody List<FiadosModel> fiados) {
+        if (fiados.size() > LIMITE_MAXIMO_LOTE) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "El lote no puede superar " + LIMITE_MAXIMO_LOTE + " fiados");
+        }
+        return fiadosService.guardarLote(fiados);
     }
 
+    // Actualización parcial: solo los campos enviados, en un único UPDATE. Responde 204 con el ETag
+    // de la versión nueva, 404 si el fiado no existe y 409 si otro usuario lo modificó antes.
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> actualizarFiado(@PathVariable Long id, @RequestBody CambiosFiado cambios) {
+        if (cambios.sinCampos()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No se envió ningún campo para actualizar");
+        }
+        Long version;
+        try {
+            version = fiadosService.actualizarFiado(id, cambios);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "El fiado " + id + " fue modificado por otro usuario; vuelva a leerlo");
+        }
+        if (version == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No existe el fiado " + id);
+        }
+        return ResponseEntity.noContent().eTag("\"" + id + "-" + version + "\"").build();
+    }
+
+    // Marca como pagados todos los fiados pendientes del cliente y devuelve cuántos cambiaron.
+    @PostMapping("/marcarPagados")
+    public int marcarPagados(@RequestParam String nombreCliente) {
+        return fiadosService.marcarPagados(nombreCliente);
+    }
+
+    // El ETag combina id y versión del fiado; si coincide con If-None-Match se responde 304 sin cuerpo.
     @GetMapping("/obtenerPorId/{id}")
-    public FiadosModel obtenerPorId(@PathVariable Long id) {
-        return fiadosService.obtenerPorId(id);
+    public ResponseEntity<FiadosModel> obtenerPorId(@PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean incluirHistorico, WebRequest peticion) {
+        FiadosModel fiado = fiadosService.obtenerPorId(id);
+        if (fiado == null && incluirHistorico) {
+            fiado = fiadosService.obtenerDelHistorico(id);
+        }
+        if (fiado == null) {
+            return ResponseEntity.ok().build();
+        }
+        if (peticion.checkNotModified(etagSegunFormato(fiado.getId() + "-" + fiado.getVersion(), peticion))) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT).body(fiado);
+    }
+
+    // Las respuestas en Smile o CBOR (según Accept) son otra representación y llevan su propio ETag;
+    // JSON conserva el de siempre.
+    private static String etagSegunFormato(String valor, WebRequest peticion) {
+        MediaType formato = FormatosBinariosConfig.formatoBinario(peticion.getHeader(HttpHeaders.ACCEPT));
+        if (formato == null) {
+            return "\"" + valor + "\"";
+        }
+        return "\"" + valor + (FormatosBinariosConfig.APPLICATION_SMILE.equals(formato) ? "-smile\"" : "-cbor\"");
     }
 
     @DeleteMapping("/eliminar/{id}")
@@ -43,4 +368,14 @@ public class FiadosController {
         return fiadosService.eliminarFiado(id);
     }
 
+    // Borra varios fiados en una sola sentencia y devuelve cuántos se eliminaron.
+    @DeleteMapping("/eliminar")
+    public int eliminarFiados(@RequestBody List<Long> ids) {
+        if (ids.size() > LIMITE_MAXIMO_ELIMINAR) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "No se pueden eliminar más de " + LIMITE_MAXIMO_ELIMINAR + " fiados por llamada");
+        }
+        return fiadosService.eliminarFiados(ids);
+    }
+
 }
@@ -0,0 +1,16 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Cuerpo de PATCH /fiados/{id}: solo se actualizan los campos que vienen con valor.
+ * Si trae version, el cambio se aplica únicamente si el fiado sigue en esa versión.
+ */
+public record CambiosFiado(String nombreCliente, BigDecimal monto, LocalDate fecha, String estado, Long version) {
+
+    public boolean sinCampos() {
+        return nombreCliente == null && monto == null && fecha == null && estado == null;
+    }
+
+}
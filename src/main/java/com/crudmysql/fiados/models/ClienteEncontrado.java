@@ -0,0 +1,10 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Cliente encontrado por /fiados/clientes/buscar, con su saldo abierto: la suma de los montos
+ * de sus fiados pendientes, cuántos son pendientes y cuántos fiados activos tiene en total.
+ */
+public record ClienteEncontrado(String nombreCliente, BigDecimal saldoPendiente, int fiadosPendientes, int fiados) {
+}
@@ -0,0 +1,7 @@
+package com.crudmysql.fiados.models;
+
+/**
+ * Línea de un CSV importado que no pudo cargarse, con el motivo.
+ */
+public record ErrorLinea(long linea, String mensaje) {
+}
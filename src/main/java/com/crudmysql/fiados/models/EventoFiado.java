@@ -0,0 +1,21 @@
+package com.crudmysql.fiados.models;
+
+/**
+ * Cambio confirmado en la tabla fiados, tal como se publica en /fiados/cambios.
+ * fiado viene solo en CREADO y ACTUALIZADO desde /guardar; en los demás casos basta con
+ * fiadoId y version. RECARGAR avisa de un cambio masivo (lote, importación, marcarPagados)
+ * después del cual conviene volver a leer el listado.
+ */
+public record EventoFiado(String tipo, Long fiadoId, Long version, FiadosModel fiado) {
+
+    public static final String CREADO = "creado";
+    public static final String ACTUALIZADO = "actualizado";
+    public static final String ELIMINADO = "eliminado";
+    public static final String ARCHIVADO = "archivado";
+    public static final String RECARGAR = "recargar";
+
+    public static EventoFiado recargar() {
+        return new EventoFiado(RECARGAR, null, null, null);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Fiado saldado (pagado o cancelado) que el archivo movió fuera de la tabla fiados.
+ * Conserva el id original, así que un fiado se sigue encontrando por el mismo id.
+ */
+@Entity
+@Table(name = "fiados_historico", indexes = {
+        @Index(name = "idx_fiados_historico_cliente", columnList = "nombre_cliente"),
+        @Index(name = "idx_fiados_historico_fecha", columnList = "fecha")
+})
+public class FiadoHistoricoModel {
+
+    @Id
+    private Long id;
+
+    @Column(name = "nombre_cliente")
+    private String nombreCliente;
+
+    @Column(name = "monto", precision = 12, scale = 2)
+    private BigDecimal monto;
+
+    @Column(name = "fecha")
+    private LocalDate fecha;
+
+    @Column(name = "estado")
+    private String estado;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "tienda", nullable = false, length = 64)
+    private String tienda;
+
+    // Momento en que el fiado pasó al histórico.
+    @Column(name = "archivado", nullable = false)
+    private Instant archivado;
+
+    // Vista del fiado archivado con la forma de FiadosModel, para responder igual que la tabla activa.
+    public FiadosModel aFiado() {
+        FiadosModel fiado = new FiadosModel();
+        fiado.setId(id);
+        fiado.setNombreCliente(nombreCliente);
+        fiado.setMonto(monto);
+        fiado.setFecha(fecha);
+        fiado.setEstado(estado);
+        fiado.setVersion(version);
+        fiado.setTienda(tienda);
+        return fiado;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getNombreCliente() {
+        return nombreCliente;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public String getTienda() {
+        return tienda;
+    }
+
+    public Instant getArchivado() {
+        return archivado;
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Proyección liviana de un fiado para listados: Spring Data selecciona solo estas
+ * columnas y las devuelve sin pasar por el contexto de persistencia, así que no hay
+ * entidades administradas ni comprobación de cambios (dirty checking). La fecha permite
+ * intercalar en orden los listados por fecha que llegan de varios shards.
+ */
+public record FiadoResumen(Long id, String nombreCliente, BigDecimal monto, LocalDate fecha, String estado) {
+}
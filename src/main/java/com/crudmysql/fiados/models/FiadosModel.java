@@ -1,31 +1,67 @@
 package com.crudmysql.fiados.models;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.hibernate.annotations.DynamicUpdate;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "fiados")
+@Table(name = "fiados", indexes = {
+        @Index(name = "idx_fiados_cliente_estado", columnList = "nombre_cliente, estado"),
+        @Index(name = "idx_fiados_estado_fecha", columnList = "estado, fecha"),
+        @Index(name = "idx_fiados_fecha", columnList = "fecha"),
+        @Index(name = "idx_fiados_cliente_id", columnList = "nombre_cliente, id"),
+        @Index(name = "idx_fiados_estado_id", columnList = "estado, id")
+})
+// Los UPDATE generados por Hibernate incluyen solo las columnas que cambiaron.
+@DynamicUpdate
 public class FiadosModel {
 
+    public static final String ESTADO_PENDIENTE = "Pendiente";
+    public static final String ESTADO_PAGADO = "Pagado";
+    public static final String ESTADO_CANCELADO = "Cancelado";
+
+    // Tienda de los fiados que llegan sin tienda y de los que existían antes de la columna (V8).
+    public static final String TIENDA_PRINCIPAL = "principal";
+
+    // Los ids se reservan en bloques desde la tabla fiados_id_gen (optimizador pooled).
+    // A diferencia de IDENTITY, esto permite a Hibernate agrupar los INSERT en lotes JDBC.
     @Id
-    @GeneratedValue(strategy = jakarta.persistence.GenerationType.IDENTITY)
+    @GeneratedValue(strategy = jakarta.persistence.GenerationType.TABLE, generator = "fiados_id")
+    @TableGenerator(name = "fiados_id", table = "fiados_id_gen", pkColumnName = "entidad",
+            valueColumnName = "siguiente_id", pkColumnValue = "fiados", allocationSize = 50)
     private Long id;
 
     @Column(name = "nombre_cliente")
     private String nombreCliente;
 
-    @Column(name = "monto")
-    private Double monto;
+    // Monto exacto en DECIMAL(12,2), para que las sumas en la base no acumulen errores de redondeo.
+    @Column(name = "monto", precision = 12, scale = 2)
+    private BigDecimal monto;
 
     @Column(name = "fecha")
-    private String fecha;
+    private LocalDate fecha;
 
     @Column(name = "estado")
     private String estado;
 
+    // Sube con cada actualización. Sirve de bloqueo optimista y, junto con el id, de ETag.
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // Con fiados.shards.habilitados=true decide en qué base se guarda el fiado; no cambia una vez creado.
+    @Column(name = "tienda", nullable = false, length = 64)
+    private String tienda = TIENDA_PRINCIPAL;
 
     public Long getId() {
         return id;
@@ -43,19 +79,19 @@ public class FiadosModel {
         this.nombreCliente = nombreCliente;
     }
 
-    public Double getMonto() {
+    public BigDecimal getMonto() {
         return monto;
     }
 
-    public void setMonto(Double monto) {
+    public void setMonto(BigDecimal monto) {
         this.monto = monto;
     }
 
-    public String getFecha() {
+    public LocalDate getFecha() {
         return fecha;
     }
 
-    public void setFecha(String fecha) {
+    public void setFecha(LocalDate fecha) {
         this.fecha = fecha;
     }
 
@@ -67,4 +103,20 @@ public class FiadosModel {
         this.estado = estado;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public String getTienda() {
+        return tienda;
+    }
+
+    public void setTienda(String tienda) {
+        this.tienda = tienda;
+    }
+
 }
@@ -0,0 +1,11 @@
+package com.crudmysql.fiados.models;
+
+import java.util.List;
+
+/**
+ * Página de fiados obtenida por cursor (keyset sobre el id).
+ * siguienteCursor es el id que debe enviarse como "despuesDe" para pedir la
+ * página siguiente, o null cuando ya no quedan más fiados.
+ */
+public record PaginaFiados(List<FiadosModel> fiados, Long siguienteCursor) {
+}
@@ -0,0 +1,11 @@
+package com.crudmysql.fiados.models;
+
+import java.util.List;
+
+/**
+ * Resultado de importar un CSV de fiados. Solo se detallan los primeros errores;
+ * erroresOmitidos cuenta los que no se incluyeron en la lista.
+ */
+public record ResultadoImportacion(long lineasLeidas, long insertadas, List<ErrorLinea> errores,
+        long erroresOmitidos, long milisegundos) {
+}
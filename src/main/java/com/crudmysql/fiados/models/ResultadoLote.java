@@ -0,0 +1,10 @@
+package com.crudmysql.fiados.models;
+
+import java.util.List;
+
+/**
+ * Resultado de una inserción por lotes: los ids generados (en el mismo orden
+ * en que llegaron los fiados), cuántas filas se insertaron y el rendimiento obtenido.
+ */
+public record ResultadoLote(List<Long> ids, int filas, long milisegundos, double filasPorSegundo) {
+}
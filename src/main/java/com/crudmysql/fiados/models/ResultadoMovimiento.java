@@ -0,0 +1,9 @@
+package com.crudmysql.fiados.models;
+
+/**
+ * Resultado de mover una tienda de shard: de dónde a dónde, cuántos fiados activos y archivados
+ * se copiaron y cuánto tardó. Sin filas copiadas si la tienda ya estaba en el destino.
+ */
+public record ResultadoMovimiento(String tienda, String origen, String destino, long fiados, long archivados,
+        long milisegundos) {
+}
@@ -0,0 +1,9 @@
+package com.crudmysql.fiados.models;
+
+/**
+ * Resultado de verificar los resúmenes: cuántos bloques se recorrieron, cuántas filas de
+ * saldos_clientes y de totales_diarios no coincidían con los fiados y si se corrigieron.
+ */
+public record ResultadoVerificacion(int bloques, int saldosDistintos, int diasDistintos, boolean corregido,
+        long milisegundos) {
+}
@@ -0,0 +1,93 @@
+package com.crudmysql.fiados.models;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Saldo de un cliente en un estado: suma de los montos y cantidad de sus fiados, activos y
+ * archivados. Lo mantiene ResumenesFiados en la misma transacción que cada cambio de fiados.
+ */
+@Entity
+@Table(name = "saldos_clientes", indexes = {
+        @Index(name = "idx_saldos_clientes_estado_monto", columnList = "estado, monto")
+})
+@IdClass(SaldoClienteModel.Clave.class)
+public class SaldoClienteModel {
+
+    @Id
+    @Column(name = "nombre_cliente", nullable = false)
+    private String nombreCliente;
+
+    @Id
+    @Column(name = "estado", nullable = false)
+    private String estado;
+
+    @Column(name = "monto", nullable = false, precision = 14, scale = 2)
+    private BigDecimal monto;
+
+    @Column(name = "cantidad", nullable = false)
+    private long cantidad;
+
+    protected SaldoClienteModel() {
+    }
+
+    // Saldo combinado de varios shards; no se guarda.
+    public SaldoClienteModel(String nombreCliente, String estado, BigDecimal monto, long cantidad) {
+        this.nombreCliente = nombreCliente;
+        this.estado = estado;
+        this.monto = monto;
+        this.cantidad = cantidad;
+    }
+
+    public String getNombreCliente() {
+        return nombreCliente;
+    }
+
+    public String getEstado() {
+        return estado;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public long getCantidad() {
+        return cantidad;
+    }
+
+    // Clave compuesta (nombre_cliente, estado).
+    public static class Clave implements Serializable {
+
+        private String nombreCliente;
+        private String estado;
+
+        protected Clave() {
+        }
+
+        public Clave(String nombreCliente, String estado) {
+            this.nombreCliente = nombreCliente;
+            this.estado = estado;
+        }
+
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Clave clave
+                    && Objects.equals(nombreCliente, clave.nombreCliente)
+                    && Objects.equals(estado, clave.estado);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(nombreCliente, estado);
+        }
+    }
+
+}
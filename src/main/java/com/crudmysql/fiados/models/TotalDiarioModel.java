@@ -0,0 +1,51 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Total de un día: suma de los montos y cantidad de fiados con esa fecha, activos y archivados.
+ * Lo mantiene ResumenesFiados en la misma transacción que cada cambio de fiados.
+ */
+@Entity
+@Table(name = "totales_diarios")
+public class TotalDiarioModel {
+
+    @Id
+    @Column(name = "fecha", nullable = false)
+    private LocalDate fecha;
+
+    @Column(name = "monto", nullable = false, precision = 14, scale = 2)
+    private BigDecimal monto;
+
+    @Column(name = "cantidad", nullable = false)
+    private long cantidad;
+
+    protected TotalDiarioModel() {
+    }
+
+    // Total combinado de varios shards; no se guarda.
+    public TotalDiarioModel(LocalDate fecha, BigDecimal monto, long cantidad) {
+        this.fecha = fecha;
+        this.monto = monto;
+        this.cantidad = cantidad;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public BigDecimal getMonto() {
+        return monto;
+    }
+
+    public long getCantidad() {
+        return cantidad;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.crudmysql.fiados.models;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * Contador de cambios de una tabla: sube en uno con cada transacción que la modifica.
+ * Permite saber si un listado cambió sin volver a consultarlo.
+ *
+ * Cada fila es una franja del contador; la versión de la tabla es la suma de sus franjas y el
+ * último cambio, el más reciente de ellas (ver ContadorCambiosFiados).
+ */
+@Entity
+@Table(name = "versiones_tablas")
+@IdClass(VersionTablaModel.Clave.class)
+public class VersionTablaModel {
+
+    @Id
+    @Column(name = "tabla", length = 64)
+    private String tabla;
+
+    @Id
+    @Column(name = "franja", nullable = false)
+    private int franja;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    // Momento del último cambio, para la cabecera Last-Modified.
+    @Column(name = "modificado", nullable = false)
+    private Instant modificado;
+
+    protected VersionTablaModel() {
+    }
+
+    public VersionTablaModel(String tabla, int franja, long version, Instant modificado) {
+        this.tabla = tabla;
+        this.franja = franja;
+        this.version = version;
+        this.modificado = modificado;
+    }
+
+    // Versión combinada de todas las franjas (o de varios shards); no se guarda.
+    public VersionTablaModel(String tabla, long version, Instant modificado) {
+        this(tabla, 0, version, modificado);
+    }
+
+    public String getTabla() {
+        return tabla;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getModificado() {
+        return modificado;
+    }
+
+    // Clave compuesta (tabla, franja).
+    public static class Clave implements Serializable {
+
+        private String tabla;
+        private int franja;
+
+        protected Clave() {
+        }
+
+        public Clave(String tabla, int franja) {
+            this.tabla = tabla;
+            this.franja = franja;
+        }
+
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Clave clave && Objects.equals(tabla, clave.tabla) && franja == clave.franja;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tabla, franja);
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.crudmysql.fiados.repositories;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.crudmysql.fiados.models.FiadoHistoricoModel;
+import com.crudmysql.fiados.models.FiadoResumen;
+
+@Repository
+public interface IFiadoHistoricoRepository extends JpaRepository<FiadoHistoricoModel, Long> {
+
+    // Copia los fiados indicados desde la tabla activa con un INSERT ... SELECT, sin pasar por memoria.
+    @Modifying
+    @Query("insert into FiadoHistoricoModel (id, nombreCliente, monto, fecha, estado, version, tienda,"
+            + " archivado)"
+            + " select f.id, f.nombreCliente, f.monto, f.fecha, f.estado, f.version, f.tienda, :archivado"
+            + " from FiadosModel f where f.id in :ids")
+    int copiarDesdeFiados(@Param("ids") Collection<Long> ids, @Param("archivado") Instant archivado);
+
+    List<FiadoResumen> findByNombreClienteOrderByIdAsc(String nombreCliente, Limit limite);
+
+    List<FiadoResumen> findByNombreClienteAndEstadoOrderByIdAsc(String nombreCliente, String estado, Limit limite);
+
+}
@@ -1,11 +1,112 @@
 package com.crudmysql.fiados.repositories;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.crudmysql.fiados.models.FiadoResumen;
 import com.crudmysql.fiados.models.FiadosModel;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
 @Repository 
 public interface IFiadosRepository extends JpaRepository<FiadosModel, Long> {
 
+    // Paginación por cursor (keyset): trae los siguientes fiados con id mayor al cursor,
+    // usando el índice de la clave primaria en vez de un OFFSET que recorre filas descartadas.
+    List<FiadosModel> findByIdGreaterThanOrderByIdAsc(Long id, Limit limite);
+
+    // Recorre toda la tabla como un Stream leyendo por bloques desde el cursor JDBC.
+    // Debe consumirse dentro de una transacción y cerrarse al terminar.
+    @Query("select f from FiadosModel f order by f.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<FiadosModel> streamAll();
+
+    // Búsquedas que devuelven la proyección FiadoResumen en vez de entidades.
+    // Cada una lee un índice declarado en FiadosModel que ya está en el orden pedido, así LIMIT corta
+    // sin ordenar todas las filas que cumplen el filtro (InnoDB agrega el id al final de cada índice).
+    // idx_fiados_cliente_id (nombre_cliente, id)
+    List<FiadoResumen> findByNombreClienteOrderByIdAsc(String nombreCliente, Limit limite);
+
+    // idx_fiados_cliente_estado (nombre_cliente, estado, id)
+    List<FiadoResumen> findByNombreClienteAndEstadoOrderByIdAsc(String nombreCliente, String estado, Limit limite);
+
+    // idx_fiados_estado_id (estado, id)
+    List<FiadoResumen> findByEstadoOrderByIdAsc(String estado, Limit limite);
+
+    // idx_fiados_fecha (fecha, id) e idx_fiados_estado_fecha (estado, fecha, id)
+    List<FiadoResumen> findByFechaBetweenOrderByFechaAscIdAsc(LocalDate desde, LocalDate hasta, Limit limite);
+
+    List<FiadoResumen> findByEstadoAndFechaBetweenOrderByFechaAscIdAsc(String estado, LocalDate desde,
+            LocalDate hasta, Limit limite);
+
+    // Suma exacta (DECIMAL) calculada por la base; estado null significa todos los estados.
+    @Query("select coalesce(sum(f.monto), 0) from FiadosModel f"
+            + " where f.fecha between :desde and :hasta and (:estado is null or f.estado = :estado)")
+    BigDecimal sumarMonto(@Param("estado") String estado, @Param("desde") LocalDate desde,
+            @Param("hasta") LocalDate hasta);
+
+    // Versión actual de un fiado, sin cargar la entidad.
+    @Query("select f.version from FiadosModel f where f.id = :id")
+    Optional<Long> buscarVersion(@Param("id") Long id);
+
+    // Tienda de un fiado, para saber en qué shard está sin cargar la entidad.
+    @Query("select f.tienda from FiadosModel f where f.id = :id")
+    Optional<String> buscarTienda(@Param("id") Long id);
+
+    // Marca como pagados todos los fiados pendientes de un cliente en un solo UPDATE, subiendo la
+    // versión de cada fila para que las ediciones concurrentes con una versión anterior fallen.
+    @Modifying
+    @Query("update FiadosModel f set f.estado = '" + FiadosModel.ESTADO_PAGADO + "', f.version = f.version + 1"
+            + " where f.nombreCliente = :nombreCliente and f.estado = '" + FiadosModel.ESTADO_PENDIENTE + "'")
+    int marcarPagados(@Param("nombreCliente") String nombreCliente);
+
+    // Fiados bloqueados (SELECT ... FOR UPDATE) hasta el commit, antes de modificarlos: sus valores
+    // son los que se restan de los resúmenes y nadie más puede cambiarlos hasta que se sume el nuevo.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FiadosModel f where f.id in :ids")
+    List<FiadosModel> bloquearPorIds(@Param("ids") Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FiadosModel f where f.nombreCliente = :nombreCliente"
+            + " and f.estado = '" + FiadosModel.ESTADO_PENDIENTE + "'")
+    List<FiadosModel> bloquearPendientes(@Param("nombreCliente") String nombreCliente);
+
+    // Bloque de fiados saldados para el archivo. FOR UPDATE los retiene hasta el commit de la
+    // transacción del bloque, así nadie los modifica entre la copia al histórico y el borrado.
+    // El orden es el de idx_fiados_estado_fecha (que termina en id): InnoDB recorre ese índice y se
+    // detiene en el límite, bloqueando solo las filas del bloque. Con "order by id" recorría la clave
+    // primaria y bloqueaba cada fila que leía hasta juntar el bloque, aunque no cumpliera el filtro.
+    @Query(value = "select id from fiados where estado in (:estados) and fecha < :antesDe"
+            + " order by estado, fecha, id limit :limite for update", nativeQuery = true)
+    List<Long> bloquearParaArchivar(@Param("estados") Collection<String> estados,
+            @Param("antesDe") LocalDate antesDe, @Param("limite") int limite);
+
+    // Borrados en una sola sentencia DELETE, sin cargar antes las entidades como hace deleteById.
+    // Devuelven la cantidad de filas borradas (0 si no existían).
+    @Modifying
+    @Query("delete from FiadosModel f where f.id = :id")
+    int eliminarPorId(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from FiadosModel f where f.id in :ids")
+    int eliminarPorIds(@Param("ids") Collection<Long> ids);
+
 }
@@ -0,0 +1,71 @@
+package com.crudmysql.fiados.repositories;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.crudmysql.fiados.models.SaldoClienteModel;
+
+@Repository
+public interface ISaldoClienteRepository extends JpaRepository<SaldoClienteModel, SaldoClienteModel.Clave> {
+
+    // Clientes con nombre en (desde, hasta]; hasta null llega hasta el final. El primer bloque
+    // (desde = '') también toma el nombre vacío y los fiados sin nombre, que se resumen como ''.
+    String RANGO_CLIENTES = " where (nombre_cliente > :desde and (:hasta is null or nombre_cliente <= :hasta))"
+            + " or (:desde = '' and (nombre_cliente is null or nombre_cliente = ''))";
+
+    // Saldos de un estado, de mayor a menor monto (índice idx_saldos_clientes_estado_monto).
+    List<SaldoClienteModel> findByEstadoAndCantidadGreaterThanOrderByMontoDescNombreClienteAsc(String estado,
+            long cantidad, Limit limite);
+
+    List<SaldoClienteModel> findByNombreClienteAndCantidadGreaterThanOrderByEstadoAsc(String nombreCliente,
+            long cantidad);
+
+    // Suma la diferencia al saldo en una sola sentencia; crea la fila si el cliente no tenía ese estado.
+    @Modifying
+    @Query(value = "insert into saldos_clientes (nombre_cliente, estado, monto, cantidad)"
+            + " values (:nombreCliente, :estado, :monto, :cantidad)"
+            + " on duplicate key update monto = monto + values(monto), cantidad = cantidad + values(cantidad)",
+            nativeQuery = true)
+    int sumar(@Param("nombreCliente") String nombreCliente, @Param("estado") String estado,
+            @Param("monto") BigDecimal monto, @Param("cantidad") long cantidad);
+
+    // Bloquea hasta el commit la fila de la verificación de resúmenes (V11): dos verificaciones,
+    // de esta instancia o de otra, no comparan ni corrigen el mismo bloque a la vez.
+    @Query(value = "select tarea from bloqueos_tareas where tarea = 'verificacion-resumenes' for update",
+            nativeQuery = true)
+    Optional<String> bloquearVerificacion();
+
+    // Nombre en que termina el bloque de clientes que empieza después de desde: el menor entre el
+    // nombre número salto+1 de cada tabla, así ningún bloque pasa de 3 * (salto + 1) clientes.
+    // Null si a ninguna tabla le quedan tantos nombres (el bloque llega hasta el final).
+    @Query(value = "select min(nombre_cliente) from ("
+            + " select (select nombre_cliente from fiados where nombre_cliente > :desde"
+            + "   group by nombre_cliente order by nombre_cliente limit 1 offset :salto) as nombre_cliente"
+            + " union all select (select nombre_cliente from fiados_historico where nombre_cliente > :desde"
+            + "   group by nombre_cliente order by nombre_cliente limit 1 offset :salto)"
+            + " union all select (select nombre_cliente from saldos_clientes where nombre_cliente > :desde"
+            + "   group by nombre_cliente order by nombre_cliente limit 1 offset :salto)"
+            + ") fin", nativeQuery = true)
+    String finDeBloque(@Param("desde") String desde, @Param("salto") int salto);
+
+    // Diferencia entre lo guardado y lo que suman fiados y fiados_historico para los clientes del
+    // rango: nombre_cliente, estado, monto y cantidad de más en el resumen. Una sola sentencia lee
+    // todo de la misma instantánea; solo devuelve las claves que no coinciden.
+    @Query(value = "select nombre_cliente, estado, sum(monto), sum(cantidad) from ("
+            + " select nombre_cliente, estado, monto, cantidad from saldos_clientes" + RANGO_CLIENTES
+            + " union all select coalesce(nombre_cliente, ''), coalesce(estado, ''), -coalesce(monto, 0), -1"
+            + "   from fiados" + RANGO_CLIENTES
+            + " union all select coalesce(nombre_cliente, ''), coalesce(estado, ''), -coalesce(monto, 0), -1"
+            + "   from fiados_historico" + RANGO_CLIENTES
+            + ") d group by nombre_cliente, estado having sum(monto) <> 0 or sum(cantidad) <> 0", nativeQuery = true)
+    List<Object[]> diferencias(@Param("desde") String desde, @Param("hasta") String hasta);
+
+}
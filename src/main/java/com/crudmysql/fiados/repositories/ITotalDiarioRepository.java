@@ -0,0 +1,45 @@
+package com.crudmysql.fiados.repositories;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.crudmysql.fiados.models.TotalDiarioModel;
+
+@Repository
+public interface ITotalDiarioRepository extends JpaRepository<TotalDiarioModel, LocalDate> {
+
+    List<TotalDiarioModel> findByFechaBetweenAndCantidadGreaterThanOrderByFechaAsc(LocalDate desde, LocalDate hasta,
+            long cantidad);
+
+    // Suma la diferencia al total del día en una sola sentencia; crea la fila si el día no existía.
+    @Modifying
+    @Query(value = "insert into totales_diarios (fecha, monto, cantidad) values (:fecha, :monto, :cantidad)"
+            + " on duplicate key update monto = monto + values(monto), cantidad = cantidad + values(cantidad)",
+            nativeQuery = true)
+    int sumar(@Param("fecha") LocalDate fecha, @Param("monto") BigDecimal monto, @Param("cantidad") long cantidad);
+
+    // Primera y última fecha entre fiados, fiados_historico y totales_diarios: el rango a verificar.
+    @Query(value = "select min(desde), max(hasta) from ("
+            + " select min(fecha) as desde, max(fecha) as hasta from fiados"
+            + " union all select min(fecha), max(fecha) from fiados_historico"
+            + " union all select min(fecha), max(fecha) from totales_diarios"
+            + ") f", nativeQuery = true)
+    List<Object[]> rangoFechas();
+
+    // Igual que ISaldoClienteRepository.diferencias, por día: fecha, monto y cantidad de más en el resumen.
+    @Query(value = "select fecha, sum(monto), sum(cantidad) from ("
+            + " select fecha, monto, cantidad from totales_diarios where fecha between :desde and :hasta"
+            + " union all select fecha, -coalesce(monto, 0), -1 from fiados where fecha between :desde and :hasta"
+            + " union all select fecha, -coalesce(monto, 0), -1 from fiados_historico"
+            + "   where fecha between :desde and :hasta"
+            + ") d group by fecha having sum(monto) <> 0 or sum(cantidad) <> 0", nativeQuery = true)
+    List<Object[]> diferencias(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+}
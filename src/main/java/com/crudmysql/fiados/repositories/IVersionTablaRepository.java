@@ -0,0 +1,28 @@
+package com.crudmysql.fiados.repositories;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.crudmysql.fiados.models.VersionTablaModel;
+
+@Repository
+public interface IVersionTablaRepository extends JpaRepository<VersionTablaModel, VersionTablaModel.Clave> {
+
+    // Incremento atómico en la base; devuelve 0 si la franja todavía no existe.
+    @Modifying
+    @Query("update VersionTablaModel v set v.version = v.version + 1, v.modificado = :ahora"
+            + " where v.tabla = :tabla and v.franja = :franja")
+    int incrementar(@Param("tabla") String tabla, @Param("franja") int franja, @Param("ahora") Instant ahora);
+
+    // Suma de las franjas de la tabla y su último cambio; vacío si la tabla no tiene ninguna.
+    @Query("select new com.crudmysql.fiados.models.VersionTablaModel(v.tabla, sum(v.version), max(v.modificado))"
+            + " from VersionTablaModel v where v.tabla = :tabla group by v.tabla")
+    Optional<VersionTablaModel> sumar(@Param("tabla") String tabla);
+
+}
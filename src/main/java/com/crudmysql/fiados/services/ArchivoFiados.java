@@ -0,0 +1,146 @@
+package com.crudmysql.fiados.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.crudmysql.fiados.config.CacheConfig;
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadoHistoricoRepository;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Archivo de fiados saldados (fiados.archivo.habilitado=true).
+ *
+ * Según fiados.archivo.cron mueve a fiados_historico los fiados pagados o cancelados cuya fecha
+ * tiene más de edad-minima. Trabaja por bloques de tamano-bloque filas, cada uno en su propia
+ * transacción corta: bloquea las filas del bloque (SELECT ... FOR UPDATE), las copia con
+ * INSERT ... SELECT y las borra por id. Entre bloque y bloque espera pausa-entre-bloques para
+ * no competir con las cajas por la base ni atrasar a las réplicas.
+ *
+ * Con varios shards archiva cada uno de a uno, y no archiva mientras haya una tienda moviéndose
+ * de shard, para no cambiar filas que MovimientoTiendas está copiando.
+ */
+@Component
+@ConditionalOnProperty(name = "fiados.archivo.habilitado", havingValue = "true")
+public class ArchivoFiados {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchivoFiados.class);
+
+    private static final List<String> ESTADOS_SALDADOS =
+            List.of(FiadosModel.ESTADO_PAGADO, FiadosModel.ESTADO_CANCELADO);
+
+    private final IFiadosRepository fiadosRepository;
+    private final IFiadoHistoricoRepository historicoRepository;
+    private final ShardsFiados shards;
+    private final ContadorCambiosFiados contadorCambios;
+    private final ApplicationEventPublisher eventos;
+    private final TransactionTemplate transaccion;
+    private final Cache cache;
+    private final Counter archivados;
+    private final Duration edadMinima;
+    private final int tamanoBloque;
+    private final Duration pausaEntreBloques;
+
+    public ArchivoFiados(IFiadosRepository fiadosRepository,
+            IFiadoHistoricoRepository historicoRepository,
+            ShardsFiados shards,
+            ContadorCambiosFiados contadorCambios,
+            ApplicationEventPublisher eventos,
+            PlatformTransactionManager transactionManager,
+            CacheManager cacheManager,
+            MeterRegistry meterRegistry,
+            @Value("${fiados.archivo.edad-minima:180d}") Duration edadMinima,
+            @Value("${fiados.archivo.tamano-bloque:500}") int tamanoBloque,
+            @Value("${fiados.archivo.pausa-entre-bloques:200ms}") Duration pausaEntreBloques) {
+        this.fiadosRepository = fiadosRepository;
+        this.historicoRepository = historicoRepository;
+        this.shards = shards;
+        this.contadorCambios = contadorCambios;
+        this.eventos = eventos;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.cache = cacheManager.getCache(CacheConfig.CACHE_FIADOS);
+        this.archivados = Counter.builder("fiados.archivo.movidos")
+                .description("Fiados saldados movidos a fiados_historico")
+                .register(meterRegistry);
+        this.edadMinima = edadMinima;
+        this.tamanoBloque = tamanoBloque;
+        this.pausaEntreBloques = pausaEntreBloques;
+    }
+
+    /**
+     * Archiva todo lo que cumpla la condición en este momento y devuelve cuántos fiados movió.
+     */
+    @Scheduled(cron = "${fiados.archivo.cron:0 30 3 * * *}")
+    public long archivar() {
+        LocalDate antesDe = LocalDate.now().minusDays(edadMinima.toDays());
+        long inicio = System.nanoTime();
+        long total = 0;
+        for (String shard : shards.nombres()) {
+            total += shards.enShard(shard, () -> archivarShard(antesDe));
+        }
+        log.info("Archivo de fiados: {} fiados anteriores a {} movidos a fiados_historico en {} ms",
+                total, antesDe, (System.nanoTime() - inicio) / 1_000_000);
+        return total;
+    }
+
+    // Archiva en el shard fijado en el hilo.
+    private long archivarShard(LocalDate antesDe) {
+        long total = 0;
+        while (true) {
+            if (shards.hayMovimientos()) {
+                log.info("Archivo de fiados: hay una tienda moviéndose de shard, se sigue en la próxima ejecución");
+                break;
+            }
+            List<Long> ids = transaccion.execute(estado -> archivarBloque(antesDe));
+            total += ids.size();
+            archivados.increment(ids.size());
+            // Después del commit, para que una lectura concurrente no vuelva a cachear la fila activa.
+            if (cache != null) {
+                ids.forEach(cache::evict);
+            }
+            if (ids.size() < tamanoBloque) {
+                break;
+            }
+            try {
+                Thread.sleep(pausaEntreBloques);
+            } catch (InterruptedException e) {
+                // La aplicación se está deteniendo: lo que falte se archiva en la próxima ejecución.
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return total;
+    }
+
+    private List<Long> archivarBloque(LocalDate antesDe) {
+        List<Long> ids = fiadosRepository.bloquearParaArchivar(ESTADOS_SALDADOS, antesDe, tamanoBloque);
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        historicoRepository.copiarDesdeFiados(ids, Instant.now());
+        fiadosRepository.eliminarPorIds(ids);
+        contadorCambios.registrarCambio();
+        // Se entregan a /fiados/cambios después del commit de este bloque.
+        ids.forEach(id -> eventos.publishEvent(new EventoFiado(EventoFiado.ARCHIVADO, id, null, null)));
+        return ids;
+    }
+
+}
@@ -0,0 +1,323 @@
+package com.crudmysql.fiados.services;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Canal de cambios de fiados para /fiados/cambios (Server-Sent Events).
+ *
+ * Los eventos que publica FiadosService llegan aquí después del commit y se numeran en orden.
+ * Los últimos capacidad-historial quedan en un buffer circular en memoria: un cliente que se
+ * reconecta con Last-Event-ID recibe lo que se perdió desde ese id. Si el id ya salió del buffer,
+ * es de otra ejecución de la aplicación o no viene, el cliente recibe primero una instantánea de
+ * todos los fiados leída de la base y después los eventos en vivo.
+ *
+ * La instantánea se lee de la primaria por páginas de filas-instantanea fiados
+ * (FiadosService.obtenerPaginaEnPrimaria), cada una en su propia transacción corta, y cada página
+ * se escribe al cliente después de cerrarla: un cliente lento no retiene una conexión del pool.
+ * Como mucho instantaneas-simultaneas se leen a la vez; las demás esperan su turno enviando
+ * latidos, así una flota de terminales que se reconecta después de un despliegue no agota el pool
+ * (/fiados/cambios no pasa por AdmisionFilter).
+ *
+ * Los ids de evento llevan la época de la ejecución (el instante de arranque) y el historial vive
+ * solo en memoria, así que cada reinicio o despliegue invalida todos los Last-Event-ID: cada
+ * terminal conectada descarga una instantánea completa al reconectarse. No se puede retomar desde
+ * la base porque los fiados no guardan una secuencia de cambios (y un eliminado no deja fila).
+ *
+ * Publicar nunca espera a los clientes: cada suscriptor tiene su propia cola acotada que vacía un
+ * hilo virtual. Si un cliente lento llena su cola se lo desconecta y, al reconectarse con su
+ * último id, se pone al día desde el buffer o la instantánea. Mientras recibe la instantánea no se
+ * lo desconecta: si su cola se llena se deja de encolarle eventos y, al terminar la instantánea,
+ * se retoma desde el buffer circular. Solo si durante la instantánea se publicaron más eventos que
+ * capacidad-historial se lo desconecta, y la próxima conexión vuelve a empezar.
+ *
+ * Cada instancia de la aplicación publica solo los cambios hechos a través de ella.
+ */
+@Component
+public class CanalCambiosFiados {
+
+    private static final Logger log = LoggerFactory.getLogger(CanalCambiosFiados.class);
+
+    /** Mensaje a enviar a un suscriptor: id y nombre del evento SSE y sus datos (JSON). */
+    record Mensaje(String id, String nombre, Object datos) {
+    }
+
+    /** Destino de los mensajes de un suscriptor; en producción, un SseEmitter. */
+    interface Envio {
+
+        void enviar(Mensaje mensaje) throws IOException;
+
+        void latido() throws IOException;
+
+        void cerrar();
+    }
+
+    private record Registrado(long secuencia, EventoFiado evento) {
+    }
+
+    private final class Suscriptor {
+
+        private final Envio envio;
+        private final BlockingQueue<Registrado> cola = new ArrayBlockingQueue<>(capacidadSuscriptor);
+        private volatile boolean activo = true;
+        // Protegidos por el monitor del canal. Con desbordado no se encola nada: lo que falta se
+        // toma del historial al terminar la instantánea.
+        private boolean enInstantanea;
+        private boolean desbordado;
+
+        private Suscriptor(Envio envio) {
+            this.envio = envio;
+        }
+    }
+
+    // Identifica esta ejecución; un id de evento de otra ejecución no sirve para retomar y lleva a
+    // una instantánea completa (ver la documentación de la clase).
+    private final String epoca = Long.toString(System.currentTimeMillis(), 36);
+
+    private final FiadosService fiadosService;
+    private final Registrado[] historial;
+    private final int capacidadSuscriptor;
+    private final long latidoNanos;
+    private final long duracionConexionMillis;
+    private final int filasInstantanea;
+    private final Semaphore instantaneas;
+    private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+    private final ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor();
+    private final Counter desconectados;
+
+    // Secuencia del último evento publicado; protegida, junto con historial, por el monitor del canal.
+    private long ultimaSecuencia;
+
+    public CanalCambiosFiados(FiadosService fiadosService,
+            MeterRegistry meterRegistry,
+            @Value("${fiados.cambios.capacidad-historial:10000}") int capacidadHistorial,
+            @Value("${fiados.cambios.capacidad-suscriptor:1000}") int capacidadSuscriptor,
+            @Value("${fiados.cambios.latido:15s}") Duration latido,
+            @Value("${fiados.cambios.duracion-conexion:30m}") Duration duracionConexion,
+            @Value("${fiados.cambios.filas-instantanea:500}") int filasInstantanea,
+            @Value("${fiados.cambios.instantaneas-simultaneas:4}") int instantaneasSimultaneas) {
+        this.fiadosService = fiadosService;
+        this.historial = new Registrado[capacidadHistorial];
+        this.capacidadSuscriptor = capacidadSuscriptor;
+        this.latidoNanos = latido.toNanos();
+        this.duracionConexionMillis = duracionConexion.toMillis();
+        this.filasInstantanea = filasInstantanea;
+        this.instantaneas = new Semaphore(Math.max(1, instantaneasSimultaneas), true);
+        Gauge.builder("fiados.cambios.suscriptores", suscriptores, Set::size)
+                .description("Clientes conectados a /fiados/cambios")
+                .register(meterRegistry);
+        this.desconectados = Counter.builder("fiados.cambios.desconectados")
+                .description("Suscriptores desconectados por no leer sus eventos a tiempo")
+                .register(meterRegistry);
+    }
+
+    // fallbackExecution: guardarFiado publica fuera de transacción, cuando el commit ya ocurrió.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void publicar(EventoFiado evento) {
+        synchronized (this) {
+            Registrado registrado = new Registrado(++ultimaSecuencia, evento);
+            historial[(int) (registrado.secuencia() % historial.length)] = registrado;
+            for (Suscriptor suscriptor : suscriptores) {
+                if (suscriptor.activo && !suscriptor.desbordado && !suscriptor.cola.offer(registrado)) {
+                    if (suscriptor.enInstantanea) {
+                        suscriptor.desbordado = true;
+                    } else {
+                        // Cola llena: se corta a este cliente en vez de frenar a quien escribe.
+                        suscriptor.activo = false;
+                        desconectados.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    public SseEmitter suscribir(String ultimoId) {
+        SseEmitter emisor = new SseEmitter(duracionConexionMillis);
+        Runnable terminar = suscribir(ultimoId, new Envio() {
+            @Override
+            public void enviar(Mensaje mensaje) throws IOException {
+                SseEmitter.SseEventBuilder evento = SseEmitter.event().name(mensaje.nombre()).data(mensaje.datos());
+                emisor.send(mensaje.id() == null ? evento : evento.id(mensaje.id()));
+            }
+
+            @Override
+            public void latido() throws IOException {
+                emisor.send(SseEmitter.event().comment("latido"));
+            }
+
+            @Override
+            public void cerrar() {
+                emisor.complete();
+            }
+        });
+        emisor.onCompletion(terminar);
+        emisor.onTimeout(terminar);
+        emisor.onError(error -> terminar.run());
+        return emisor;
+    }
+
+    // Devuelve la acción que da de baja al suscriptor.
+    Runnable suscribir(String ultimoId, Envio envio) {
+        Suscriptor suscriptor = new Suscriptor(envio);
+        List<Registrado> pendientes;
+        long cursor;
+        // Registrar la cola y tomar lo pendiente bajo el mismo monitor que publicar evita huecos y repetidos.
+        synchronized (this) {
+            pendientes = pendientesDesde(ultimoId);
+            cursor = ultimaSecuencia;
+            suscriptor.enInstantanea = pendientes == null;
+            suscriptores.add(suscriptor);
+        }
+        hilos.execute(() -> atender(suscriptor, pendientes, cursor));
+        return () -> suscriptor.activo = false;
+    }
+
+    // Eventos posteriores a ultimoId, o null si ese id no se puede retomar desde el historial.
+    private List<Registrado> pendientesDesde(String ultimoId) {
+        if (ultimoId == null || !ultimoId.startsWith(epoca + "-")) {
+            return null;
+        }
+        long desde;
+        try {
+            desde = Long.parseLong(ultimoId.substring(epoca.length() + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return pendientesDesde(desde);
+    }
+
+    // Eventos posteriores a la secuencia desde, o null si alguno ya salió del historial.
+    private List<Registrado> pendientesDesde(long desde) {
+        long masAntigua = Math.max(1, ultimaSecuencia - historial.length + 1);
+        if (desde > ultimaSecuencia || desde + 1 < masAntigua) {
+            return null;
+        }
+        List<Registrado> pendientes = new ArrayList<>((int) (ultimaSecuencia - desde));
+        for (long secuencia = desde + 1; secuencia <= ultimaSecuencia; secuencia++) {
+            pendientes.add(historial[(int) (secuencia % historial.length)]);
+        }
+        return pendientes;
+    }
+
+    private void atender(Suscriptor suscriptor, List<Registrado> pendientes, long cursor) {
+        try {
+            if (pendientes == null) {
+                enviarInstantanea(suscriptor, cursor);
+            } else {
+                for (Registrado registrado : pendientes) {
+                    enviar(suscriptor, registrado);
+                }
+            }
+            while (suscriptor.activo) {
+                Registrado registrado = suscriptor.cola.poll(latidoNanos, TimeUnit.NANOSECONDS);
+                if (registrado == null) {
+                    suscriptor.envio.latido();
+                } else {
+                    enviar(suscriptor, registrado);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // El cliente se fue o la respuesta ya no acepta datos.
+            log.debug("Se cierra un suscriptor de /fiados/cambios", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            suscriptor.activo = false;
+            suscriptores.remove(suscriptor);
+            suscriptor.envio.cerrar();
+        }
+    }
+
+    // Todos los fiados actuales leídos de la base, seguidos de fin-instantanea con el id desde el que
+    // siguen los eventos. Lo publicado mientras tanto queda en la cola, o en el historial si la cola
+    // se llenó, y se envía después; aplicarlo sobre la instantánea es seguro porque cada evento lleva
+    // el id y la versión del fiado. Por lo mismo, que cada página se lea en otra transacción no deja
+    // huecos: todo lo confirmado después de cursor llega igual como evento, y lo confirmado antes ya
+    // está en la primaria, de donde se leen las páginas (una réplica atrasada podría no tenerlo).
+    private void enviarInstantanea(Suscriptor suscriptor, long cursor) throws IOException, InterruptedException {
+        while (!instantaneas.tryAcquire(latidoNanos, TimeUnit.NANOSECONDS)) {
+            // El latido detecta a los clientes que se van mientras esperan turno.
+            suscriptor.envio.latido();
+            if (!suscriptor.activo) {
+                return;
+            }
+        }
+        try {
+            Long despuesDe = null;
+            do {
+                PaginaFiados pagina = fiadosService.obtenerPaginaEnPrimaria(despuesDe, filasInstantanea);
+                for (FiadosModel fiado : pagina.fiados()) {
+                    suscriptor.envio.enviar(new Mensaje(null, "instantanea", fiado));
+                }
+                despuesDe = pagina.siguienteCursor();
+            } while (despuesDe != null && suscriptor.activo);
+        } finally {
+            instantaneas.release();
+        }
+        if (!suscriptor.activo) {
+            return;
+        }
+        List<Registrado> perdidos = List.of();
+        synchronized (this) {
+            suscriptor.enInstantanea = false;
+            if (suscriptor.desbordado) {
+                // La cola se descarta entera: el historial tiene esos eventos y todos los que faltaron,
+                // y lo que se publique desde ahora vuelve a entrar en la cola.
+                perdidos = pendientesDesde(cursor);
+                suscriptor.cola.clear();
+                suscriptor.desbordado = false;
+                if (perdidos == null) {
+                    suscriptor.activo = false;
+                    desconectados.increment();
+                    return;
+                }
+            }
+        }
+        suscriptor.envio.enviar(new Mensaje(epoca + "-" + cursor, "fin-instantanea", cursor));
+        for (Registrado registrado : perdidos) {
+            enviar(suscriptor, registrado);
+        }
+    }
+
+    private void enviar(Suscriptor suscriptor, Registrado registrado) throws IOException {
+        EventoFiado evento = registrado.evento();
+        suscriptor.envio.enviar(new Mensaje(epoca + "-" + registrado.secuencia(), evento.tipo(), evento));
+    }
+
+    int suscriptores() {
+        return suscriptores.size();
+    }
+
+    @PreDestroy
+    void cerrar() {
+        suscriptores.forEach(suscriptor -> suscriptor.activo = false);
+        hilos.shutdownNow();
+    }
+
+}
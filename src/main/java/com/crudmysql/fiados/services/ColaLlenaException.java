@@ -0,0 +1,16 @@
+package com.crudmysql.fiados.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * La cola de escritura diferida no tiene lugar: el cliente debe reintentar más tarde.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ColaLlenaException extends RuntimeException {
+
+    public ColaLlenaException(String mensaje) {
+        super(mensaje);
+    }
+
+}
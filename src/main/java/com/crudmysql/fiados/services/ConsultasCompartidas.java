@@ -0,0 +1,185 @@
+package com.crudmysql.fiados.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.crudmysql.fiados.config.ShardsDataSource;
+import com.crudmysql.fiados.models.EventoFiado;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Agrupa lecturas idénticas concurrentes (single-flight): mientras una consulta está en curso,
+ * las peticiones que llegan con la misma clave esperan su resultado en vez de repetirla en la base.
+ *
+ * La clave es el nombre de la consulta más sus parámetros y el shard fijado en el hilo. La primera petición ejecuta la consulta
+ * en su propia transacción, de solo lectura (va a una réplica si las hay) o, con compartirEnPrimaria,
+ * de lectura y escritura (va a la primaria); las demás esperan sin tomar una conexión del pool, como
+ * máximo fiados.consultas-compartidas.espera-maxima (o fiados.consultas-compartidas.espera.<consulta>)
+ * contada desde que empezó la consulta. Si vence, esa clave se libera y la petición consulta por su
+ * cuenta, así una consulta trabada no retiene a todas las que llegan detrás.
+ *
+ * Cada cambio confirmado vacía las consultas en curso, para que una lectura que empieza después del
+ * commit no se sume a una consulta iniciada antes. Los resultados se comparten tal cual entre las
+ * peticiones agrupadas, igual que los de la caché: quien los recibe no debe modificarlos.
+ */
+@Component
+public class ConsultasCompartidas {
+
+    private static final String PROPIEDAD_ESPERA = "fiados.consultas-compartidas.espera.";
+
+    /** Consulta en curso: su resultado y cuándo empezó, para el vencimiento de la espera. */
+    private record Vuelo(CompletableFuture<Object> resultado, long inicio) {
+    }
+
+    private final ConcurrentHashMap<List<Object>, Vuelo> enCurso = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Duration> esperas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> contadores = new ConcurrentHashMap<>();
+    private final TransactionTemplate lectura;
+    private final TransactionTemplate primaria;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final boolean habilitadas;
+    private final Duration esperaMaxima;
+
+    public ConsultasCompartidas(PlatformTransactionManager transactionManager,
+            Environment environment,
+            MeterRegistry meterRegistry,
+            @Value("${fiados.consultas-compartidas.habilitadas:true}") boolean habilitadas,
+            @Value("${fiados.consultas-compartidas.espera-maxima:2s}") Duration esperaMaxima) {
+        this.lectura = new TransactionTemplate(transactionManager);
+        this.lectura.setReadOnly(true);
+        this.primaria = new TransactionTemplate(transactionManager);
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.habilitadas = habilitadas;
+        this.esperaMaxima = esperaMaxima;
+    }
+
+    /**
+     * Devuelve el resultado de la consulta, compartiendo la ejecución con las peticiones concurrentes
+     * que usan el mismo nombre y los mismos parámetros. Dentro de una transacción ya abierta la consulta
+     * se ejecuta directamente, porque su resultado depende de lo que esa transacción ve.
+     */
+    public <T> T compartir(String consulta, Supplier<T> ejecucion, Object... parametros) {
+        return compartir(lectura, consulta, ejecucion, parametros);
+    }
+
+    /**
+     * Como compartir, pero la consulta se ejecuta en una transacción de lectura y escritura, que
+     * siempre va a la primaria: para los resultados que se guardan en la caché.
+     */
+    public <T> T compartirEnPrimaria(String consulta, Supplier<T> ejecucion, Object... parametros) {
+        return compartir(primaria, consulta, ejecucion, parametros);
+    }
+
+    private <T> T compartir(TransactionTemplate transaccion, String consulta, Supplier<T> ejecucion,
+            Object... parametros) {
+        if (!habilitadas || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transaccion.execute(estado -> ejecucion.get());
+        }
+        List<Object> clave = new ArrayList<>(parametros.length + 3);
+        clave.add(consulta);
+        clave.add(ShardsDataSource.actual());
+        // Una lectura de la primaria no se suma a la misma consulta hecha en una réplica.
+        clave.add(transaccion.isReadOnly());
+        clave.addAll(Arrays.asList(parametros));
+
+        Vuelo propio = new Vuelo(new CompletableFuture<>(), System.nanoTime());
+        Vuelo vuelo = enCurso.putIfAbsent(clave, propio);
+        if (vuelo == null) {
+            return ejecutar(transaccion, consulta, clave, propio, ejecucion);
+        }
+        return esperar(transaccion, consulta, clave, vuelo, ejecucion);
+    }
+
+    // Cualquier cambio confirmado, desde este servicio o desde ArchivoFiados.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void olvidarConsultas(EventoFiado evento) {
+        enCurso.clear();
+    }
+
+    private <T> T ejecutar(TransactionTemplate transaccion, String consulta, List<Object> clave, Vuelo propio,
+            Supplier<T> ejecucion) {
+        contador("fiados.consultas.ejecutadas",
+                "Consultas de lectura ejecutadas en la base", consulta).increment();
+        try {
+            T resultado = transaccion.execute(estado -> ejecucion.get());
+            propio.resultado().complete(resultado);
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            // Las peticiones agrupadas reciben el mismo error que la que ejecutó la consulta.
+            propio.resultado().completeExceptionally(e);
+            throw e;
+        } finally {
+            // Solo si sigue siendo la suya: pudo vencer o vaciarse y ya haber otra en curso.
+            enCurso.remove(clave, propio);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T esperar(TransactionTemplate transaccion, String consulta, List<Object> clave, Vuelo vuelo,
+            Supplier<T> ejecucion) {
+        long restante = espera(consulta).toNanos() - (System.nanoTime() - vuelo.inicio());
+        try {
+            T resultado = (T) vuelo.resultado().get(Math.max(0, restante), TimeUnit.NANOSECONDS);
+            contador("fiados.consultas.agrupadas",
+                "Lecturas resueltas con el resultado de otra consulta en curso", consulta).increment();
+            return resultado;
+        } catch (TimeoutException e) {
+            contador("fiados.consultas.vencidas",
+                "Lecturas que dejaron de esperar una consulta en curso", consulta).increment();
+            enCurso.remove(clave, vuelo);
+            // Las que vencen juntas vuelven a agruparse en una consulta nueva; si otra ya la empezó,
+            // esta no espera una segunda vez.
+            Vuelo propio = new Vuelo(new CompletableFuture<>(), System.nanoTime());
+            if (enCurso.putIfAbsent(clave, propio) == null) {
+                return ejecutar(transaccion, consulta, clave, propio, ejecucion);
+            }
+            return transaccion.execute(estado -> ejecucion.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error causa) {
+                throw causa;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando la consulta " + consulta, e);
+        }
+    }
+
+    private Duration espera(String consulta) {
+        return esperas.computeIfAbsent(consulta,
+                nombre -> Binder.get(environment).bind(PROPIEDAD_ESPERA + nombre, Duration.class).orElse(esperaMaxima));
+    }
+
+    // Una etiqueta por nombre de consulta, nunca por parámetros, para acotar las series de métricas.
+    private Counter contador(String metrica, String descripcion, String consulta) {
+        return contadores.computeIfAbsent(metrica + "/" + consulta, clave -> Counter.builder(metrica)
+                .description(descripcion)
+                .tag("consulta", consulta)
+                .register(meterRegistry));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.crudmysql.fiados.services;
+
+import java.time.Instant;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.crudmysql.fiados.models.VersionTablaModel;
+import com.crudmysql.fiados.repositories.IVersionTablaRepository;
+
+/**
+ * Versión de la tabla fiados, usada como ETag y Last-Modified de /fiados/listar.
+ *
+ * Toda transacción que modifica fiados sube la versión antes de su commit, así la versión nueva
+ * y los datos nuevos se hacen visibles juntos. El contador vive en la base y no en memoria para
+ * que todas las instancias de la aplicación (y las réplicas de lectura) vean el mismo valor.
+ *
+ * El bloqueo de la fila que se incrementa dura hasta el commit, así que con una sola fila todas las
+ * escrituras se harían de a una. El contador se reparte en FRANJAS filas (V10) y cada transacción
+ * sube solo la del hilo que la ejecuta: dos escrituras esperan una a la otra solo si les toca la
+ * misma. Una transacción corre en un único hilo, así que nunca toma dos franjas ni puede cruzarse
+ * con otra en un interbloqueo. La versión es la suma de las franjas: sigue subiendo en uno por
+ * transacción.
+ */
+@Component
+public class ContadorCambiosFiados {
+
+    public static final String TABLA = "fiados";
+
+    // Filas del contador; V10 crea las 0 a 15.
+    static final int FRANJAS = 16;
+
+    @Autowired
+    private IVersionTablaRepository versionTablaRepository;
+
+    // Se lee de la primaria (transacción que no es de solo lectura): con una réplica atrasada el ETag
+    // podría ser anterior a un cambio ya confirmado y un 304 dejaría al cliente con datos viejos.
+    @Transactional
+    public VersionTablaModel actual() {
+        return versionTablaRepository.sumar(TABLA)
+                .orElseGet(() -> new VersionTablaModel(TABLA, 0, Instant.EPOCH));
+    }
+
+    // Debe llamarse dentro de la transacción que modificó los fiados, como última sentencia.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrarCambio() {
+        Instant ahora = Instant.now();
+        int franja = (int) (Thread.currentThread().threadId() % FRANJAS);
+        if (versionTablaRepository.incrementar(TABLA, franja, ahora) == 0) {
+            // Primera escritura sobre una base sin la franja inicial (las crea V10 o ddl-auto).
+            versionTablaRepository.save(new VersionTablaModel(TABLA, franja, 1, ahora));
+        }
+    }
+
+    // Ejecuta la escritura y registra el cambio en una misma transacción.
+    @Transactional
+    public <T> T registrando(Supplier<T> escritura) {
+        T resultado = escritura.get();
+        registrarCambio();
+        return resultado;
+    }
+
+}
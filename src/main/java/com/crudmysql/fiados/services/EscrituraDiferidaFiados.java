@@ -0,0 +1,232 @@
+package com.crudmysql.fiados.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Escritura diferida (write-behind) para guardarFiado, activada con
+ * fiados.escritura-diferida.habilitada=true.
+ *
+ * Cada fiado entra en una cola acotada y un único hilo la vacía en grupos: espera el primero,
+ * junta los que lleguen hasta completar tamano-grupo o hasta que pase espera-grupo, y los guarda
+ * todos en una sola transacción. Así una ráfaga de N altas paga un commit (y un fsync de MySQL)
+ * por grupo en vez de uno por fiado. El futuro de cada llamador se completa recién después del
+ * commit, con el fiado ya guardado y su id.
+ *
+ * Si la cola está llena, encolar espera como máximo espera-encolar y luego lanza
+ * ColaLlenaException (503). Al detener la aplicación se dejan de aceptar fiados y se confirman
+ * todos los que ya estaban en la cola antes de cerrar el pool de conexiones.
+ */
+@Component
+@ConditionalOnProperty(name = "fiados.escritura-diferida.habilitada", havingValue = "true")
+public class EscrituraDiferidaFiados implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EscrituraDiferidaFiados.class);
+
+    // nuevo: el fiado llegó sin versión, así que saveAll lo da de alta (persist) en vez de fusionarlo.
+    private record Pendiente(FiadosModel fiado, boolean nuevo, CompletableFuture<FiadosModel> resultado) {
+    }
+
+    private final IFiadosRepository fiadosRepository;
+    private final ContadorCambiosFiados contadorCambios;
+    private final ResumenesFiados resumenes;
+    private final ShardsFiados shards;
+    private final TransactionTemplate transaccion;
+    private final BlockingQueue<Pendiente> cola;
+    private final int tamanoGrupo;
+    private final long esperaGrupoNanos;
+    private final long esperaEncolarNanos;
+    private final DistributionSummary tamanoGrupos;
+
+    private volatile boolean aceptando;
+    private Thread drenador;
+
+    public EscrituraDiferidaFiados(IFiadosRepository fiadosRepository,
+            ContadorCambiosFiados contadorCambios,
+            ResumenesFiados resumenes,
+            ShardsFiados shards,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${fiados.escritura-diferida.capacidad:10000}") int capacidad,
+            @Value("${fiados.escritura-diferida.tamano-grupo:100}") int tamanoGrupo,
+            @Value("${fiados.escritura-diferida.espera-grupo:5ms}") Duration esperaGrupo,
+            @Value("${fiados.escritura-diferida.espera-encolar:100ms}") Duration esperaEncolar) {
+        this.fiadosRepository = fiadosRepository;
+        this.contadorCambios = contadorCambios;
+        this.resumenes = resumenes;
+        this.shards = shards;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.tamanoGrupo = tamanoGrupo;
+        this.esperaGrupoNanos = esperaGrupo.toNanos();
+        this.esperaEncolarNanos = esperaEncolar.toNanos();
+        this.tamanoGrupos = DistributionSummary.builder("fiados.escritura.diferida.grupo")
+                .description("Fiados confirmados por cada commit de la escritura diferida")
+                .register(meterRegistry);
+        Gauge.builder("fiados.escritura.diferida.cola", cola, BlockingQueue::size)
+                .description("Fiados esperando en la cola de escritura diferida")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pone el fiado en la cola. El futuro se completa con el fiado guardado después del commit
+     * de su grupo, o con la excepción que haya impedido guardarlo.
+     */
+    public CompletableFuture<FiadosModel> encolar(FiadosModel fiado) {
+        if (!aceptando) {
+            throw new ColaLlenaException("La escritura diferida se está deteniendo");
+        }
+        Pendiente pendiente = new Pendiente(fiado, fiado.getVersion() == null, new CompletableFuture<>());
+        boolean encolado;
+        try {
+            encolado = cola.offer(pendiente, esperaEncolarNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encolado = false;
+        }
+        if (!encolado) {
+            throw new ColaLlenaException("La cola de escritura diferida está llena");
+        }
+        // Si stop() empezó mientras se encolaba, puede que el drenador ya no lo vea:
+        // si todavía está en la cola se retira y se rechaza en vez de dejarlo sin respuesta.
+        if (!aceptando && cola.remove(pendiente)) {
+            throw new ColaLlenaException("La escritura diferida se está deteniendo");
+        }
+        return pendiente.resultado();
+    }
+
+    private void drenar() {
+        List<Pendiente> grupo = new ArrayList<>(tamanoGrupo);
+        // Al detenerse, sigue hasta vaciar la cola para no perder nada ya aceptado.
+        while (aceptando || !cola.isEmpty()) {
+            try {
+                Pendiente primero = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                grupo.add(primero);
+                long limite = System.nanoTime() + esperaGrupoNanos;
+                while (grupo.size() < tamanoGrupo) {
+                    Pendiente siguiente = cola.poll(limite - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    grupo.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                // La interrupción no corta el vaciado: lo que quede se confirma en la próxima vuelta.
+                aceptando = false;
+            }
+            if (!grupo.isEmpty()) {
+                confirmar(grupo);
+                grupo.clear();
+            }
+        }
+    }
+
+    // Un grupo puede juntar tiendas de varios shards: cada shard confirma su parte en su transacción.
+    private void confirmar(List<Pendiente> grupo) {
+        Map<String, List<Pendiente>> porShard = new LinkedHashMap<>();
+        for (Pendiente pendiente : grupo) {
+            porShard.computeIfAbsent(shards.shardDe(pendiente.fiado().getTienda()), shard -> new ArrayList<>())
+                    .add(pendiente);
+        }
+        porShard.forEach((shard, delShard) -> shards.enShard(shard, () -> {
+            confirmarEnShard(delShard);
+            return null;
+        }));
+    }
+
+    private void confirmarEnShard(List<Pendiente> grupo) {
+        tamanoGrupos.record(grupo.size());
+        try {
+            List<FiadosModel> guardados = transaccion.execute(estado -> {
+                List<FiadosModel> fiados = resumenes.guardando(grupo.stream().map(Pendiente::fiado).toList(),
+                        fiadosRepository::saveAll);
+                contadorCambios.registrarCambio();
+                return fiados;
+            });
+            for (int i = 0; i < grupo.size(); i++) {
+                grupo.get(i).resultado().complete(guardados.get(i));
+            }
+        } catch (RuntimeException e) {
+            // Si el grupo falla se reintenta fiado por fiado, para que uno inválido no arrastre al resto.
+            log.warn("Falló el commit de un grupo de {} fiados, se reintentan por separado", grupo.size(), e);
+            for (Pendiente pendiente : grupo) {
+                // saveAll ya les dio id y versión 0 a los nuevos antes del rollback; sin limpiarlos, save
+                // los tomaría por existentes y los fusionaría, y fallarían por bloqueo optimista.
+                if (pendiente.nuevo()) {
+                    pendiente.fiado().setId(null);
+                    pendiente.fiado().setVersion(null);
+                }
+                try {
+                    pendiente.resultado().complete(transaccion.execute(estado -> {
+                        FiadosModel guardado = resumenes.guardando(pendiente.fiado(), fiadosRepository::save);
+                        contadorCambios.registrarCambio();
+                        return guardado;
+                    }));
+                } catch (RuntimeException individual) {
+                    pendiente.resultado().completeExceptionally(individual);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        aceptando = true;
+        drenador = Thread.ofPlatform().name("fiados-escritura-diferida").start(this::drenar);
+    }
+
+    @Override
+    public void stop() {
+        aceptando = false;
+        try {
+            drenador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Lo que se haya colado entre la última vuelta del drenador y ahora se confirma aquí.
+        List<Pendiente> restantes = new ArrayList<>();
+        while (cola.drainTo(restantes, tamanoGrupo) > 0) {
+            confirmar(restantes);
+            restantes.clear();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return drenador != null && drenador.isAlive();
+    }
+
+    // Se detiene después del servidor web (fase menor), cuando ya no pueden llegar más fiados,
+    // y antes de que se cierre el DataSource.
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+}
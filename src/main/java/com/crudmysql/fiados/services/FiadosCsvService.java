@@ -0,0 +1,393 @@
+package com.crudmysql.fiados.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.crudmysql.fiados.models.ErrorLinea;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.ResultadoImportacion;
+
+/**
+ * Exportación e importación de fiados en CSV para archivos de millones de filas.
+ *
+ * Ambas operaciones trabajan fila por fila: la exportación escribe a medida que lee del cursor
+ * de la base (FiadosService.recorrerFiados) y la importación junta a lo sumo filasPorTransaccion
+ * fiados antes de insertarlos con guardarLoteSinAviso, así que la memoria no depende del tamaño del
+ * archivo. La importación publica un solo RECARGAR al terminar, no uno por bloque.
+ *
+ * Formato: cabecera "id,nombreCliente,monto,fecha,estado,tienda", monto con punto decimal y fecha ISO.
+ * Se importan también archivos sin la columna tienda (los exportados antes de los shards): sus
+ * fiados quedan en la tienda principal.
+ * Los campos con comas, comillas o saltos de línea van entre comillas dobles ("" para una comilla
+ * literal), según RFC 4180; la importación lee con las mismas reglas (LectorCsv), así que un registro
+ * puede ocupar varias líneas del archivo. Al importar se ignora la columna id: cada fila es un fiado nuevo.
+ *
+ * Los límites de las columnas (largo de nombreCliente, estado y tienda, rango de monto) se comprueban
+ * al leer cada fila, así una fila que la base rechazaría se informa sola en vez de deshacer su bloque.
+ * Con shards cada bloque se inserta en una transacción por shard: si una falla, solo las filas de
+ * ese shard se informan como no insertadas, una por una.
+ */
+@Service
+public class FiadosCsvService {
+
+    public static final String CABECERA = "id,nombreCliente,monto,fecha,estado,tienda";
+
+    // Cantidad máxima de errores que se detallan en la respuesta de una importación.
+    public static final int MAXIMO_ERRORES_INFORMADOS = 1000;
+
+    // Largo de nombre_cliente y estado (VARCHAR(255)) y de tienda (VARCHAR(64)).
+    static final int LARGO_MAXIMO_TEXTO = 255;
+    static final int LARGO_MAXIMO_TIENDA = 64;
+
+    // Mayor monto que admite DECIMAL(12,2), en valor absoluto.
+    static final BigDecimal MONTO_MAXIMO = new BigDecimal("9999999999.99");
+
+    // Largo máximo de un campo al leer: muy por encima de cualquier columna, y evita que unas comillas
+    // sin cerrar carguen en memoria el resto de un archivo de hasta 2 GB.
+    static final int LARGO_MAXIMO_CAMPO = 4096;
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private ShardsFiados shards;
+
+    // Filas que se insertan en cada bloque; un error de la base solo descarta ese bloque (en ese shard).
+    @Value("${fiados.importacion.filas-por-transaccion:1000}")
+    private int filasPorTransaccion;
+
+    public void exportar(Writer salida) throws IOException {
+        salida.write(CABECERA);
+        salida.write('\n');
+        StringBuilder linea = new StringBuilder(128);
+        try {
+            fiadosService.recorrerFiados(fiado -> {
+                linea.setLength(0);
+                linea.append(fiado.getId()).append(',')
+                        .append(escapar(fiado.getNombreCliente())).append(',')
+                        .append(fiado.getMonto() == null ? "" : fiado.getMonto().toPlainString()).append(',')
+                        .append(fiado.getFecha() == null ? "" : fiado.getFecha().toString()).append(',')
+                        .append(escapar(fiado.getEstado())).append(',')
+                        .append(escapar(fiado.getTienda())).append('\n');
+                try {
+                    salida.append(linea);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        salida.flush();
+    }
+
+    public ResultadoImportacion importar(Reader entrada) throws IOException {
+        long inicio = System.nanoTime();
+        LectorCsv lector = new LectorCsv(entrada);
+        Importacion importacion = new Importacion(Math.max(1, filasPorTransaccion));
+
+        // Los bloques se insertan sin aviso; las terminales reciben un solo RECARGAR al final, también
+        // si la lectura se corta a mitad del archivo con filas ya confirmadas.
+        try {
+            leerRegistros(lector, importacion);
+            importacion.insertarPendientes();
+        } finally {
+            if (importacion.insertadas > 0) {
+                fiadosService.avisarRecarga();
+            }
+        }
+
+        return new ResultadoImportacion(lector.lineas(), importacion.insertadas, importacion.errores,
+                importacion.erroresOmitidos, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private static void leerRegistros(LectorCsv lector, Importacion importacion) throws IOException {
+        List<String> campos;
+        boolean primero = true;
+        while (true) {
+            try {
+                campos = lector.leer();
+            } catch (IllegalArgumentException e) {
+                // Comillas sin cerrar al final del archivo o un campo demasiado largo: se informa el registro
+                // y se sigue con el próximo.
+                importacion.registrarError(lector.lineaRegistro(), e.getMessage());
+                continue;
+            }
+            if (campos == null) {
+                break;
+            }
+            boolean cabecera = primero && esCabecera(campos);
+            primero = false;
+            if (cabecera || (campos.size() == 1 && campos.get(0).isBlank())) {
+                continue;
+            }
+            importacion.agregar(lector.lineaRegistro(), campos);
+        }
+    }
+
+    /** Estado de una importación en curso: el bloque pendiente y los contadores. */
+    private class Importacion {
+
+        private final int tamanoBloque;
+        private final List<FiadosModel> bloque;
+        // Línea donde empieza cada fiado del bloque, en el mismo orden.
+        private final List<Long> lineasBloque;
+        private long insertadas;
+        private final List<ErrorLinea> errores = new ArrayList<>();
+        private long erroresOmitidos;
+
+        Importacion(int tamanoBloque) {
+            this.tamanoBloque = tamanoBloque;
+            this.bloque = new ArrayList<>(tamanoBloque);
+            this.lineasBloque = new ArrayList<>(tamanoBloque);
+        }
+
+        void agregar(long numero, List<String> campos) {
+            FiadosModel fiado;
+            try {
+                fiado = leerFiado(campos);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                registrarError(numero, e.getMessage());
+                return;
+            }
+            bloque.add(fiado);
+            lineasBloque.add(numero);
+            if (bloque.size() == tamanoBloque) {
+                insertarPendientes();
+            }
+        }
+
+        void insertarPendientes() {
+            if (bloque.isEmpty()) {
+                return;
+            }
+            // guardarLoteSinAviso confirma cada shard por separado: se le pasa un shard a la vez para saber
+            // exactamente qué filas entraron.
+            Map<String, List<Integer>> porShard = new LinkedHashMap<>();
+            for (int i = 0; i < bloque.size(); i++) {
+                FiadosModel fiado = bloque.get(i);
+                if (fiado.getTienda() == null) {
+                    fiado.setTienda(FiadosModel.TIENDA_PRINCIPAL);
+                }
+                try {
+                    porShard.computeIfAbsent(shards.shardParaEscribir(fiado.getTienda()), shard -> new ArrayList<>())
+                            .add(i);
+                } catch (TiendaEnMovimientoException e) {
+                    registrarError(lineasBloque.get(i), e.getMessage());
+                }
+            }
+            porShard.forEach((shard, posiciones) -> {
+                List<FiadosModel> delShard = new ArrayList<>(posiciones.size());
+                for (int posicion : posiciones) {
+                    delShard.add(bloque.get(posicion));
+                }
+                try {
+                    insertadas += fiadosService.guardarLoteSinAviso(delShard).filas();
+                } catch (RuntimeException e) {
+                    // Esa transacción se deshizo completa: se informa cada fila y se sigue con el resto.
+                    for (int posicion : posiciones) {
+                        registrarError(lineasBloque.get(posicion), "No se pudo insertar: " + e.getMessage());
+                    }
+                }
+            });
+            bloque.clear();
+            lineasBloque.clear();
+        }
+
+        void registrarError(long numero, String mensaje) {
+            if (errores.size() < MAXIMO_ERRORES_INFORMADOS) {
+                errores.add(new ErrorLinea(numero, mensaje));
+            } else {
+                erroresOmitidos++;
+            }
+        }
+    }
+
+    static FiadosModel leerFiado(List<String> campos) {
+        if (campos.size() != 5 && campos.size() != 6) {
+            throw new IllegalArgumentException("Se esperaban 5 o 6 campos y hay " + campos.size());
+        }
+        String nombreCliente = campos.get(1).trim();
+        if (nombreCliente.isEmpty()) {
+            throw new IllegalArgumentException("Falta nombreCliente");
+        }
+        FiadosModel fiado = new FiadosModel();
+        fiado.setNombreCliente(comprobarLargo("nombreCliente", nombreCliente, LARGO_MAXIMO_TEXTO));
+        BigDecimal monto;
+        try {
+            monto = new BigDecimal(campos.get(2).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Monto inválido: " + campos.get(2));
+        }
+        // La base redondea a 2 decimales; lo que no entra es la parte entera.
+        if (monto.setScale(2, RoundingMode.HALF_UP).abs().compareTo(MONTO_MAXIMO) > 0) {
+            throw new IllegalArgumentException("Monto fuera de rango: " + campos.get(2));
+        }
+        fiado.setMonto(monto);
+        fiado.setFecha(LocalDate.parse(campos.get(3).trim()));
+        fiado.setEstado(comprobarLargo("estado", campos.get(4).trim(), LARGO_MAXIMO_TEXTO));
+        String tienda = campos.size() == 6 ? campos.get(5).trim() : "";
+        fiado.setTienda(tienda.isEmpty() ? FiadosModel.TIENDA_PRINCIPAL
+                : comprobarLargo("tienda", tienda, LARGO_MAXIMO_TIENDA));
+        return fiado;
+    }
+
+    private static String comprobarLargo(String nombre, String valor, int maximo) {
+        if (valor.length() > maximo) {
+            throw new IllegalArgumentException(nombre + " tiene " + valor.length() + " caracteres; el máximo es " + maximo);
+        }
+        return valor;
+    }
+
+    /**
+     * Lee registros CSV de a uno con las reglas de escapar: un campo que empieza con comillas dobles
+     * termina en la comilla que cierra y puede tener comas, "" y saltos de línea; fuera de comillas,
+     * \n o \r\n terminan el registro. Lleva la cuenta de líneas para informar errores.
+     *
+     * Un campo de más de LARGO_MAXIMO_CAMPO caracteres (en general, comillas sin cerrar) descarta el
+     * registro hasta el final de la línea en que se pasó del límite, y la lectura sigue en la próxima.
+     */
+    static final class LectorCsv {
+
+        private final Reader entrada;
+        private final char[] buffer = new char[8192];
+        private int posicion;
+        private int disponibles;
+        private final StringBuilder campo = new StringBuilder();
+        private long lineas;
+        private boolean inicioDeLinea = true;
+        private long lineaRegistro;
+
+        LectorCsv(Reader entrada) {
+            this.entrada = entrada;
+        }
+
+        // Líneas del archivo leídas hasta ahora.
+        long lineas() {
+            return lineas;
+        }
+
+        // Línea donde empieza el último registro leído.
+        long lineaRegistro() {
+            return lineaRegistro;
+        }
+
+        /** Campos del siguiente registro, o null al final del archivo. */
+        List<String> leer() throws IOException {
+            int c = siguiente();
+            if (c < 0) {
+                return null;
+            }
+            if (lineas == 1 && lineaRegistro == 0 && c == '\uFEFF') {
+                // Marca de orden de bytes que agregan algunas planillas al guardar en UTF-8.
+                c = siguiente();
+            }
+            lineaRegistro = lineas;
+            List<String> campos = new ArrayList<>(6);
+            campo.setLength(0);
+            boolean entreComillas = false;
+            boolean citado = false;
+            while (true) {
+                if (entreComillas) {
+                    if (c < 0) {
+                        throw new IllegalArgumentException("Comillas sin cerrar");
+                    }
+                    if (c == '"') {
+                        c = siguiente();
+                        if (c != '"') {
+                            entreComillas = false;
+                            continue;
+                        }
+                    }
+                    agregar(c);
+                } else if (c == '"' && campo.isEmpty() && !citado) {
+                    entreComillas = true;
+                    citado = true;
+                } else if (c == ',') {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                    citado = false;
+                } else if (c < 0 || c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        saltarSi('\n');
+                    }
+                    campos.add(campo.toString());
+                    return campos;
+                } else {
+                    agregar(c);
+                }
+                c = siguiente();
+            }
+        }
+
+        private void agregar(int c) throws IOException {
+            if (campo.length() == LARGO_MAXIMO_CAMPO) {
+                campo.setLength(0);
+                int resto = c;
+                while (resto >= 0 && resto != '\n') {
+                    resto = siguiente();
+                }
+                throw new IllegalArgumentException("Campo de más de " + LARGO_MAXIMO_CAMPO
+                        + " caracteres (¿comillas sin cerrar?); se descartó hasta la línea " + lineas);
+            }
+            campo.append((char) c);
+        }
+
+        private int siguiente() throws IOException {
+            if (posicion == disponibles) {
+                disponibles = entrada.read(buffer);
+                posicion = 0;
+                if (disponibles <= 0) {
+                    disponibles = 0;
+                    return -1;
+                }
+            }
+            char c = buffer[posicion++];
+            if (inicioDeLinea) {
+                lineas++;
+                inicioDeLinea = false;
+            }
+            if (c == '\n') {
+                inicioDeLinea = true;
+            }
+            return c;
+        }
+
+        private void saltarSi(char esperado) throws IOException {
+            int c = siguiente();
+            if (c >= 0 && c != esperado) {
+                // Todavía está en el buffer: se deja para el próximo registro.
+                posicion--;
+            }
+        }
+    }
+
+    static String escapar(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+
+    private static boolean esCabecera(List<String> campos) {
+        return campos.get(0).equals("id");
+    }
+
+}
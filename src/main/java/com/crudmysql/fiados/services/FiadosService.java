@@ -1,38 +1,535 @@
 package com.crudmysql.fiados.services;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.crudmysql.fiados.config.CacheConfig;
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadoHistoricoModel;
+import com.crudmysql.fiados.models.FiadoResumen;
 import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+import com.crudmysql.fiados.models.ResultadoLote;
+import com.crudmysql.fiados.models.VersionTablaModel;
+import com.crudmysql.fiados.repositories.IFiadoHistoricoRepository;
 import com.crudmysql.fiados.repositories.IFiadosRepository;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+
 @Service
 public class FiadosService {
 
+    // Tamaño máximo de página aceptado, para que un cliente no pueda pedir la tabla entera de una vez.
+    public static final int LIMITE_MAXIMO_PAGINA = 1000;
+
     @Autowired
     private IFiadosRepository fiadosRepository;
 
+    // Fiados saldados que ArchivoFiados sacó de la tabla activa. Solo se consulta si se pide.
+    @Autowired
+    private IFiadoHistoricoRepository historicoRepository;
+
+    // Solo existe con fiados.escritura-diferida.habilitada=true.
+    @Autowired(required = false)
+    private EscrituraDiferidaFiados escrituraDiferida;
+
+    @Autowired
+    private ContadorCambiosFiados contadorCambios;
+
+    // Los cambios se publican como EventoFiado; CanalCambiosFiados los recibe después del commit.
+    @Autowired
+    private ApplicationEventPublisher eventos;
+
+    // Saldos por cliente y totales por día, actualizados en la misma transacción que cada escritura.
+    @Autowired
+    private ResumenesFiados resumenes;
+
+    // Lecturas concurrentes idénticas comparten una sola consulta; abre la transacción de solo lectura.
+    @Autowired
+    private ConsultasCompartidas consultas;
+
+    // Shard de cada tienda; las lecturas que no son de una tienda se reparten a todos y se combinan aquí.
+    @Autowired
+    private ShardsFiados shards;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Cada cuántos fiados se vacía el contexto de persistencia en guardarLote; coincide con el lote JDBC.
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int tamanoLote;
+
+    // Versión de la tabla, para que el controlador pueda responder 304 sin consultar los fiados.
+    // Con varios shards la versión es la suma de las de cada uno: sube con cualquier cambio.
+    public VersionTablaModel obtenerVersionTabla() {
+        Collection<VersionTablaModel> versiones = shards.enTodos(contadorCambios::actual).values();
+        if (versiones.size() == 1) {
+            return versiones.iterator().next();
+        }
+        return new VersionTablaModel(versiones.iterator().next().getTabla(),
+                versiones.stream().mapToLong(VersionTablaModel::getVersion).sum(),
+                versiones.stream().map(VersionTablaModel::getModificado).max(Comparator.naturalOrder()).orElseThrow());
+    }
+
+    // Cada llamada recibe su propia lista, aunque los fiados sean los de una consulta compartida.
     public ArrayList<FiadosModel> obtenerFiados() {
-        return (ArrayList<FiadosModel>) fiadosRepository.findAll();
+        return vigentes(shards.enTodos(() -> consultas.compartir("listar", fiadosRepository::findAll)));
+    }
+
+    // Fiados activos más los archivados en fiados_historico, cada shard en su transacción de solo lectura.
+    public ArrayList<FiadosModel> obtenerFiadosConHistorico() {
+        ArrayList<FiadosModel> fiados = obtenerFiados();
+        fiados.addAll(vigentes(shards.enTodosEnTransaccion(() -> historicoRepository.findAll().stream()
+                .map(FiadoHistoricoModel::aFiado).toList(), true)));
+        return fiados;
+    }
+
+    // Ids disjuntos entre shards: la página es la unión de las páginas de cada shard, cortada en tamano.
+    public PaginaFiados obtenerPagina(Long despuesDe, int limite) {
+        return obtenerPagina(despuesDe, limite, false);
+    }
+
+    // Como obtenerPagina, pero leída de la primaria: la instantánea de /fiados/cambios no puede perder
+    // lo confirmado antes de su cursor, y una réplica atrasada todavía no lo tiene.
+    public PaginaFiados obtenerPaginaEnPrimaria(Long despuesDe, int limite) {
+        return obtenerPagina(despuesDe, limite, true);
+    }
+
+    private PaginaFiados obtenerPagina(Long despuesDe, int limite, boolean enPrimaria) {
+        int tamano = Math.max(1, Math.min(limite, LIMITE_MAXIMO_PAGINA));
+        long desde = despuesDe == null ? 0L : despuesDe;
+        Supplier<List<FiadosModel>> consulta = () -> fiadosRepository.findByIdGreaterThanOrderByIdAsc(desde,
+                Limit.of(tamano));
+        List<FiadosModel> fiados = vigentes(shards.enTodos(() -> enPrimaria
+                ? consultas.compartirEnPrimaria("pagina", consulta, desde, tamano)
+                : consultas.compartir("pagina", consulta, desde, tamano)))
+                .stream().sorted(Comparator.comparing(FiadosModel::getId)).limit(tamano).toList();
+        // Si la página vino incompleta no hay más filas y no se devuelve cursor.
+        Long siguienteCursor = fiados.size() < tamano ? null : fiados.get(fiados.size() - 1).getId();
+        return new PaginaFiados(fiados, siguienteCursor);
     }
 
+    /**
+     * Entrega todos los fiados, uno por uno, al consumidor sin cargarlos juntos en memoria.
+     * Cada entidad se separa del contexto de persistencia después de procesarla
+     * para que el uso de memoria no crezca con el tamaño de la tabla.
+     */
+    // Los shards se recorren de a uno, cada uno en su transacción de solo lectura.
+    public void recorrerFiados(Consumer<FiadosModel> consumidor) {
+        recorrerFiados(consumidor, true);
+    }
+
+    // Como recorrerFiados, pero en transacciones de lectura y escritura, que van a la primaria: para
+    // IndiceClientes, que reconstruye después de un RECARGAR y no puede perder lo recién confirmado.
+    public void recorrerFiadosEnPrimaria(Consumer<FiadosModel> consumidor) {
+        recorrerFiados(consumidor, false);
+    }
+
+    private void recorrerFiados(Consumer<FiadosModel> consumidor, boolean soloLectura) {
+        for (String shard : shards.nombres()) {
+            shards.enShardEnTransaccion(shard, () -> {
+                try (Stream<FiadosModel> fiados = fiadosRepository.streamAll()) {
+                    fiados.forEach(fiado -> {
+                        if (shards.esDuenio(shard, fiado.getTienda())) {
+                            consumidor.accept(fiado);
+                        }
+                        entityManager.detach(fiado);
+                    });
+                }
+                return null;
+            }, soloLectura);
+        }
+    }
+
+    // Fiados de un cliente, opcionalmente de un solo estado, como proyección de solo lectura.
+    public List<FiadoResumen> obtenerPorCliente(String nombreCliente, String estado, int limite) {
+        Limit tope = acotarLimite(limite);
+        return intercalar(shards.enTodos(() -> consultas.compartir("por-cliente", () -> estado == null
+                ? fiadosRepository.findByNombreClienteOrderByIdAsc(nombreCliente, tope)
+                : fiadosRepository.findByNombreClienteAndEstadoOrderByIdAsc(nombreCliente, estado, tope),
+                nombreCliente, estado, tope.max())).values(), POR_ID, tope.max());
+    }
+
+    // Igual que obtenerPorCliente, completando con los fiados archivados del cliente hasta el límite.
+    public List<FiadoResumen> obtenerPorClienteConHistorico(String nombreCliente, String estado, int limite) {
+        int tope = acotarLimite(limite).max();
+        List<FiadoResumen> fiados = new ArrayList<>(obtenerPorCliente(nombreCliente, estado, tope));
+        if (fiados.size() < tope) {
+            Limit restantes = Limit.of(tope - fiados.size());
+            fiados.addAll(intercalar(shards.enTodos(() -> estado == null
+                    ? historicoRepository.findByNombreClienteOrderByIdAsc(nombreCliente, restantes)
+                    : historicoRepository.findByNombreClienteAndEstadoOrderByIdAsc(nombreCliente, estado, restantes))
+                    .values(), POR_ID, restantes.max()));
+        }
+        return fiados;
+    }
+
+    public List<FiadoResumen> obtenerPorEstado(String estado, int limite) {
+        Limit tope = acotarLimite(limite);
+        return intercalar(shards.enTodos(() -> consultas.compartir("por-estado",
+                () -> fiadosRepository.findByEstadoOrderByIdAsc(estado, tope), estado, tope.max())).values(),
+                POR_ID, tope.max());
+    }
+
+    // Fiados entre dos fechas (inclusive), opcionalmente de un solo estado, con un máximo de filas.
+    public List<FiadoResumen> obtenerPorFecha(LocalDate desde, LocalDate hasta, String estado, int limite) {
+        Limit tope = acotarLimite(limite);
+        return intercalar(shards.enTodos(() -> consultas.compartir("por-fecha", () -> estado == null
+                ? fiadosRepository.findByFechaBetweenOrderByFechaAscIdAsc(desde, hasta, tope)
+                : fiadosRepository.findByEstadoAndFechaBetweenOrderByFechaAscIdAsc(estado, desde, hasta, tope),
+                desde, hasta, estado, tope.max())).values(),
+                Comparator.comparing(FiadoResumen::fecha, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(POR_ID), tope.max());
+    }
+
+    private static final Comparator<FiadoResumen> POR_ID = Comparator.comparing(FiadoResumen::id);
+
+    private static Limit acotarLimite(int limite) {
+        return Limit.of(Math.max(1, Math.min(limite, LIMITE_MAXIMO_PAGINA)));
+    }
+
+    // Une las listas ya ordenadas de cada shard en el mismo orden, hasta tope elementos.
+    private static <T> List<T> intercalar(Collection<? extends List<T>> listas, Comparator<? super T> orden, int tope) {
+        if (listas.size() == 1) {
+            return listas.iterator().next();
+        }
+        return listas.stream().flatMap(List::stream).sorted(orden).limit(tope).toList();
+    }
+
+    // Fiados de cada shard sin las copias que un movimiento de tienda dejó fuera de su shard.
+    private ArrayList<FiadosModel> vigentes(Map<String, ? extends List<FiadosModel>> porShard) {
+        ArrayList<FiadosModel> fiados = new ArrayList<>();
+        porShard.forEach((shard, delShard) -> delShard.stream()
+                .filter(fiado -> shards.esDuenio(shard, fiado.getTienda()))
+                .forEach(fiados::add));
+        return fiados;
+    }
+
+    public BigDecimal sumarMonto(LocalDate desde, LocalDate hasta, String estado) {
+        return shards.enTodos(() -> consultas.compartir("sumar-monto",
+                () -> fiadosRepository.sumarMonto(estado, desde, hasta), desde, hasta, estado))
+                .values().stream().filter(Objects::nonNull).reduce(BigDecimal::add).orElse(null);
+    }
+
+    /**
+     * Da de alta o actualiza un fiado en el shard de su tienda. Un fiado existente se queda en la
+     * tienda donde se creó: con varios shards, la tienda que traiga se reemplaza por la guardada.
+     * Actualiza la caché con lo que quedó guardado, así una lectura posterior nunca ve la versión anterior
+     * (tampoco la que un obtenerPorId concurrente leyó antes del commit: ver CacheSellada).
+     */
+    @CachePut(cacheNames = CacheConfig.CACHE_FIADOS, key = "#result.id")
     public FiadosModel guardarFiado(FiadosModel fiado) {
-        return fiadosRepository.save(fiado);
+        if (fiado.getTienda() == null) {
+            fiado.setTienda(FiadosModel.TIENDA_PRINCIPAL);
+        }
+        Optional<ShardsFiados.Ubicacion> ubicacion = fiado.getId() == null ? Optional.empty() : shards.ubicar(fiado.getId());
+        ubicacion.map(ShardsFiados.Ubicacion::tienda).ifPresent(fiado::setTienda);
+        String shard = ubicacion.map(ShardsFiados.Ubicacion::shard)
+                .orElseGet(() -> shards.shardParaEscribir(fiado.getTienda()));
+        return shards.enShard(shard, () -> {
+            if (fiado.getId() != null && fiado.getVersion() == null) {
+                // Clientes que actualizan sin enviar la versión: se sobrescribe la actual, como antes de
+                // existir la columna. Si el id no existe se da de alta con un id nuevo.
+                fiadosRepository.buscarVersion(fiado.getId())
+                        .ifPresentOrElse(fiado::setVersion, () -> fiado.setId(null));
+            }
+            String tipo = fiado.getId() == null ? EventoFiado.CREADO : EventoFiado.ACTUALIZADO;
+            FiadosModel guardado = guardarConfirmado(fiado);
+            eventos.publishEvent(new EventoFiado(tipo, guardado.getId(), guardado.getVersion(), guardado));
+            return guardado;
+        });
     }
 
+    private FiadosModel guardarConfirmado(FiadosModel fiado) {
+        if (escrituraDiferida == null) {
+            return contadorCambios.registrando(() -> resumenes.guardando(fiado, fiadosRepository::save));
+        }
+        // Con escritura diferida se espera al commit del grupo, así la respuesta ya trae el id
+        // y nada se confirma al cliente antes de estar guardado.
+        try {
+            return escrituraDiferida.encolar(fiado).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Inserta todos los fiados en una sola transacción por shard. Hibernate los envía en lotes JDBC
+     * y cada tamanoLote filas se hace flush y clear para que el contexto de persistencia
+     * no acumule miles de entidades. Un lote con tiendas de varios shards no es atómico entre ellos.
+     */
+    public ResultadoLote guardarLote(List<FiadosModel> fiados) {
+        return guardarLote(fiados, true);
+    }
+
+    /**
+     * Como guardarLote, pero sin publicar RECARGAR: la importación CSV inserta un bloque tras otro y
+     * avisa una sola vez al terminar (avisarRecarga), en vez de mandar un aviso por bloque a cada
+     * terminal conectada a /fiados/cambios.
+     */
+    public ResultadoLote guardarLoteSinAviso(List<FiadosModel> fiados) {
+        return guardarLote(fiados, false);
+    }
+
+    // Publica RECARGAR después de una serie de guardarLoteSinAviso.
+    public void avisarRecarga() {
+        eventos.publishEvent(EventoFiado.recargar());
+    }
+
+    private ResultadoLote guardarLote(List<FiadosModel> fiados, boolean avisar) {
+        long inicio = System.nanoTime();
+        Map<String, List<FiadosModel>> porShard = new LinkedHashMap<>();
+        for (FiadosModel fiado : fiados) {
+            if (fiado.getTienda() == null) {
+                fiado.setTienda(FiadosModel.TIENDA_PRINCIPAL);
+            }
+            porShard.computeIfAbsent(shards.shardParaEscribir(fiado.getTienda()), shard -> new ArrayList<>()).add(fiado);
+        }
+        porShard.forEach((shard, delShard) ->
+                shards.enShardEnTransaccion(shard, () -> insertar(delShard, avisar), false));
+        // El id lo asignó el generador al persistir; las entidades separadas lo conservan.
+        List<Long> ids = fiados.stream().map(FiadosModel::getId).toList();
+
+        long nanos = Math.max(1, System.nanoTime() - inicio);
+        double filasPorSegundo = fiados.size() * 1_000_000_000d / nanos;
+        return new ResultadoLote(ids, fiados.size(), nanos / 1_000_000, filasPorSegundo);
+    }
+
+    private Void insertar(List<FiadosModel> fiados, boolean avisar) {
+        int cadaCuantos = Math.max(1, tamanoLote);
+        // El lote siempre son altas: a los resúmenes solo se les suma.
+        ResumenesFiados.Diferencias diferencias = new ResumenesFiados.Diferencias();
+        for (int i = 0; i < fiados.size(); i++) {
+            FiadosModel fiado = fiados.get(i);
+            fiado.setId(null);
+            fiado.setVersion(null);
+            entityManager.persist(fiado);
+            diferencias.sumar(fiado);
+            if ((i + 1) % cadaCuantos == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        resumenes.aplicar(diferencias);
+        contadorCambios.registrarCambio();
+        if (avisar) {
+            eventos.publishEvent(EventoFiado.recargar());
+        }
+        return null;
+    }
+
+    /**
+     * Actualiza solo los campos presentes en cambios con un único UPDATE, sin reescribir las demás
+     * columnas. Antes bloquea la fila (SELECT ... FOR UPDATE, una ida más a la base) para restar sus
+     * valores de los resúmenes y sumar los nuevos: el UPDATE no devuelve los valores que reemplaza.
+     * Con versión, la fila se modifica solo si sigue en esa versión y si no, se lanza
+     * ObjectOptimisticLockingFailureException. Devuelve la versión nueva, o null si el fiado no existe.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.CACHE_FIADOS, key = "#id")
+    public Long actualizarFiado(Long id, CambiosFiado cambios) {
+        // Se ubica antes de la primera sentencia: la transacción toma la conexión de ese shard.
+        Optional<ShardsFiados.Ubicacion> ubicacion = shards.ubicar(id);
+        if (ubicacion.isEmpty()) {
+            return null;
+        }
+        return shards.enShard(ubicacion.get().shard(), () -> actualizarEnShard(id, cambios));
+    }
+
+    private Long actualizarEnShard(Long id, CambiosFiado cambios) {
+        List<FiadosModel> anterior = fiadosRepository.bloquearPorIds(List.of(id));
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<FiadosModel> update = cb.createCriteriaUpdate(FiadosModel.class);
+        Root<FiadosModel> fiado = update.from(FiadosModel.class);
+        if (cambios.nombreCliente() != null) {
+            update.set(fiado.<String>get("nombreCliente"), cambios.nombreCliente());
+        }
+        if (cambios.monto() != null) {
+            update.set(fiado.<BigDecimal>get("monto"), cambios.monto());
+        }
+        if (cambios.fecha() != null) {
+            update.set(fiado.<LocalDate>get("fecha"), cambios.fecha());
+        }
+        if (cambios.estado() != null) {
+            update.set(fiado.<String>get("estado"), cambios.estado());
+        }
+        update.set(fiado.<Long>get("version"), cb.sum(fiado.<Long>get("version"), 1L));
+        Predicate condicion = cb.equal(fiado.get("id"), id);
+        if (cambios.version() != null) {
+            condicion = cb.and(condicion, cb.equal(fiado.get("version"), cambios.version()));
+        }
+
+        if (entityManager.createQuery(update.where(condicion)).executeUpdate() == 0) {
+            // Solo cuando no se actualizó nada se consulta si el fiado existe, para distinguir 404 de 409.
+            if (fiadosRepository.buscarVersion(id).isEmpty()) {
+                return null;
+            }
+            throw new ObjectOptimisticLockingFailureException(FiadosModel.class, id);
+        }
+        ResumenesFiados.Diferencias diferencias = new ResumenesFiados.Diferencias();
+        for (FiadosModel fiadoAnterior : anterior) {
+            diferencias.restar(fiadoAnterior).agregar(
+                    cambios.nombreCliente() != null ? cambios.nombreCliente() : fiadoAnterior.getNombreCliente(),
+                    cambios.estado() != null ? cambios.estado() : fiadoAnterior.getEstado(),
+                    cambios.monto() != null ? cambios.monto() : fiadoAnterior.getMonto(),
+                    cambios.fecha() != null ? cambios.fecha() : fiadoAnterior.getFecha(), 1);
+        }
+        resumenes.aplicar(diferencias);
+        contadorCambios.registrarCambio();
+        // La fila bloqueada ya trae la versión anterior, así no hace falta leerla de nuevo.
+        Long version = cambios.version() != null ? cambios.version() + 1
+                : anterior.isEmpty() ? fiadosRepository.buscarVersion(id).orElseThrow()
+                : anterior.get(0).getVersion() + 1;
+        eventos.publishEvent(new EventoFiado(EventoFiado.ACTUALIZADO, id, version, null));
+        return version;
+    }
+
+    // Marca como pagados los fiados pendientes del cliente y devuelve cuántos cambiaron.
+    // Como no se sabe de antemano qué ids toca, se vacía la caché completa.
+    // El cliente puede tener fiados en varias tiendas: cada shard se actualiza en su transacción.
+    @CacheEvict(cacheNames = CacheConfig.CACHE_FIADOS, allEntries = true)
+    public int marcarPagados(String nombreCliente) {
+        return shards.enTodosEnTransaccion(() -> marcarPagadosEnShard(nombreCliente), false)
+                .values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private int marcarPagadosEnShard(String nombreCliente) {
+        // Los pendientes quedan bloqueados hasta el commit: el UPDATE cambia exactamente esos fiados.
+        ResumenesFiados.Diferencias diferencias = new ResumenesFiados.Diferencias();
+        for (FiadosModel pendiente : fiadosRepository.bloquearPendientes(nombreCliente)) {
+            shards.comprobarEscritura(pendiente.getTienda());
+            diferencias.restar(pendiente).agregar(pendiente.getNombreCliente(), FiadosModel.ESTADO_PAGADO,
+                    pendiente.getMonto(), pendiente.getFecha(), 1);
+        }
+        int actualizados = fiadosRepository.marcarPagados(nombreCliente);
+        if (actualizados > 0) {
+            resumenes.aplicar(diferencias);
+            contadorCambios.registrarCambio();
+            eventos.publishEvent(EventoFiado.recargar());
+        }
+        return actualizados;
+    }
+
+    // Los ids inexistentes no se guardan en caché para que un alta posterior se vea de inmediato.
+    // En un fallo de caché, las terminales que piden el mismo id a la vez comparten un solo findById.
+    // Se lee de la primaria (transacción que no es de solo lectura): lo que entra en la caché se
+    // queda hasta 5 minutos, y una réplica atrasada podría dejar ahí un fiado viejo o ya eliminado.
+    // La transacción la abre compartirEnPrimaria, así las que esperan no toman una conexión.
+    @Cacheable(cacheNames = CacheConfig.CACHE_FIADOS, key = "#id", unless = "#result == null")
     public FiadosModel obtenerPorId(Long id) {
-        return fiadosRepository.findById(id).orElse(null);
+        return primero(shards.enTodos(() -> consultas.compartirEnPrimaria("por-id",
+                () -> fiadosRepository.findById(id).map(List::of).orElse(List.of()), id)));
     }
 
+    // Lee el fiado confirmado en la primaria, sin pasar por la caché ni por las consultas compartidas:
+    // se usa justo después de escribirlo, cuando una réplica todavía podría no tenerlo.
+    public FiadosModel leerPorId(Long id) {
+        return primero(shards.enTodosEnTransaccion(
+                () -> fiadosRepository.findById(id).map(List::of).orElse(List.of()), false));
+    }
+
+    // Busca un fiado archivado; sin caché, porque estas consultas son ocasionales.
+    public FiadosModel obtenerDelHistorico(Long id) {
+        return primero(shards.enTodosEnTransaccion(() -> historicoRepository.findById(id)
+                .map(archivado -> List.of(archivado.aFiado())).orElse(List.of()), true));
+    }
+
+    private FiadosModel primero(Map<String, List<FiadosModel>> porShard) {
+        List<FiadosModel> fiados = vigentes(porShard);
+        return fiados.isEmpty() ? null : fiados.get(0);
+    }
+
+    // Devuelve false si el fiado no existía, sin excepciones de por medio. Son dos sentencias: un
+    // SELECT ... FOR UPDATE que bloquea la fila y trae los valores a restar de los resúmenes, y el
+    // DELETE. MySQL no devuelve la fila borrada (no hay DELETE ... RETURNING), y sin el bloqueo otra
+    // transacción podría cambiarla entre la lectura y el borrado y los resúmenes quedarían mal.
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.CACHE_FIADOS, key = "#id")
     public boolean eliminarFiado(Long id) {
-        try {
-            fiadosRepository.deleteById(id);
-            return true;
-        } catch (Exception e) {
+        Optional<ShardsFiados.Ubicacion> ubicacion = shards.ubicar(id);
+        return ubicacion.isPresent() && shards.enShard(ubicacion.get().shard(), () -> eliminarEnShard(id));
+    }
+
+    private boolean eliminarEnShard(Long id) {
+        List<FiadosModel> anterior = fiadosRepository.bloquearPorIds(List.of(id));
+        if (fiadosRepository.eliminarPorId(id) == 0) {
             return false;
         }
+        ResumenesFiados.Diferencias diferencias = new ResumenesFiados.Diferencias();
+        anterior.forEach(diferencias::restar);
+        resumenes.aplicar(diferencias);
+        contadorCambios.registrarCambio();
+        eventos.publishEvent(new EventoFiado(EventoFiado.ELIMINADO, id, null, null));
+        return true;
+    }
+
+    // Borra todos los ids en un solo DELETE ... IN y devuelve cuántos existían.
+    // Es una operación poco frecuente, así que se vacía la caché completa en vez de id por id.
+    // Cada shard borra los que tenga en su propia transacción.
+    @CacheEvict(cacheNames = CacheConfig.CACHE_FIADOS, allEntries = true)
+    public int eliminarFiados(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Long> eliminados = shards.enTodosEnTransaccion(() -> eliminarEnShard(ids), false)
+                .values().stream().flatMap(List::stream).toList();
+        // Solo los que existían: un id pedido que no estaba en ningún shard no genera evento.
+        eliminados.forEach(id -> eventos.publishEvent(new EventoFiado(EventoFiado.ELIMINADO, id, null, null)));
+        return eliminados.size();
+    }
+
+    // Devuelve los ids que existían en el shard: los que bloqueó el SELECT ... FOR UPDATE, que son
+    // exactamente los que borra el DELETE.
+    private List<Long> eliminarEnShard(List<Long> ids) {
+        List<FiadosModel> bloqueados = fiadosRepository.bloquearPorIds(ids);
+        if (bloqueados.isEmpty()) {
+            return List.of();
+        }
+        ResumenesFiados.Diferencias diferencias = new ResumenesFiados.Diferencias();
+        List<Long> existentes = new ArrayList<>(bloqueados.size());
+        for (FiadosModel fiado : bloqueados) {
+            shards.comprobarEscritura(fiado.getTienda());
+            diferencias.restar(fiado);
+            existentes.add(fiado.getId());
+        }
+        fiadosRepository.eliminarPorIds(existentes);
+        resumenes.aplicar(diferencias);
+        contadorCambios.registrarCambio();
+        return existentes;
     }
 
 }
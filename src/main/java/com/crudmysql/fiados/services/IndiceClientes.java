@@ -0,0 +1,386 @@
+package com.crudmysql.fiados.services;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.crudmysql.fiados.models.ClienteEncontrado;
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Índice en memoria de los nombres de cliente de los fiados activos, para /fiados/clientes/buscar.
+ *
+ * Los nombres se normalizan sin tildes ni mayúsculas ("Pérez" y "perez" son iguales al buscar) y se
+ * indexan de dos formas: cada palabra en un mapa ordenado, para encontrar por prefijo ("per" encuentra
+ * "Juan Pérez"), y cada trigrama del nombre completo, para encontrar texto en medio de una palabra
+ * ("rez"). Por cliente se lleva el saldo pendiente, así el resultado no necesita consultar la base.
+ *
+ * Se construye al arrancar recorriendo la tabla y después se actualiza con cada EventoFiado confirmado;
+ * RECARGAR (lote, importación, marcarPagados) lo vuelve a construir. Todo eso ocurre en un único hilo,
+ * en el orden en que llegaron los eventos: quien escribe no espera al índice, y una reconstrucción
+ * aplica después los eventos que llegaron mientras tanto. Las búsquedas leen bajo un bloqueo de
+ * lectura y solo esperan mientras se aplica un evento o se reemplaza el índice reconstruido.
+ *
+ * Como CanalCambiosFiados, cada instancia de la aplicación ve solo los cambios hechos a través de ella.
+ */
+@Component
+public class IndiceClientes {
+
+    private static final Logger log = LoggerFactory.getLogger(IndiceClientes.class);
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int LARGO_TRIGRAMA = 3;
+
+    /** Datos de un fiado que el índice necesita para descontarlo si cambia o se elimina. */
+    private record Registro(Cliente cliente, BigDecimal monto, boolean pendiente) {
+    }
+
+    /** Cliente indexado con su saldo; solo se modifica con el bloqueo de escritura. */
+    private static final class Cliente {
+
+        private final String nombre;
+        private final String normalizado;
+        private BigDecimal saldoPendiente = BigDecimal.ZERO;
+        private int fiadosPendientes;
+        private int fiados;
+
+        private Cliente(String nombre, String normalizado) {
+            this.nombre = nombre;
+            this.normalizado = normalizado;
+        }
+
+        private ClienteEncontrado aResultado() {
+            return new ClienteEncontrado(nombre, saldoPendiente, fiadosPendientes, fiados);
+        }
+    }
+
+    /** Estructuras del índice; una reconstrucción arma una nueva y la reemplaza completa. */
+    private static final class Indice {
+
+        private final Map<Long, Registro> porFiado = new HashMap<>();
+        private final Map<String, Cliente> porNombre = new HashMap<>();
+        private final NavigableMap<String, Set<Cliente>> palabras = new TreeMap<>();
+        private final Map<String, Set<Cliente>> trigramas = new HashMap<>();
+
+        private void guardar(FiadosModel fiado) {
+            quitar(fiado.getId());
+            String nombre = fiado.getNombreCliente() == null ? "" : fiado.getNombreCliente();
+            Cliente cliente = porNombre.computeIfAbsent(nombre, this::agregarCliente);
+            Registro registro = new Registro(cliente,
+                    fiado.getMonto() == null ? BigDecimal.ZERO : fiado.getMonto(),
+                    FiadosModel.ESTADO_PENDIENTE.equals(fiado.getEstado()));
+            porFiado.put(fiado.getId(), registro);
+            cliente.fiados++;
+            if (registro.pendiente()) {
+                cliente.fiadosPendientes++;
+                cliente.saldoPendiente = cliente.saldoPendiente.add(registro.monto());
+            }
+        }
+
+        private void quitar(Long fiadoId) {
+            Registro registro = porFiado.remove(fiadoId);
+            if (registro == null) {
+                return;
+            }
+            Cliente cliente = registro.cliente();
+            cliente.fiados--;
+            if (registro.pendiente()) {
+                cliente.fiadosPendientes--;
+                cliente.saldoPendiente = cliente.saldoPendiente.subtract(registro.monto());
+            }
+            if (cliente.fiados == 0) {
+                quitarCliente(cliente);
+            }
+        }
+
+        private Cliente agregarCliente(String nombre) {
+            Cliente cliente = new Cliente(nombre, normalizar(nombre));
+            for (String palabra : palabras(cliente.normalizado)) {
+                palabras.computeIfAbsent(palabra, clave -> new HashSet<>()).add(cliente);
+            }
+            for (String trigrama : trigramas(cliente.normalizado)) {
+                trigramas.computeIfAbsent(trigrama, clave -> new HashSet<>()).add(cliente);
+            }
+            return cliente;
+        }
+
+        private void quitarCliente(Cliente cliente) {
+            porNombre.remove(cliente.nombre);
+            for (String palabra : palabras(cliente.normalizado)) {
+                quitarDe(palabras, palabra, cliente);
+            }
+            for (String trigrama : trigramas(cliente.normalizado)) {
+                quitarDe(trigramas, trigrama, cliente);
+            }
+        }
+
+        private static void quitarDe(Map<String, Set<Cliente>> mapa, String clave, Cliente cliente) {
+            Set<Cliente> clientes = mapa.get(clave);
+            if (clientes != null && clientes.remove(cliente) && clientes.isEmpty()) {
+                mapa.remove(clave);
+            }
+        }
+
+        // Clientes con alguna palabra que empieza con el término, o que lo contienen en medio de una palabra.
+        private Set<Cliente> candidatos(String termino) {
+            Set<Cliente> candidatos = new HashSet<>();
+            palabras.subMap(termino, true, termino + Character.MAX_VALUE, false)
+                    .values().forEach(candidatos::addAll);
+            if (termino.length() >= LARGO_TRIGRAMA) {
+                Set<Cliente> contienen = null;
+                for (String trigrama : trigramas(termino)) {
+                    Set<Cliente> conTrigrama = trigramas.getOrDefault(trigrama, Set.of());
+                    if (contienen == null) {
+                        contienen = new HashSet<>(conTrigrama);
+                    } else {
+                        contienen.retainAll(conTrigrama);
+                    }
+                }
+                // Los trigramas pueden aparecer por separado; se confirma que el término esté completo.
+                contienen.removeIf(cliente -> !cliente.normalizado.contains(termino));
+                candidatos.addAll(contienen);
+            }
+            return candidatos;
+        }
+    }
+
+    private final FiadosService fiadosService;
+    private final Executor actualizaciones;
+    private final ReadWriteLock bloqueo = new ReentrantReadWriteLock();
+    private final AtomicBoolean reconstruccionPendiente = new AtomicBoolean();
+    private final Timer busquedas;
+
+    // Se reemplaza con el bloqueo de escritura; null hasta que termina la primera construcción.
+    private Indice indice;
+
+    @Autowired
+    public IndiceClientes(FiadosService fiadosService, MeterRegistry meterRegistry) {
+        this(fiadosService, meterRegistry, Executors.newSingleThreadExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "indice-clientes");
+            hilo.setDaemon(true);
+            return hilo;
+        }));
+    }
+
+    // Las pruebas pasan un ejecutor que corre cada tarea en el mismo hilo.
+    IndiceClientes(FiadosService fiadosService, MeterRegistry meterRegistry, Executor actualizaciones) {
+        this.fiadosService = fiadosService;
+        this.actualizaciones = actualizaciones;
+        this.busquedas = Timer.builder("fiados.indice.busqueda")
+                .description("Tiempo de cada búsqueda en el índice de clientes")
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .register(meterRegistry);
+        Gauge.builder("fiados.indice.clientes", this, IndiceClientes::cantidadClientes)
+                .description("Clientes distintos en el índice de búsqueda")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construir() {
+        encolarReconstruccion();
+    }
+
+    // fallbackExecution: guardarFiado publica fuera de transacción, cuando el commit ya ocurrió.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void actualizar(EventoFiado evento) {
+        if (EventoFiado.RECARGAR.equals(evento.tipo())) {
+            encolarReconstruccion();
+        } else {
+            actualizaciones.execute(() -> aplicar(evento));
+        }
+    }
+
+    public boolean listo() {
+        bloqueo.readLock().lock();
+        try {
+            return indice != null;
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Clientes cuyo nombre coincide con todas las palabras del texto, cada una como prefijo de una
+     * palabra del nombre o como parte de él. Primero el nombre idéntico, después los que empiezan con
+     * el texto, los que tienen palabras que empiezan con cada término y al final los que solo lo
+     * contienen; a igual coincidencia, los de mayor saldo pendiente.
+     */
+    public List<ClienteEncontrado> buscar(String texto, int limite) {
+        String consulta = normalizar(texto);
+        List<String> terminos = palabras(consulta);
+        if (terminos.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+        long inicio = System.nanoTime();
+        bloqueo.readLock().lock();
+        try {
+            if (indice == null) {
+                return List.of();
+            }
+            Set<Cliente> encontrados = null;
+            for (String termino : terminos) {
+                Set<Cliente> candidatos = indice.candidatos(termino);
+                if (encontrados == null) {
+                    encontrados = candidatos;
+                } else {
+                    encontrados.retainAll(candidatos);
+                }
+                if (encontrados.isEmpty()) {
+                    return List.of();
+                }
+            }
+            Function<Cliente, Integer> rango = cliente -> rango(cliente, consulta, terminos);
+            return encontrados.stream()
+                    .sorted(Comparator.comparing(rango)
+                            .thenComparing((Cliente cliente) -> cliente.saldoPendiente, Comparator.reverseOrder())
+                            .thenComparing(cliente -> cliente.nombre))
+                    .limit(limite)
+                    .map(Cliente::aResultado)
+                    .toList();
+        } finally {
+            bloqueo.readLock().unlock();
+            busquedas.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        if (actualizaciones instanceof ExecutorService hilo) {
+            hilo.shutdownNow();
+        }
+    }
+
+    // Varios /guardarLote seguidos publican un RECARGAR cada uno: mientras haya una reconstrucción
+    // esperando turno no se encola otra, porque esa ya va a leer todo lo confirmado hasta que empiece.
+    private void encolarReconstruccion() {
+        if (reconstruccionPendiente.compareAndSet(false, true)) {
+            actualizaciones.execute(() -> {
+                reconstruccionPendiente.set(false);
+                aplicar(EventoFiado.recargar());
+            });
+        }
+    }
+
+    private void reconstruir() {
+        long inicio = System.nanoTime();
+        Indice nuevo = new Indice();
+        // De la primaria: el RECARGAR llega justo después del commit y una réplica todavía no lo tiene.
+        fiadosService.recorrerFiadosEnPrimaria(nuevo::guardar);
+        bloqueo.writeLock().lock();
+        try {
+            indice = nuevo;
+        } finally {
+            bloqueo.writeLock().unlock();
+        }
+        log.info("Índice de clientes: {} clientes de {} fiados en {} ms",
+                nuevo.porNombre.size(), nuevo.porFiado.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void aplicar(EventoFiado evento) {
+        try {
+            if (EventoFiado.RECARGAR.equals(evento.tipo())) {
+                reconstruir();
+                return;
+            }
+            // La actualización parcial no trae el fiado; se lee ya confirmado. Si no existe, se quita.
+            FiadosModel fiado = evento.fiado();
+            if (fiado == null && EventoFiado.ACTUALIZADO.equals(evento.tipo())) {
+                fiado = fiadosService.leerPorId(evento.fiadoId());
+            }
+            bloqueo.writeLock().lock();
+            try {
+                if (indice == null) {
+                    // Todavía no se construyó: la construcción ya lo va a leer de la base.
+                    return;
+                }
+                if (fiado != null && !EventoFiado.ELIMINADO.equals(evento.tipo())
+                        && !EventoFiado.ARCHIVADO.equals(evento.tipo())) {
+                    indice.guardar(fiado);
+                } else {
+                    indice.quitar(evento.fiadoId());
+                }
+            } finally {
+                bloqueo.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            // Un evento que no se pudo aplicar deja el índice desactualizado hasta la próxima reconstrucción.
+            log.warn("No se pudo actualizar el índice de clientes con {}", evento, e);
+        }
+    }
+
+    private double cantidadClientes() {
+        bloqueo.readLock().lock();
+        try {
+            return indice == null ? 0 : indice.porNombre.size();
+        } finally {
+            bloqueo.readLock().unlock();
+        }
+    }
+
+    private static int rango(Cliente cliente, String consulta, List<String> terminos) {
+        if (cliente.normalizado.equals(consulta)) {
+            return 0;
+        }
+        if (cliente.normalizado.startsWith(consulta)) {
+            return 1;
+        }
+        List<String> palabrasCliente = palabras(cliente.normalizado);
+        boolean todasPorPrefijo = terminos.stream()
+                .allMatch(termino -> palabrasCliente.stream().anyMatch(palabra -> palabra.startsWith(termino)));
+        return todasPorPrefijo ? 2 : 3;
+    }
+
+    // Minúsculas, sin tildes ni diéresis y con un solo espacio entre palabras: "  José  PÉREZ" -> "jose perez".
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinMarcas = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARADORES.matcher(sinMarcas.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static List<String> palabras(String normalizado) {
+        return normalizado.isEmpty() ? List.of() : List.of(normalizado.split(" "));
+    }
+
+    private static Set<String> trigramas(String normalizado) {
+        Set<String> trigramas = new HashSet<>();
+        for (int i = 0; i + LARGO_TRIGRAMA <= normalizado.length(); i++) {
+            trigramas.add(normalizado.substring(i, i + LARGO_TRIGRAMA));
+        }
+        return trigramas;
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.crudmysql.fiados.services;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.crudmysql.fiados.config.ShardsDataSource;
+import com.crudmysql.fiados.config.ShardsProperties;
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.ResultadoMovimiento;
+
+/**
+ * Mueve todos los fiados de una tienda a otro shard (POST /fiados/tiendas/{tienda}/mover), para
+ * repartir la carga cuando se agrega un shard o una tienda crece más que las demás.
+ *
+ * 1. Congela la tienda en el directorio: desde ahí sus escrituras responden 503. Espera
+ *    esperaCongelado para que todas las instancias lo vean y terminen lo que tenían en curso.
+ * 2. Descarta en el destino lo que haya quedado de un movimiento anterior interrumpido.
+ * 3. Copia fiados y fiados_historico por bloques de ids y suma la tienda a los resúmenes del destino.
+ * 4. Cambia la tienda de shard en el directorio y la descongela.
+ * 5. Resta la tienda de los resúmenes del origen y borra allí sus filas.
+ *
+ * Las lecturas cuentan cada fila solo en el shard dueño de la tienda, así que las copias no se ven
+ * dos veces; los listados de resúmenes (FiadoResumen) y los saldos pueden contar la tienda en los dos
+ * shards durante los instantes entre el paso 3 y el 5. Si algo falla antes del paso 4, la tienda
+ * vuelve a su shard y el movimiento se puede repetir.
+ */
+@Component
+@ConditionalOnProperty(name = "fiados.shards.habilitados", havingValue = "true")
+public class MovimientoTiendas {
+
+    private static final Logger log = LoggerFactory.getLogger(MovimientoTiendas.class);
+
+    private static final String COLUMNAS_FIADOS = "id, nombre_cliente, monto, fecha, estado, version, tienda";
+    private static final String COLUMNAS_HISTORICO = COLUMNAS_FIADOS + ", archivado";
+
+    // Filas de la tienda que cuentan en los resúmenes: las activas y las archivadas.
+    private static final String FILAS_TIENDA = "SELECT nombre_cliente, estado, monto, fecha FROM fiados WHERE tienda = ?"
+            + " UNION ALL SELECT nombre_cliente, estado, monto, fecha FROM fiados_historico WHERE tienda = ?";
+
+    private final ShardsFiados shards;
+    private final ShardsDataSource dataSource;
+    private final ApplicationEventPublisher eventos;
+    private final Duration esperaCongelado;
+    private final int bloque;
+
+    public MovimientoTiendas(ShardsFiados shards, ShardsDataSource dataSource, ShardsProperties propiedades,
+            ApplicationEventPublisher eventos) {
+        this.shards = shards;
+        this.dataSource = dataSource;
+        this.eventos = eventos;
+        this.esperaCongelado = propiedades.esperaCongelado();
+        this.bloque = Math.max(1, propiedades.bloqueMovimiento());
+    }
+
+    /**
+     * Mueve la tienda al shard destino y devuelve cuántas filas copió. Si ya está ahí no hace nada.
+     */
+    public ResultadoMovimiento mover(String tienda, String destino) {
+        if (!shards.nombres().contains(destino)) {
+            throw new IllegalArgumentException("Shard desconocido: " + destino);
+        }
+        String origen = shards.shardDe(tienda);
+        if (origen.equals(destino)) {
+            return new ResultadoMovimiento(tienda, origen, destino, 0, 0, 0);
+        }
+        long inicio = System.nanoTime();
+        JdbcTemplate desde = new JdbcTemplate(dataSource.dataSource(origen));
+        JdbcTemplate hacia = new JdbcTemplate(dataSource.dataSource(destino));
+
+        shards.asignar(tienda, origen, true);
+        long fiados;
+        long archivados;
+        try {
+            Thread.sleep(esperaCongelado);
+            descartar(hacia, tienda);
+            fiados = copiar(desde, hacia, "fiados", COLUMNAS_FIADOS, tienda);
+            archivados = copiar(desde, hacia, "fiados_historico", COLUMNAS_HISTORICO, tienda);
+            sumarResumenes(hacia, tienda, 1);
+            registrarCambio(hacia);
+            shards.asignar(tienda, destino, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shards.asignar(tienda, origen, false);
+            throw new IllegalStateException("Interrumpido moviendo la tienda " + tienda, e);
+        } catch (RuntimeException e) {
+            shards.asignar(tienda, origen, false);
+            throw e;
+        }
+        try {
+            descartar(desde, tienda);
+            registrarCambio(desde);
+        } catch (RuntimeException e) {
+            // La tienda ya está en el destino; las filas que quedaron en el origen no se leen y el
+            // próximo movimiento hacia ese shard las descarta.
+            log.error("La tienda {} ya está en {} pero no se pudo limpiar {}", tienda, destino, origen, e);
+        }
+        // Vacía las consultas compartidas en curso y reconstruye el índice de clientes.
+        eventos.publishEvent(EventoFiado.recargar());
+
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Tienda {} movida de {} a {}: {} fiados y {} archivados en {} ms",
+                tienda, origen, destino, fiados, archivados, milisegundos);
+        return new ResultadoMovimiento(tienda, origen, destino, fiados, archivados, milisegundos);
+    }
+
+    // Copia las filas de la tienda por bloques de ids, sin cargar toda la tienda en memoria.
+    private long copiar(JdbcTemplate desde, JdbcTemplate hacia, String tabla, String columnas, String tienda) {
+        int cantidadColumnas = columnas.split(",").length;
+        String insertar = "INSERT INTO " + tabla + " (" + columnas + ") VALUES ("
+                + "?, ".repeat(cantidadColumnas - 1) + "?)";
+        long copiadas = 0;
+        long despuesDe = Long.MIN_VALUE;
+        while (true) {
+            List<Object[]> filas = desde.query("SELECT " + columnas + " FROM " + tabla
+                    + " WHERE tienda = ? AND id > ? ORDER BY id LIMIT ?", (fila, numero) -> {
+                        Object[] valores = new Object[cantidadColumnas];
+                        for (int i = 0; i < cantidadColumnas; i++) {
+                            valores[i] = fila.getObject(i + 1);
+                        }
+                        return valores;
+                    }, tienda, despuesDe, bloque);
+            if (filas.isEmpty()) {
+                return copiadas;
+            }
+            hacia.batchUpdate(insertar, filas);
+            copiadas += filas.size();
+            despuesDe = ((Number) filas.get(filas.size() - 1)[0]).longValue();
+        }
+    }
+
+    // Resta la tienda de los resúmenes del shard y borra sus filas.
+    private void descartar(JdbcTemplate base, String tienda) {
+        sumarResumenes(base, tienda, -1);
+        // Por bloques, para no retener miles de filas bloqueadas en una sola sentencia.
+        for (String tabla : List.of("fiados", "fiados_historico")) {
+            int borradas;
+            do {
+                borradas = base.update("DELETE FROM " + tabla + " WHERE tienda = ? LIMIT ?", tienda, bloque);
+            } while (borradas > 0);
+        }
+    }
+
+    // Suma (signo 1) o resta (signo -1) las filas de la tienda a saldos_clientes y totales_diarios,
+    // con el mismo INSERT ... ON DUPLICATE KEY UPDATE que usan las escrituras.
+    private void sumarResumenes(JdbcTemplate base, String tienda, int signo) {
+        List<Object[]> saldos = base.query("SELECT nombre, estado, SUM(monto), COUNT(*) FROM ("
+                + " SELECT COALESCE(nombre_cliente, '') AS nombre, COALESCE(estado, '') AS estado,"
+                + " COALESCE(monto, 0) AS monto FROM (" + FILAS_TIENDA + ") f) s GROUP BY nombre, estado",
+                (fila, numero) -> new Object[] { fila.getString(1), fila.getString(2),
+                        fila.getBigDecimal(3).multiply(BigDecimal.valueOf(signo)), fila.getLong(4) * signo },
+                tienda, tienda);
+        base.batchUpdate("INSERT INTO saldos_clientes (nombre_cliente, estado, monto, cantidad) VALUES (?, ?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE monto = monto + VALUES(monto), cantidad = cantidad + VALUES(cantidad)",
+                saldos);
+        List<Object[]> dias = base.query("SELECT fecha, SUM(COALESCE(monto, 0)), COUNT(*) FROM (" + FILAS_TIENDA
+                + ") f WHERE fecha IS NOT NULL GROUP BY fecha",
+                (fila, numero) -> new Object[] { fila.getDate(1),
+                        fila.getBigDecimal(2).multiply(BigDecimal.valueOf(signo)), fila.getLong(3) * signo },
+                tienda, tienda);
+        base.batchUpdate("INSERT INTO totales_diarios (fecha, monto, cantidad) VALUES (?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE monto = monto + VALUES(monto), cantidad = cantidad + VALUES(cantidad)",
+                dias);
+    }
+
+    // Sube la versión de la tabla del shard, para que los listados cacheados por los clientes se invaliden.
+    // Basta con una franja del contador: la versión es su suma.
+    private void registrarCambio(JdbcTemplate base) {
+        base.update("UPDATE versiones_tablas SET version = version + 1, modificado = ? WHERE tabla = ? AND franja = 0",
+                Timestamp.from(Instant.now()), ContadorCambiosFiados.TABLA);
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.crudmysql.fiados.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.SaldoClienteModel;
+import com.crudmysql.fiados.models.TotalDiarioModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+import com.crudmysql.fiados.repositories.ISaldoClienteRepository;
+import com.crudmysql.fiados.repositories.ITotalDiarioRepository;
+
+/**
+ * Resúmenes de fiados que se mantienen al día en la misma transacción que cada cambio:
+ * saldos_clientes (monto y cantidad por cliente y estado) y totales_diarios (por fecha).
+ *
+ * Quien modifica fiados bloquea antes las filas que va a cambiar (SELECT ... FOR UPDATE), resta sus
+ * valores anteriores, suma los nuevos y aplica la diferencia neta con un INSERT ... ON DUPLICATE KEY
+ * UPDATE por clave. Así los reportes leen una fila por cliente o por día en vez de recorrer los fiados,
+ * y dos cajas que tocan al mismo cliente suman sus diferencias sin pisarse.
+ *
+ * Los resúmenes cuentan también los fiados archivados en fiados_historico, así que archivar no los
+ * cambia. VerificacionResumenes los compara periódicamente con las tablas de fiados.
+ *
+ * Con varios shards cada base resume sus propios fiados y las lecturas suman los de todas.
+ */
+@Component
+public class ResumenesFiados {
+
+    // Tope de filas de GET /fiados/resumenes/saldos.
+    public static final int LIMITE_MAXIMO_SALDOS = 1000;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    private ISaldoClienteRepository saldosRepository;
+
+    @Autowired
+    private ITotalDiarioRepository totalesRepository;
+
+    @Autowired
+    private ShardsFiados shards;
+
+    /**
+     * Guarda con la escritura recibida (save o saveAll) y actualiza los resúmenes con la diferencia
+     * entre las filas anteriores, bloqueadas antes de guardar, y las guardadas.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<FiadosModel> guardando(List<FiadosModel> fiados, UnaryOperator<List<FiadosModel>> escritura) {
+        Diferencias diferencias = new Diferencias();
+        List<Long> ids = fiados.stream().map(FiadosModel::getId).filter(id -> id != null).toList();
+        if (!ids.isEmpty()) {
+            fiadosRepository.bloquearPorIds(ids).forEach(diferencias::restar);
+        }
+        List<FiadosModel> guardados = escritura.apply(fiados);
+        // Un mismo id repetido en la colección queda en una sola entidad administrada: se suma una vez.
+        Set<FiadosModel> distintos = Collections.newSetFromMap(new IdentityHashMap<>());
+        guardados.stream().filter(distintos::add).forEach(diferencias::sumar);
+        aplicar(diferencias);
+        return guardados;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public FiadosModel guardando(FiadosModel fiado, UnaryOperator<FiadosModel> escritura) {
+        return guardando(List.of(fiado), lista -> List.of(escritura.apply(lista.get(0)))).get(0);
+    }
+
+    // Aplica las diferencias; debe llamarse en la transacción que modificó los fiados.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void aplicar(Diferencias diferencias) {
+        diferencias.saldos.forEach((clave, delta) -> {
+            if (!delta.nula()) {
+                saldosRepository.sumar(clave.get(0), clave.get(1), delta.monto(), delta.cantidad());
+            }
+        });
+        diferencias.dias.forEach((fecha, delta) -> {
+            if (!delta.nula()) {
+                totalesRepository.sumar(fecha, delta.monto(), delta.cantidad());
+            }
+        });
+    }
+
+    // Saldos de un estado, de mayor a menor monto. Con varios shards, un cliente que no está entre los
+    // primeros de ningún shard puede faltar aunque su suma sí lo esté: el tope es por shard.
+    public List<SaldoClienteModel> saldosPorEstado(String estado, int limite) {
+        int tope = Math.max(1, Math.min(limite, LIMITE_MAXIMO_SALDOS));
+        return sumarSaldos(shards.enTodosEnTransaccion(() -> saldosRepository
+                .findByEstadoAndCantidadGreaterThanOrderByMontoDescNombreClienteAsc(estado, 0, Limit.of(tope)), true),
+                Comparator.comparing(SaldoClienteModel::getMonto).reversed()
+                        .thenComparing(SaldoClienteModel::getNombreCliente), tope);
+    }
+
+    // Saldos de un cliente, uno por estado.
+    public List<SaldoClienteModel> saldosDeCliente(String nombreCliente) {
+        return sumarSaldos(shards.enTodosEnTransaccion(() -> saldosRepository
+                .findByNombreClienteAndCantidadGreaterThanOrderByEstadoAsc(nombreCliente, 0), true),
+                Comparator.comparing(SaldoClienteModel::getEstado), Integer.MAX_VALUE);
+    }
+
+    // Totales de los días entre desde y hasta (inclusive) que tienen fiados.
+    public List<TotalDiarioModel> totalesDiarios(LocalDate desde, LocalDate hasta) {
+        Map<String, List<TotalDiarioModel>> porShard = shards.enTodosEnTransaccion(() -> totalesRepository
+                .findByFechaBetweenAndCantidadGreaterThanOrderByFechaAsc(desde, hasta, 0), true);
+        if (porShard.size() == 1) {
+            return porShard.values().iterator().next();
+        }
+        Map<LocalDate, TotalDiarioModel> totales = new TreeMap<>();
+        porShard.values().forEach(delShard -> delShard.forEach(total -> totales.merge(total.getFecha(), total,
+                (uno, otro) -> new TotalDiarioModel(uno.getFecha(), uno.getMonto().add(otro.getMonto()),
+                        uno.getCantidad() + otro.getCantidad()))));
+        return List.copyOf(totales.values());
+    }
+
+    private static List<SaldoClienteModel> sumarSaldos(Map<String, List<SaldoClienteModel>> porShard,
+            Comparator<SaldoClienteModel> orden, int tope) {
+        if (porShard.size() == 1) {
+            return porShard.values().iterator().next();
+        }
+        Map<List<String>, SaldoClienteModel> saldos = new HashMap<>();
+        porShard.values().forEach(delShard -> delShard.forEach(saldo -> saldos.merge(
+                List.of(saldo.getNombreCliente(), saldo.getEstado()), saldo,
+                (uno, otro) -> new SaldoClienteModel(uno.getNombreCliente(), uno.getEstado(),
+                        uno.getMonto().add(otro.getMonto()), uno.getCantidad() + otro.getCantidad()))));
+        return saldos.values().stream().sorted(orden).limit(tope).toList();
+    }
+
+    private record Delta(BigDecimal monto, long cantidad) {
+
+        Delta mas(Delta otro) {
+            return new Delta(monto.add(otro.monto), cantidad + otro.cantidad);
+        }
+
+        boolean nula() {
+            return cantidad == 0 && monto.signum() == 0;
+        }
+    }
+
+    /**
+     * Cambio neto de los resúmenes: se restan los fiados como estaban y se suman como quedan.
+     * Las claves se aplican ordenadas, así dos transacciones que tocan los mismos clientes o días
+     * bloquean las filas en el mismo orden y no se traban entre sí.
+     */
+    public static class Diferencias {
+
+        private final Map<List<String>, Delta> saldos = new TreeMap<>(
+                Comparator.comparing((List<String> clave) -> clave.get(0)).thenComparing(clave -> clave.get(1)));
+        private final Map<LocalDate, Delta> dias = new TreeMap<>();
+
+        public Diferencias sumar(FiadosModel fiado) {
+            return agregar(fiado.getNombreCliente(), fiado.getEstado(), fiado.getMonto(), fiado.getFecha(), 1);
+        }
+
+        public Diferencias restar(FiadosModel fiado) {
+            return agregar(fiado.getNombreCliente(), fiado.getEstado(), fiado.getMonto(), fiado.getFecha(), -1);
+        }
+
+        // Sin nombre o sin estado se resume como ''; sin fecha no cuenta en totales_diarios.
+        public Diferencias agregar(String nombreCliente, String estado, BigDecimal monto, LocalDate fecha, int signo) {
+            BigDecimal valor = monto == null ? BigDecimal.ZERO : monto;
+            Delta delta = new Delta(signo < 0 ? valor.negate() : valor, signo);
+            saldos.merge(List.of(nombreCliente == null ? "" : nombreCliente, estado == null ? "" : estado),
+                    delta, Delta::mas);
+            if (fecha != null) {
+                dias.merge(fecha, delta, Delta::mas);
+            }
+            return this;
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.crudmysql.fiados.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.crudmysql.fiados.config.ShardsDataSource;
+import com.crudmysql.fiados.config.ShardsProperties;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+/**
+ * Ubica cada tienda en un shard y ejecuta el trabajo en la base que corresponde.
+ *
+ * Una tienda nueva se asigna con hash consistente: cada shard ocupa nodos-virtuales puntos de un
+ * anillo y la tienda va al primer punto a partir del hash de su nombre, así agregar un shard solo
+ * toma las tiendas nuevas que caen en sus tramos. La asignación queda fija en el directorio
+ * tiendas_shards del shard principal con la primera escritura de la tienda; desde ahí manda el
+ * directorio, y MovimientoTiendas puede cambiarla sin que el anillo tenga que coincidir.
+ *
+ * El shard se fija en el hilo antes de la primera sentencia (ShardsDataSource.en) y queda para toda
+ * la transacción. Las lecturas que no son de una tienda se reparten a todos los shards en paralelo,
+ * en hilos virtuales y cada una con su propia conexión, y FiadosService combina los resultados.
+ * Una fila solo cuenta en el shard dueño de su tienda: las copias que deja un movimiento a medias
+ * no aparecen dos veces. Sin fiados.shards.habilitados hay un único shard y todo corre en el hilo
+ * que llama, sin consultas de más.
+ */
+@Component
+public class ShardsFiados {
+
+    // Shard de una tienda según el directorio y si se la está moviendo.
+    private record Asignacion(String shard, boolean moviendo) {
+    }
+
+    // Dónde está guardado un fiado.
+    public record Ubicacion(String shard, String tienda) {
+    }
+
+    private final List<String> nombres;
+    private final NavigableMap<Long, String> anillo = new TreeMap<>();
+    private final Map<String, Asignacion> directorio = new ConcurrentHashMap<>();
+    // Directorio en el shard principal; null con un único shard.
+    private final JdbcTemplate catalogo;
+    private final TransactionTemplate escritura;
+    private final TransactionTemplate lectura;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    public ShardsFiados(ObjectProvider<ShardsDataSource> shards, ObjectProvider<ShardsProperties> propiedades,
+            PlatformTransactionManager transactionManager) {
+        this(shards.getIfAvailable(), propiedades.getIfAvailable(), transactionManager);
+    }
+
+    // Un único shard, para las pruebas que no levantan el contexto.
+    ShardsFiados(PlatformTransactionManager transactionManager) {
+        this((ShardsDataSource) null, null, transactionManager);
+    }
+
+    private ShardsFiados(ShardsDataSource shards, ShardsProperties propiedades,
+            PlatformTransactionManager transactionManager) {
+        this.escritura = new TransactionTemplate(transactionManager);
+        this.lectura = new TransactionTemplate(transactionManager);
+        this.lectura.setReadOnly(true);
+        if (shards == null) {
+            this.nombres = List.of(ShardsDataSource.PRINCIPAL);
+            this.catalogo = null;
+            return;
+        }
+        this.nombres = shards.nombres();
+        this.catalogo = new JdbcTemplate(shards.dataSource(ShardsDataSource.PRINCIPAL));
+        int nodosVirtuales = Math.max(1, propiedades.nodosVirtuales());
+        for (String nombre : nombres) {
+            for (int i = 0; i < nodosVirtuales; i++) {
+                anillo.put(hash(nombre + "#" + i), nombre);
+            }
+        }
+    }
+
+    // Nombres de los shards; el primero es el principal.
+    public List<String> nombres() {
+        return nombres;
+    }
+
+    // Shard donde están (o estarían) los fiados de la tienda.
+    public String shardDe(String tienda) {
+        if (catalogo == null) {
+            return nombres.get(0);
+        }
+        Asignacion asignacion = asignacion(tienda);
+        return asignacion != null ? asignacion.shard() : porHash(tienda);
+    }
+
+    // Shard donde escribir un fiado de la tienda. La primera escritura fija la tienda en el directorio.
+    public String shardParaEscribir(String tienda) {
+        if (catalogo == null) {
+            return nombres.get(0);
+        }
+        Asignacion asignacion = asignacion(tienda);
+        if (asignacion == null) {
+            // Si otra instancia la fijó antes, se conserva su asignación.
+            catalogo.update("INSERT INTO tiendas_shards (tienda, shard, moviendo) VALUES (?, ?, FALSE)"
+                    + " ON DUPLICATE KEY UPDATE shard = shard", tienda, porHash(tienda));
+            asignacion = leer(tienda);
+            directorio.put(tienda, asignacion);
+        }
+        if (asignacion.moviendo()) {
+            throw new TiendaEnMovimientoException(tienda);
+        }
+        return asignacion.shard();
+    }
+
+    // Falla si la tienda está congelada por un movimiento; para las filas que ya se bloquearon.
+    public void comprobarEscritura(String tienda) {
+        if (catalogo != null) {
+            Asignacion asignacion = asignacion(tienda);
+            if (asignacion != null && asignacion.moviendo()) {
+                throw new TiendaEnMovimientoException(tienda);
+            }
+        }
+    }
+
+    // Si la fila de una tienda leída de ese shard es la vigente.
+    public boolean esDuenio(String shard, String tienda) {
+        return catalogo == null || shard.equals(shardDe(tienda));
+    }
+
+    // Si hay alguna tienda congelada por un movimiento, según el directorio leído por esta instancia.
+    public boolean hayMovimientos() {
+        return directorio.values().stream().anyMatch(Asignacion::moviendo);
+    }
+
+    /**
+     * Busca en qué shard está guardado un fiado. Con un único shard no consulta nada y no se conoce
+     * la tienda; con varios, pregunta a todos y falla si la tienda del fiado se está moviendo.
+     */
+    public Optional<Ubicacion> ubicar(Long id) {
+        if (catalogo == null) {
+            return Optional.of(new Ubicacion(nombres.get(0), null));
+        }
+        for (Map.Entry<String, Optional<String>> encontrado : enTodos(() -> fiadosRepository.buscarTienda(id)).entrySet()) {
+            Optional<String> tienda = encontrado.getValue();
+            if (tienda.isPresent() && esDuenio(encontrado.getKey(), tienda.get())) {
+                comprobarEscritura(tienda.get());
+                return Optional.of(new Ubicacion(encontrado.getKey(), tienda.get()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Ejecuta la acción en este hilo con el shard fijado.
+    public <T> T enShard(String shard, Supplier<T> accion) {
+        return ShardsDataSource.en(shard, accion);
+    }
+
+    // Ejecuta la acción en una transacción nueva sobre el shard.
+    public <T> T enShardEnTransaccion(String shard, Supplier<T> accion, boolean soloLectura) {
+        TransactionTemplate transaccion = soloLectura ? lectura : escritura;
+        return ShardsDataSource.en(shard, () -> transaccion.execute(estado -> accion.get()));
+    }
+
+    /**
+     * Ejecuta la acción en cada shard, en paralelo, y devuelve los resultados por shard en el orden
+     * de la configuración. Un error en cualquiera de ellos se propaga después de esperar al resto.
+     */
+    public <T> Map<String, T> enTodos(Supplier<T> accion) {
+        Map<String, T> resultados = new LinkedHashMap<>();
+        if (nombres.size() == 1) {
+            resultados.put(nombres.get(0), enShard(nombres.get(0), accion));
+            return resultados;
+        }
+        Map<String, Future<T>> pendientes = new LinkedHashMap<>();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String nombre : nombres) {
+                pendientes.put(nombre, hilos.submit(() -> enShard(nombre, accion)));
+            }
+        }
+        pendientes.forEach((nombre, pendiente) -> resultados.put(nombre, resultado(nombre, pendiente)));
+        return resultados;
+    }
+
+    // Como enTodos, con cada shard en su propia transacción: no hay commit atómico entre shards.
+    public <T> Map<String, T> enTodosEnTransaccion(Supplier<T> accion, boolean soloLectura) {
+        TransactionTemplate transaccion = soloLectura ? lectura : escritura;
+        return enTodos(() -> transaccion.execute(estado -> accion.get()));
+    }
+
+    // Vuelve a leer el directorio para ver las tiendas fijadas o movidas desde otra instancia.
+    @Scheduled(fixedDelayString = "${fiados.shards.intervalo-directorio:10s}")
+    public void recargarDirectorio() {
+        if (catalogo == null) {
+            return;
+        }
+        Map<String, Asignacion> leidas = new ConcurrentHashMap<>();
+        catalogo.query("SELECT tienda, shard, moviendo FROM tiendas_shards", fila -> {
+            leidas.put(fila.getString(1), new Asignacion(fila.getString(2), fila.getBoolean(3)));
+        });
+        directorio.keySet().retainAll(leidas.keySet());
+        directorio.putAll(leidas);
+    }
+
+    // Cambia la asignación de una tienda en el directorio; lo usa MovimientoTiendas.
+    void asignar(String tienda, String shard, boolean moviendo) {
+        catalogo.update("INSERT INTO tiendas_shards (tienda, shard, moviendo) VALUES (?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE shard = VALUES(shard), moviendo = VALUES(moviendo)",
+                tienda, shard, moviendo);
+        directorio.put(tienda, new Asignacion(shard, moviendo));
+    }
+
+    private Asignacion asignacion(String tienda) {
+        Asignacion asignacion = directorio.get(tienda);
+        if (asignacion == null) {
+            asignacion = leer(tienda);
+            if (asignacion != null) {
+                directorio.put(tienda, asignacion);
+            }
+        }
+        return asignacion;
+    }
+
+    private Asignacion leer(String tienda) {
+        List<Asignacion> filas = catalogo.query("SELECT shard, moviendo FROM tiendas_shards WHERE tienda = ?",
+                (fila, numero) -> new Asignacion(fila.getString(1), fila.getBoolean(2)), tienda);
+        return filas.isEmpty() ? null : filas.get(0);
+    }
+
+    private String porHash(String tienda) {
+        Map.Entry<Long, String> punto = anillo.ceilingEntry(hash(tienda));
+        return (punto != null ? punto : anillo.firstEntry()).getValue();
+    }
+
+    // Primeros 8 bytes del MD5: reparte bien y da lo mismo en todas las instancias y versiones de Java.
+    private static long hash(String texto) {
+        try {
+            byte[] digesto = MessageDigest.getInstance("MD5").digest(texto.getBytes(StandardCharsets.UTF_8));
+            long valor = 0;
+            for (int i = 0; i < 8; i++) {
+                valor = (valor << 8) | (digesto[i] & 0xff);
+            }
+            return valor;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T resultado(String shard, Future<T> pendiente) {
+        try {
+            return pendiente.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error causa) {
+                throw causa;
+            }
+            throw new IllegalStateException("Falló la consulta en el shard " + shard, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando el shard " + shard, e);
+        }
+    }
+
+}
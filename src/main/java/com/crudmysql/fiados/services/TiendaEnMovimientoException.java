@@ -0,0 +1,17 @@
+package com.crudmysql.fiados.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * La tienda se está moviendo de shard y no acepta escrituras hasta que termine: el cliente
+ * debe reintentar más tarde.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TiendaEnMovimientoException extends RuntimeException {
+
+    public TiendaEnMovimientoException(String tienda) {
+        super("La tienda " + tienda + " se está moviendo de shard");
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.crudmysql.fiados.services;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.crudmysql.fiados.models.ResultadoVerificacion;
+import com.crudmysql.fiados.repositories.ISaldoClienteRepository;
+import com.crudmysql.fiados.repositories.ITotalDiarioRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Compara saldos_clientes y totales_diarios con lo que suman fiados y fiados_historico y, si se
+ * pide, corrige las diferencias. Corre según fiados.resumenes.verificacion.cron y con
+ * POST /fiados/resumenes/verificar.
+ *
+ * Recorre los clientes por bloques de nombres y los días por bloques de fechas, cada bloque en su
+ * propia transacción corta. La comparación de un bloque es una sola consulta, que ve una única
+ * instantánea de las tres tablas; la corrección se aplica como diferencia con el mismo
+ * INSERT ... ON DUPLICATE KEY UPDATE que usan las escrituras, así lo que las cajas cambien mientras
+ * tanto se suma encima en vez de perderse. Con los resúmenes vacíos, corregir los reconstruye.
+ *
+ * Como la corrección suma la diferencia medida, dos ejecuciones que midieran la misma la aplicarían
+ * dos veces: la programada corre a la misma hora en todas las instancias y el POST puede coincidir
+ * con ella. Por eso cada bloque empieza bloqueando la fila de bloqueos_tareas; la ejecución que
+ * llega segunda espera el commit de la primera y ya no encuentra la diferencia.
+ * Con varios shards se verifica cada uno contra sus propios fiados, de a uno.
+ */
+@Component
+public class VerificacionResumenes {
+
+    private static final Logger log = LoggerFactory.getLogger(VerificacionResumenes.class);
+
+    private final ISaldoClienteRepository saldosRepository;
+    private final ITotalDiarioRepository totalesRepository;
+    private final ShardsFiados shards;
+    private final TransactionTemplate transaccion;
+    private final Counter diferenciasSaldos;
+    private final Counter diferenciasDias;
+    private final boolean corregir;
+    private final int clientesPorBloque;
+    private final int diasPorBloque;
+
+    public VerificacionResumenes(ISaldoClienteRepository saldosRepository,
+            ITotalDiarioRepository totalesRepository,
+            ShardsFiados shards,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${fiados.resumenes.verificacion.corregir:true}") boolean corregir,
+            @Value("${fiados.resumenes.verificacion.clientes-por-bloque:500}") int clientesPorBloque,
+            @Value("${fiados.resumenes.verificacion.dias-por-bloque:31}") int diasPorBloque) {
+        this.saldosRepository = saldosRepository;
+        this.totalesRepository = totalesRepository;
+        this.shards = shards;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.diferenciasSaldos = Counter.builder("fiados.resumenes.diferencias")
+                .description("Filas de los resúmenes que no coincidían con los fiados")
+                .tag("tabla", "saldos_clientes")
+                .register(meterRegistry);
+        this.diferenciasDias = Counter.builder("fiados.resumenes.diferencias")
+                .description("Filas de los resúmenes que no coincidían con los fiados")
+                .tag("tabla", "totales_diarios")
+                .register(meterRegistry);
+        this.corregir = corregir;
+        this.clientesPorBloque = Math.max(1, clientesPorBloque);
+        this.diasPorBloque = Math.max(1, diasPorBloque);
+    }
+
+    @Scheduled(cron = "${fiados.resumenes.verificacion.cron:0 0 4 * * *}")
+    public ResultadoVerificacion verificarProgramado() {
+        return verificar(corregir);
+    }
+
+    /**
+     * Verifica los dos resúmenes completos y, con corregir, deja cada clave como la suman los fiados.
+     */
+    public ResultadoVerificacion verificar(boolean corregir) {
+        long inicio = System.nanoTime();
+        int bloques = 0;
+        int saldos = 0;
+        int dias = 0;
+        for (String shard : shards.nombres()) {
+            ResultadoVerificacion delShard = shards.enShard(shard, () -> verificarShard(corregir));
+            bloques += delShard.bloques();
+            saldos += delShard.saldosDistintos();
+            dias += delShard.diasDistintos();
+        }
+
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        if (saldos + dias > 0) {
+            log.warn("Verificación de resúmenes: {} saldos y {} días no coincidían con los fiados{}",
+                    saldos, dias, corregir ? " y se corrigieron" : "");
+        } else {
+            log.info("Verificación de resúmenes: sin diferencias en {} bloques, {} ms", bloques, milisegundos);
+        }
+        return new ResultadoVerificacion(bloques, saldos, dias, corregir, milisegundos);
+    }
+
+    // Verifica los resúmenes del shard fijado en el hilo.
+    private ResultadoVerificacion verificarShard(boolean corregir) {
+        int bloques = 0;
+        int saldos = 0;
+        String desde = "";
+        while (desde != null) {
+            String inicioBloque = desde;
+            String hasta = saldosRepository.finDeBloque(inicioBloque, clientesPorBloque - 1);
+            saldos += transaccion.execute(estado -> {
+                bloquear();
+                return verificarClientes(inicioBloque, hasta, corregir);
+            });
+            bloques++;
+            desde = hasta;
+        }
+
+        int dias = 0;
+        Object[] rango = totalesRepository.rangoFechas().get(0);
+        if (rango[0] != null) {
+            LocalDate ultima = fecha(rango[1]);
+            for (LocalDate dia = fecha(rango[0]); !dia.isAfter(ultima); dia = dia.plusDays(diasPorBloque)) {
+                LocalDate primero = dia;
+                LocalDate hasta = dia.plusDays(diasPorBloque - 1L);
+                dias += transaccion.execute(estado -> {
+                    bloquear();
+                    return verificarDias(primero, hasta, corregir);
+                });
+                bloques++;
+            }
+        }
+        return new ResultadoVerificacion(bloques, saldos, dias, corregir, 0);
+    }
+
+    // Primera sentencia del bloque: en MySQL la instantánea que compara se toma recién en la consulta
+    // siguiente, después de obtener el bloqueo, así que ve lo que corrigió la ejecución anterior.
+    private void bloquear() {
+        saldosRepository.bloquearVerificacion().orElseThrow(() ->
+                new IllegalStateException("Falta la fila verificacion-resumenes en bloqueos_tareas"));
+    }
+
+    private int verificarClientes(String desde, String hasta, boolean corregir) {
+        List<Object[]> diferencias = saldosRepository.diferencias(desde, hasta);
+        diferenciasSaldos.increment(diferencias.size());
+        if (corregir) {
+            for (Object[] fila : diferencias) {
+                saldosRepository.sumar((String) fila[0], (String) fila[1], monto(fila[2]).negate(),
+                        -((Number) fila[3]).longValue());
+            }
+        }
+        return diferencias.size();
+    }
+
+    private int verificarDias(LocalDate desde, LocalDate hasta, boolean corregir) {
+        List<Object[]> diferencias = totalesRepository.diferencias(desde, hasta);
+        diferenciasDias.increment(diferencias.size());
+        if (corregir) {
+            for (Object[] fila : diferencias) {
+                totalesRepository.sumar(fecha(fila[0]), monto(fila[1]).negate(), -((Number) fila[2]).longValue());
+            }
+        }
+        return diferencias.size();
+    }
+
+    // Según el driver, SUM de DECIMAL llega como BigDecimal y las fechas como java.sql.Date o LocalDate.
+    private static BigDecimal monto(Object valor) {
+        return valor instanceof BigDecimal monto ? monto : new BigDecimal(valor.toString());
+    }
+
+    private static LocalDate fecha(Object valor) {
+        return valor instanceof Date fecha ? fecha.toLocalDate() : (LocalDate) valor;
+    }
+
+}
@@ -0,0 +1,15 @@
+-- El contador de cambios de cada tabla se reparte en 16 filas (franjas): cada transacción que
+-- modifica fiados sube una sola, así las escrituras concurrentes no esperan todas el bloqueo de la
+-- misma fila hasta su commit. La versión de la tabla es la suma de sus franjas.
+ALTER TABLE versiones_tablas ADD COLUMN franja INT NOT NULL DEFAULT 0;
+ALTER TABLE versiones_tablas DROP PRIMARY KEY;
+ALTER TABLE versiones_tablas ADD PRIMARY KEY (tabla, franja);
+
+-- La versión actual queda en la franja 0; las demás empiezan en 0.
+INSERT INTO versiones_tablas (tabla, franja, version, modificado)
+SELECT v.tabla, f.franja, 0, v.modificado
+FROM versiones_tablas v
+CROSS JOIN (SELECT 1 AS franja UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 UNION ALL SELECT 5
+            UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9 UNION ALL SELECT 10
+            UNION ALL SELECT 11 UNION ALL SELECT 12 UNION ALL SELECT 13 UNION ALL SELECT 14 UNION ALL SELECT 15) f
+WHERE v.franja = 0;
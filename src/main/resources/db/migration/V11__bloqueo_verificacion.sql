@@ -0,0 +1,7 @@
+-- Filas que las tareas periódicas bloquean con SELECT ... FOR UPDATE para no correr a la vez en
+-- varias instancias. La verificación de resúmenes bloquea la suya en cada bloque que compara y
+-- corrige: si otra ejecución ya corrigió ese bloque, la segunda lo compara después de su commit.
+CREATE TABLE bloqueos_tareas (
+    tarea VARCHAR(64) NOT NULL PRIMARY KEY
+);
+INSERT INTO bloqueos_tareas (tarea) VALUES ('verificacion-resumenes');
@@ -0,0 +1,9 @@
+-- Esquema original de la tabla fiados, tal como lo generaba Hibernate con ddl-auto=update.
+CREATE TABLE IF NOT EXISTS fiados (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    nombre_cliente VARCHAR(255),
+    monto DOUBLE,
+    fecha VARCHAR(255),
+    estado VARCHAR(255),
+    PRIMARY KEY (id)
+);
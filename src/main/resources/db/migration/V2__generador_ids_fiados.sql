@@ -0,0 +1,12 @@
+-- Tabla desde la que Hibernate reserva bloques de ids para fiados (@TableGenerator "fiados_id").
+-- Debe aplicarse ANTES de desplegar sobre una base con datos: si Hibernate crea la tabla por su
+-- cuenta empieza a numerar desde 1 y choca con los ids que ya generó AUTO_INCREMENT.
+CREATE TABLE fiados_id_gen (
+    entidad VARCHAR(255) NOT NULL,
+    siguiente_id BIGINT,
+    PRIMARY KEY (entidad)
+);
+
+-- Se deja un margen de un bloque completo (allocationSize = 50) sobre el id más alto existente.
+INSERT INTO fiados_id_gen (entidad, siguiente_id)
+SELECT 'fiados', COALESCE(MAX(id), 0) + 51 FROM fiados;
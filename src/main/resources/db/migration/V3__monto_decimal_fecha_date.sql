@@ -0,0 +1,19 @@
+-- Pasa monto de DOUBLE a DECIMAL(12,2) y fecha de texto libre a DATE.
+-- La columna de texto original se conserva como fecha_texto: las filas cuya fecha no sea una fecha
+-- AAAA-MM-DD válida quedan con fecha NULL y pueden revisarse a mano antes de borrarla.
+ALTER TABLE fiados MODIFY monto DECIMAL(12,2);
+
+ALTER TABLE fiados RENAME COLUMN fecha TO fecha_texto;
+ALTER TABLE fiados ADD COLUMN fecha DATE;
+
+-- Solo se convierten las fechas que existen en el calendario (años 1000-9999, días según el mes y
+-- 29 de febrero solo en años bisiestos). Se valida con expresiones regulares y no con STR_TO_DATE o
+-- CAST porque, en modo estricto, una fecha imposible como 2023-02-30 dentro de un UPDATE es un error
+-- que detiene la migración, no un NULL.
+UPDATE fiados
+SET fecha = CAST(fecha_texto AS DATE)
+WHERE fecha_texto REGEXP '^[1-9][0-9]{3}-((0[13578]|1[02])-(0[1-9]|[12][0-9]|3[01])|(0[469]|11)-(0[1-9]|[12][0-9]|30)|02-(0[1-9]|1[0-9]|2[0-8]))$'
+   OR fecha_texto REGEXP '^([1-9][0-9](0[48]|[2468][048]|[13579][26])|([13579][26]|[2468][048])00)-02-29$';
+
+CREATE INDEX idx_fiados_estado_fecha ON fiados (estado, fecha);
+CREATE INDEX idx_fiados_fecha ON fiados (fecha);
@@ -0,0 +1,2 @@
+-- Índice para las búsquedas por cliente (y cliente + estado) de /fiados/porCliente.
+CREATE INDEX idx_fiados_cliente_estado ON fiados (nombre_cliente, estado);
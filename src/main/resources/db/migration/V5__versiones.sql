@@ -0,0 +1,10 @@
+-- Versión por fila para bloqueo optimista y ETag de /fiados/obtenerPorId.
+ALTER TABLE fiados ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- Contador de cambios por tabla para el ETag y Last-Modified de /fiados/listar.
+CREATE TABLE versiones_tablas (
+    tabla VARCHAR(64) NOT NULL PRIMARY KEY,
+    version BIGINT NOT NULL,
+    modificado DATETIME(6) NOT NULL
+);
+INSERT INTO versiones_tablas (tabla, version, modificado) VALUES ('fiados', 0, CURRENT_TIMESTAMP(6));
@@ -0,0 +1,13 @@
+-- Fiados saldados que el archivo mueve fuera de la tabla activa. Conservan su id original.
+CREATE TABLE fiados_historico (
+    id BIGINT NOT NULL PRIMARY KEY,
+    nombre_cliente VARCHAR(255),
+    monto DECIMAL(12,2),
+    fecha DATE,
+    estado VARCHAR(255),
+    version BIGINT NOT NULL,
+    archivado DATETIME(6) NOT NULL
+);
+
+CREATE INDEX idx_fiados_historico_cliente ON fiados_historico (nombre_cliente);
+CREATE INDEX idx_fiados_historico_fecha ON fiados_historico (fecha);
@@ -0,0 +1,36 @@
+-- Resúmenes que se mantienen en la misma transacción que cada cambio de fiados: saldo por cliente
+-- y estado, y totales por día. Cuentan los fiados activos y los archivados en fiados_historico,
+-- así que archivar no los modifica. Los nombres y estados nulos se guardan como ''.
+CREATE TABLE saldos_clientes (
+    nombre_cliente VARCHAR(255) NOT NULL,
+    estado VARCHAR(255) NOT NULL,
+    monto DECIMAL(14,2) NOT NULL,
+    cantidad BIGINT NOT NULL,
+    PRIMARY KEY (nombre_cliente, estado)
+);
+
+-- Saldos de un estado ordenados por monto (los que más deben), sin recorrer los demás estados.
+CREATE INDEX idx_saldos_clientes_estado_monto ON saldos_clientes (estado, monto);
+
+CREATE TABLE totales_diarios (
+    fecha DATE NOT NULL PRIMARY KEY,
+    monto DECIMAL(14,2) NOT NULL,
+    cantidad BIGINT NOT NULL
+);
+
+INSERT INTO saldos_clientes (nombre_cliente, estado, monto, cantidad)
+SELECT nombre_cliente, estado, SUM(monto), COUNT(*) FROM (
+    SELECT COALESCE(nombre_cliente, '') AS nombre_cliente, COALESCE(estado, '') AS estado,
+           COALESCE(monto, 0) AS monto FROM fiados
+    UNION ALL
+    SELECT COALESCE(nombre_cliente, ''), COALESCE(estado, ''), COALESCE(monto, 0) FROM fiados_historico
+) f
+GROUP BY nombre_cliente, estado;
+
+INSERT INTO totales_diarios (fecha, monto, cantidad)
+SELECT fecha, SUM(monto), COUNT(*) FROM (
+    SELECT fecha, COALESCE(monto, 0) AS monto FROM fiados WHERE fecha IS NOT NULL
+    UNION ALL
+    SELECT fecha, COALESCE(monto, 0) FROM fiados_historico WHERE fecha IS NOT NULL
+) f
+GROUP BY fecha;
@@ -0,0 +1,15 @@
+-- Tienda de cada fiado. Los fiados existentes quedan en la tienda 'principal' (FiadosModel.TIENDA_PRINCIPAL).
+ALTER TABLE fiados ADD COLUMN tienda VARCHAR(64) NOT NULL DEFAULT 'principal';
+ALTER TABLE fiados_historico ADD COLUMN tienda VARCHAR(64) NOT NULL DEFAULT 'principal';
+
+-- Para recorrer los fiados de una tienda por id al moverla de shard.
+CREATE INDEX idx_fiados_tienda ON fiados (tienda, id);
+CREATE INDEX idx_fiados_historico_tienda ON fiados_historico (tienda, id);
+
+-- Directorio de tiendas con fiados.shards.habilitados=true: en qué shard están los fiados de cada
+-- tienda y si se la está moviendo. Se usa solo la copia del primer shard (el catálogo).
+CREATE TABLE tiendas_shards (
+    tienda VARCHAR(64) NOT NULL PRIMARY KEY,
+    shard VARCHAR(64) NOT NULL,
+    moviendo BOOLEAN NOT NULL DEFAULT FALSE
+);
@@ -0,0 +1,5 @@
+-- Índices que terminan en id para las búsquedas paginadas "... order by id limit n" por cliente y
+-- por estado: la base lee las primeras n filas del índice en orden, sin ordenar antes todas las que
+-- cumplen el filtro.
+CREATE INDEX idx_fiados_cliente_id ON fiados (nombre_cliente, id);
+CREATE INDEX idx_fiados_estado_id ON fiados (estado, id);
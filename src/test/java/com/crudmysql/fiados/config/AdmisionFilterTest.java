@@ -0,0 +1,157 @@
+package com.crudmysql.fiados.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmisionFilterTest {
+
+    // Se abre al terminar cada prueba para que las peticiones retenidas terminen.
+    private final CountDownLatch liberar = new CountDownLatch(1);
+    private final List<Thread> retenidas = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        liberar.countDown();
+        for (Thread retenida : retenidas) {
+            retenida.join();
+        }
+    }
+
+    @Test
+    void cuandoElEndpointLlegaASuLimite_deberiaResponder429SinAfectarAOtros() throws Exception {
+        // --- ARRANGE ---
+        // Un solo /listar a la vez.
+        AdmisionFilter filtro = filtro(20, Map.of("listar", 1));
+        retener(filtro, "GET", "/fiados/listar");
+
+        // --- ACT ---
+        MockHttpServletResponse rechazada = ejecutar(filtro, "GET", "/fiados/listar");
+        MockHttpServletResponse caja = ejecutar(filtro, "GET", "/fiados/obtenerPorId/1");
+
+        // --- ASSERT ---
+        assertEquals(429, rechazada.getStatus());
+        assertEquals("5", rechazada.getHeader("Retry-After"));
+        assertEquals(200, caja.getStatus());
+    }
+
+    @Test
+    void losListadosMasivos_noDeberianOcuparElLugarDeLasCajas() throws Exception {
+        // --- ARRANGE ---
+        // Límite de 4: los listados masivos pueden ocupar la mitad.
+        AdmisionFilter filtro = filtro(4, Map.of());
+        retener(filtro, "GET", "/fiados/exportar");
+        retener(filtro, "GET", "/fiados/listar");
+
+        // --- ACT ---
+        MockHttpServletResponse masiva = ejecutar(filtro, "GET", "/fiados/listar/stream");
+        MockHttpServletResponse guardar = ejecutar(filtro, "POST", "/fiados/guardar");
+        MockHttpServletResponse obtener = ejecutar(filtro, "GET", "/fiados/obtenerPorId/1");
+
+        // --- ASSERT ---
+        assertEquals(503, masiva.getStatus());
+        assertEquals("1", masiva.getHeader("Retry-After"));
+        assertEquals(200, guardar.getStatus());
+        assertEquals(200, obtener.getStatus());
+    }
+
+    @Test
+    void lasAltasYBajasEnLote_deberianContarComoMasivas() throws Exception {
+        // --- ARRANGE ---
+        // Límite de 4: dos lotes ya ocupan la cuota masiva.
+        AdmisionFilter filtro = filtro(4, Map.of("eliminar-lote", 1));
+        retener(filtro, "POST", "/fiados/guardarLote");
+        retener(filtro, "DELETE", "/fiados/eliminar");
+
+        // --- ACT ---
+        MockHttpServletResponse otroLote = ejecutar(filtro, "POST", "/fiados/guardarLote");
+        MockHttpServletResponse otraBaja = ejecutar(filtro, "DELETE", "/fiados/eliminar");
+        MockHttpServletResponse eliminarUno = ejecutar(filtro, "DELETE", "/fiados/eliminar/1");
+
+        // --- ASSERT ---
+        assertEquals(503, otroLote.getStatus());
+        assertEquals(429, otraBaja.getStatus());
+        // La baja de un solo fiado es de las cajas.
+        assertEquals(200, eliminarUno.getStatus());
+    }
+
+    @Test
+    void elLimiteAdaptativo_deberiaBajarConRespuestasLentasYSubirConRapidas() {
+        LimiteAdaptativo limite = new LimiteAdaptativo(20, 4, 200, 2.0, Duration.ofMillis(50));
+        long ms = 1_000_000;
+
+        // Respuestas de 10 ms con el límite en uso: sube de a poco.
+        long ahora = 0;
+        for (int i = 0; i < 100; i++) {
+            ahora += 10 * ms;
+            limite.registrar(10 * ms, ahora, false, 15);
+        }
+        assertTrue(limite.actual() > 20);
+        assertEquals(10.0, limite.latenciaBaseMilisegundos(), 0.01);
+
+        // Sin carga no sigue subiendo.
+        int sinCarga = limite.actual();
+        for (int i = 0; i < 100; i++) {
+            ahora += 10 * ms;
+            limite.registrar(10 * ms, ahora, false, 1);
+        }
+        assertEquals(sinCarga, limite.actual());
+
+        // Una ráfaga de respuestas de 500 ms que terminan juntas baja el límite una sola vez.
+        ahora += 500 * ms;
+        for (int i = 0; i < 10; i++) {
+            limite.registrar(500 * ms, ahora, false, 15);
+        }
+        assertEquals((int) (sinCarga * 0.9), limite.actual(), 1);
+
+        // Si siguen lentas, el límite baja hasta el mínimo y no de ahí.
+        for (int i = 0; i < 100; i++) {
+            ahora += 500 * ms;
+            limite.registrar(500 * ms, ahora, false, 15);
+        }
+        assertEquals(4, limite.actual());
+    }
+
+    private static AdmisionFilter filtro(int limiteInicial, Map<String, Integer> limites) {
+        AdmisionProperties propiedades = new AdmisionProperties(true, limiteInicial, limiteInicial, 200,
+                Duration.ofMillis(50), 2.0, 0.8, 0.5, limites, Duration.ofSeconds(1), Duration.ofSeconds(5));
+        return new AdmisionFilter(propiedades, new SimpleMeterRegistry());
+    }
+
+    // Deja una petición dentro del filtro hasta el final de la prueba.
+    private void retener(AdmisionFilter filtro, String metodo, String ruta) throws InterruptedException {
+        CountDownLatch dentro = new CountDownLatch(1);
+        retenidas.add(Thread.ofVirtual().start(() -> {
+            try {
+                filtro.doFilter(new MockHttpServletRequest(metodo, ruta), new MockHttpServletResponse(), (req, res) -> {
+                    dentro.countDown();
+                    try {
+                        liberar.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(dentro.await(5, TimeUnit.SECONDS));
+    }
+
+    private static MockHttpServletResponse ejecutar(AdmisionFilter filtro, String metodo, String ruta) throws Exception {
+        MockHttpServletResponse respuesta = new MockHttpServletResponse();
+        filtro.doFilter(new MockHttpServletRequest(metodo, ruta), respuesta, (req, res) -> { });
+        return respuesta;
+    }
+}
@@ -0,0 +1,68 @@
+package com.crudmysql.fiados.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSelladaTest {
+
+    private final ConcurrentMapCache fondo = new ConcurrentMapCache("fiados");
+
+    private final CacheSellada cache = new CacheSellada(fondo);
+
+    @Test
+    void put_queCompletaUnFallo_deberiaGuardarElValor() {
+        // --- ARRANGE ---
+        assertNull(cache.get(1L));
+
+        // --- ACT ---
+        cache.put(1L, "leído");
+
+        // --- ASSERT ---
+        assertEquals("leído", fondo.get(1L).get());
+    }
+
+    @Test
+    void put_queCompletaUnFallo_despuesDeUnDesalojo_noDeberiaGuardarElValor() {
+        // --- ARRANGE ---
+        assertNull(cache.get(1L));
+        // Mientras se leía la base, otra transacción confirmó y desalojó la clave.
+        cache.evict(1L);
+
+        // --- ACT ---
+        cache.put(1L, "anterior");
+
+        // --- ASSERT ---
+        assertNull(fondo.get(1L));
+    }
+
+    @Test
+    void put_queCompletaUnFallo_despuesDeUnPutNuevo_noDeberiaPisarlo() {
+        // --- ARRANGE ---
+        assertNull(cache.get(1L));
+        // Un @CachePut de otro hilo guarda la versión nueva después del commit.
+        Thread otro = Thread.ofVirtual().unstarted(() -> cache.put(1L, "nuevo"));
+        otro.start();
+        assertDoesNotThrow(() -> otro.join());
+
+        // --- ACT ---
+        cache.put(1L, "anterior");
+
+        // --- ASSERT ---
+        assertEquals("nuevo", fondo.get(1L).get());
+    }
+
+    @Test
+    void put_queCompletaUnFallo_despuesDeClear_noDeberiaGuardarElValor() {
+        // --- ARRANGE ---
+        assertNull(cache.get(1L));
+        cache.clear();
+
+        // --- ACT ---
+        cache.put(1L, "anterior");
+
+        // --- ASSERT ---
+        assertNull(fondo.get(1L));
+    }
+}
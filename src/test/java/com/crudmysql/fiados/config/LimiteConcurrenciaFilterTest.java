@@ -0,0 +1,85 @@
+package com.crudmysql.fiados.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimiteConcurrenciaFilterTest {
+
+    @Test
+    void cuandoNoHayLugar_deberiaResponder503SinEjecutarLaPeticion() throws Exception {
+        // --- ARRANGE ---
+        // Un solo lugar y 50 ms de espera máxima.
+        LimiteConcurrenciaFilter filtro = new LimiteConcurrenciaFilter(1, Duration.ofMillis(50), new SimpleMeterRegistry());
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        // Una primera petición ocupa el único lugar hasta que se la libere.
+        Thread ocupante = Thread.ofVirtual().start(() -> {
+            try {
+                filtro.doFilter(peticion(), new MockHttpServletResponse(), (req, res) -> {
+                    dentro.countDown();
+                    try {
+                        liberar.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(dentro.await(5, TimeUnit.SECONDS));
+
+        // --- ACT ---
+        MockHttpServletResponse rechazada = new MockHttpServletResponse();
+        boolean[] ejecutada = { false };
+        filtro.doFilter(peticion(), rechazada, (req, res) -> ejecutada[0] = true);
+
+        // --- ASSERT ---
+        // La segunda petición esperó su turno, no lo obtuvo y se rechazó con 503.
+        assertEquals(503, rechazada.getStatus());
+        assertFalse(ejecutada[0], "La petición rechazada no debería llegar al controlador.");
+
+        // Al terminar la primera, el lugar queda libre para la siguiente.
+        liberar.countDown();
+        ocupante.join();
+        MockHttpServletResponse aceptada = new MockHttpServletResponse();
+        filtro.doFilter(peticion(), aceptada, (req, res) -> ejecutada[0] = true);
+        assertEquals(200, aceptada.getStatus());
+        assertTrue(ejecutada[0]);
+    }
+
+    @Test
+    void unaRespuestaEnStreaming_deberiaOcuparSuLugarHastaTerminar() throws Exception {
+        // --- ARRANGE ---
+        LimiteConcurrenciaFilter filtro = new LimiteConcurrenciaFilter(1, Duration.ofMillis(50), new SimpleMeterRegistry());
+        MockHttpServletRequest exportar = new MockHttpServletRequest("GET", "/fiados/exportar");
+        exportar.setAsyncSupported(true);
+
+        // --- ACT ---
+        // El controlador devuelve enseguida y el cuerpo se sigue escribiendo en otro hilo.
+        filtro.doFilter(exportar, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        MockHttpServletResponse mientrasEscribe = new MockHttpServletResponse();
+        filtro.doFilter(peticion(), mientrasEscribe, (req, res) -> { });
+
+        exportar.getAsyncContext().complete();
+        MockHttpServletResponse despues = new MockHttpServletResponse();
+        filtro.doFilter(peticion(), despues, (req, res) -> { });
+
+        // --- ASSERT ---
+        assertEquals(503, mientrasEscribe.getStatus());
+        assertEquals(200, despues.getStatus());
+    }
+
+    private static MockHttpServletRequest peticion() {
+        return new MockHttpServletRequest("GET", "/fiados/obtenerPorId/1");
+    }
+}
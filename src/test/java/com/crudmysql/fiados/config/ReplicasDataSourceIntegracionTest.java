@@ -0,0 +1,104 @@
+package com.crudmysql.fiados.config;
+
+import com.crudmysql.fiados.services.FiadosService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba la separación de lecturas y escrituras con dos bases H2 en memoria:
+ * "primaria" (spring.datasource) y "replica". La réplica no replica de verdad; la prueba escribe
+ * en ella directamente para poder distinguir de qué base salió cada lectura.
+ * La tabla estado_replica de la réplica simula el retraso de replicación.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primaria;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "fiados.replicas.habilitadas=true",
+        "fiados.replicas.nodos[0].url=jdbc:h2:mem:replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "fiados.replicas.nodos[0].username=sa",
+        "fiados.replicas.nodos[0].password=",
+        "fiados.replicas.retraso-maximo=5s",
+        // La verificación se dispara a mano desde la prueba.
+        "fiados.replicas.intervalo-verificacion=1h",
+        "fiados.replicas.consulta-retraso=SELECT retraso FROM estado_replica",
+        "spring.cache.type=none"
+})
+@ActiveProfiles("test")
+class ReplicasDataSourceIntegracionTest {
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private ReplicasDataSource replicas;
+
+    @Autowired
+    private HikariDataSource primaria;
+
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() {
+        HikariDataSource replicaDataSource = new HikariDataSource();
+        replicaDataSource.setJdbcUrl("jdbc:h2:mem:replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        replicaDataSource.setUsername("sa");
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("DROP TABLE IF EXISTS fiados");
+        replica.execute("DROP TABLE IF EXISTS estado_replica");
+        replica.execute("CREATE TABLE fiados (id BIGINT PRIMARY KEY, nombre_cliente VARCHAR(255),"
+                + " monto DECIMAL(12,2), fecha DATE, estado VARCHAR(255), version BIGINT,"
+                + " tienda VARCHAR(64) NOT NULL DEFAULT 'principal')");
+        replica.execute("CREATE TABLE estado_replica (retraso INT)");
+        replica.update("INSERT INTO estado_replica VALUES (0)");
+        new JdbcTemplate(primaria).update("DELETE FROM fiados");
+        replicas.verificar();
+    }
+
+    @Test
+    void lecturas_deberianIrALaReplicaYEscriturasALaPrimaria() {
+        // Se guarda en la primaria y se escribe otro fiado solo en la réplica.
+        fiadosService.guardarFiado(fiado("Solo en primaria").crear());
+        replica.update("INSERT INTO fiados (id, nombre_cliente, monto, fecha, estado, version)"
+                + " VALUES (1000, 'Solo en replica', 5.00, DATE '2024-07-01', 'Pendiente', 0)");
+
+        // Las lecturas de solo lectura ven la réplica, no la primaria.
+        assertEquals(1, replicas.replicasSanas());
+        assertEquals(1, fiadosService.obtenerPorCliente("Solo en replica", null, 10).size());
+        assertTrue(fiadosService.obtenerPorCliente("Solo en primaria", null, 10).isEmpty());
+        assertEquals(1, fiadosService.obtenerFiados().size());
+    }
+
+    @Test
+    void cuandoLaReplicaTieneMuchoRetraso_deberiaLeerseDeLaPrimaria() {
+        fiadosService.guardarFiado(fiado("Solo en primaria").crear());
+
+        // 60 s de retraso supera los 5 s tolerados.
+        replica.update("UPDATE estado_replica SET retraso = 60");
+        replicas.verificar();
+
+        assertEquals(0, replicas.replicasSanas());
+        assertEquals(1, fiadosService.obtenerPorCliente("Solo en primaria", null, 10).size());
+    }
+
+    @Test
+    void cuandoLaReplicaNoResponde_deberiaLeerseDeLaPrimaria() {
+        fiadosService.guardarFiado(fiado("Solo en primaria").crear());
+
+        // Sin la tabla de estado la consulta de retraso falla, como si la réplica estuviera caída.
+        replica.execute("DROP TABLE estado_replica");
+        replicas.verificar();
+
+        assertEquals(0, replicas.replicasSanas());
+        assertEquals(1, fiadosService.obtenerPorCliente("Solo en primaria", null, 10).size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.crudmysql.fiados.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicasDataSourceTest {
+
+    private final HikariDataSource primaria = pool("primaria", "jdbc:h2:mem:replicas-primaria;DB_CLOSE_DELAY=-1");
+
+    private final HikariDataSource replica = pool("replica-0", "jdbc:h2:mem:replicas-replica;DB_CLOSE_DELAY=-1");
+
+    private final ReplicasDataSource replicas = new ReplicasDataSource(primaria, List.of(replica),
+            new ReplicasProperties(true, List.of(), Duration.ofSeconds(5), Duration.ofHours(1),
+                    Duration.ofMillis(250), "SELECT 0"));
+
+    @AfterEach
+    void tearDown() {
+        replicas.close();
+        primaria.close();
+    }
+
+    @Test
+    void getConnection_conElPoolDeLaReplicaLleno_deberiaUsarLaPrimariaSinMarcarlaCaida() throws Exception {
+        // --- ARRANGE ---
+        replicas.verificar();
+        try (Connection ocupada = replica.getConnection()) {
+
+            // --- ACT ---
+            try (Connection conexion = replicas.getConnection()) {
+
+                // --- ASSERT ---
+                assertEquals("jdbc:h2:mem:replicas-primaria", conexion.getMetaData().getURL());
+            }
+            // Tampoco la verificación, que no consigue conexión para medir el retraso.
+            replicas.verificar();
+            assertEquals(1, replicas.replicasSanas());
+        }
+    }
+
+    @Test
+    void getConnection_conCredenciales_deberiaLanzarSQLFeatureNotSupported() {
+        assertThrows(SQLFeatureNotSupportedException.class, () -> replicas.getConnection("otro", "clave"));
+    }
+
+    private static HikariDataSource pool(String nombre, String url) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(nombre);
+        pool.setJdbcUrl(url);
+        pool.setUsername("sa");
+        pool.setMaximumPoolSize(1);
+        pool.setConnectionTimeout(250);
+        return pool;
+    }
+}
@@ -1,39 +1,103 @@
 package com.crudmysql.fiados.controller;
 
+import com.crudmysql.fiados.config.FormatosBinariosConfig;
 import com.crudmysql.fiados.controllers.FiadosController;
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.ClienteEncontrado;
+import com.crudmysql.fiados.models.ErrorLinea;
+import com.crudmysql.fiados.models.FiadoResumen;
 import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+import com.crudmysql.fiados.models.ResultadoImportacion;
+import com.crudmysql.fiados.models.ResultadoLote;
+import com.crudmysql.fiados.models.ResultadoVerificacion;
+import com.crudmysql.fiados.models.VersionTablaModel;
+import com.crudmysql.fiados.services.CanalCambiosFiados;
+import com.crudmysql.fiados.services.FiadosCsvService;
 import com.crudmysql.fiados.services.FiadosService;
+import com.crudmysql.fiados.services.IndiceClientes;
+import com.crudmysql.fiados.services.ResumenesFiados;
+import com.crudmysql.fiados.services.VerificacionResumenes;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
-import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.*;
 
 @WebMvcTest(FiadosController.class)
+// @WebMvcTest no configura Micrometer; un registro en memoria basta para las métricas del controlador.
+// FormatosBinariosConfig agrega las respuestas en Smile y CBOR.
+@Import({ SimpleMeterRegistry.class, FormatosBinariosConfig.class })
 public class FiadosControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
-    @MockBean
+    @MockitoBean
     private FiadosService fiadosService;
 
+    @MockitoBean
+    private FiadosCsvService fiadosCsvService;
+
+    @MockitoBean
+    private CanalCambiosFiados canalCambios;
+
+    @MockitoBean
+    private IndiceClientes indiceClientes;
+
+    @MockitoBean
+    private ResumenesFiados resumenes;
+
+    @MockitoBean
+    private VerificacionResumenes verificacionResumenes;
+
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileConverter;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
     private FiadosModel fiado1;
     private FiadosModel fiado2;
 
@@ -42,16 +106,19 @@ public class FiadosControllerTest {
         fiado1 = new FiadosModel();
         fiado1.setId(1L);
         fiado1.setNombreCliente("Cliente Test 1");
-        fiado1.setMonto(150.75);
-        fiado1.setFecha("2024-01-01");
+        fiado1.setMonto(new BigDecimal("150.75"));
+        fiado1.setFecha(LocalDate.of(2024, 1, 1));
         fiado1.setEstado("Pendiente");
 
         fiado2 = new FiadosModel();
         fiado2.setId(2L);
         fiado2.setNombreCliente("Cliente Test 2");
-        fiado2.setMonto(250.00);
-        fiado2.setFecha("2024-01-02");
+        fiado2.setMonto(new BigDecimal("250.00"));
+        fiado2.setFecha(LocalDate.of(2024, 1, 2));
         fiado2.setEstado("Pagado");
+
+        when(fiadosService.obtenerVersionTabla())
+                .thenReturn(new VersionTablaModel("fiados", 7, Instant.parse("2024-07-01T10:00:00Z")));
     }
 
     /**
@@ -81,6 +148,153 @@ public class FiadosControllerTest {
                 .andExpect(jsonPath("$[0].nombreCliente", is("Cliente Test 1")))
                 // Espera que el campo nombreCliente del segundo objeto en la lista sea "Cliente Test 2".
                 .andExpect(jsonPath("$[1].nombreCliente", is("Cliente Test 2")));
+
+        // El tamaño del listado quedó registrado en la métrica fiados.listar.tamano.
+        assertEquals(2.0, meterRegistry.get("fiados.listar.tamano").summary().max());
+    }
+
+    @Test
+    void obtenerFiados_deberiaEnviarEtagYLastModifiedDeLaVersionDeLaTabla() throws Exception {
+        when(fiadosService.obtenerFiados()).thenReturn(new ArrayList<>(Arrays.asList(fiado1, fiado2)));
+
+        mockMvc.perform(get("/fiados/listar"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"fiados-7\""))
+                .andExpect(header().string("Last-Modified", "Mon, 01 Jul 2024 10:00:00 GMT"))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+    }
+
+    @Test
+    void obtenerFiados_conEtagVigente_deberiaResponder304SinConsultarLosFiados() throws Exception {
+        mockMvc.perform(get("/fiados/listar").header("If-None-Match", "\"fiados-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // Solo se leyó la versión de la tabla; la consulta completa no se ejecutó.
+        verify(fiadosService, never()).obtenerFiados();
+    }
+
+    @Test
+    void obtenerFiados_conEtagAnterior_deberiaDevolverElListado() throws Exception {
+        when(fiadosService.obtenerFiados()).thenReturn(new ArrayList<>(Arrays.asList(fiado1)));
+
+        mockMvc.perform(get("/fiados/listar").header("If-None-Match", "\"fiados-6\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void buscarClientes_deberiaRetornarLosClientesConSuSaldo() throws Exception {
+        when(indiceClientes.listo()).thenReturn(true);
+        when(indiceClientes.buscar("per", 10)).thenReturn(List.of(
+                new ClienteEncontrado("José Pérez", new BigDecimal("140.50"), 2, 3)));
+
+        mockMvc.perform(get("/fiados/clientes/buscar").param("texto", "per"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].nombreCliente", is("José Pérez")))
+                .andExpect(jsonPath("$[0].saldoPendiente", is(140.50)))
+                .andExpect(jsonPath("$[0].fiadosPendientes", is(2)));
+    }
+
+    @Test
+    void buscarClientes_conLimiteExcesivo_deberiaAcotarlo() throws Exception {
+        when(indiceClientes.listo()).thenReturn(true);
+
+        mockMvc.perform(get("/fiados/clientes/buscar").param("texto", "a").param("limite", "100000"))
+                .andExpect(status().isOk());
+
+        verify(indiceClientes).buscar("a", FiadosController.LIMITE_MAXIMO_BUSQUEDA);
+    }
+
+    @Test
+    void buscarClientes_mientrasSeConstruyeElIndice_deberiaResponder503() throws Exception {
+        when(indiceClientes.listo()).thenReturn(false);
+
+        mockMvc.perform(get("/fiados/clientes/buscar").param("texto", "per"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void obtenerSaldos_deberiaElegirEntreClienteYEstado() throws Exception {
+        mockMvc.perform(get("/fiados/resumenes/saldos").param("nombreCliente", "Ana"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/fiados/resumenes/saldos").param("limite", "20"))
+                .andExpect(status().isOk());
+
+        verify(resumenes).saldosDeCliente("Ana");
+        // Sin estado se piden los saldos pendientes, los que todavía se deben.
+        verify(resumenes).saldosPorEstado(FiadosModel.ESTADO_PENDIENTE, 20);
+    }
+
+    @Test
+    void verificarResumenes_sinParametros_noDeberiaCorregir() throws Exception {
+        when(verificacionResumenes.verificar(false)).thenReturn(new ResultadoVerificacion(4, 1, 0, false, 12));
+
+        mockMvc.perform(post("/fiados/resumenes/verificar"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.saldosDistintos", is(1)))
+                .andExpect(jsonPath("$.corregido", is(false)));
+    }
+
+    @Test
+    void obtenerFiados_conAcceptSmile_deberiaResponderEnSmileConSuPropioEtag() throws Exception {
+        when(fiadosService.obtenerFiados()).thenReturn(new ArrayList<>(Arrays.asList(fiado1, fiado2)));
+
+        MvcResult resultado = mockMvc.perform(get("/fiados/listar")
+                        .accept(FormatosBinariosConfig.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(FormatosBinariosConfig.APPLICATION_SMILE))
+                .andExpect(header().string("ETag", "\"fiados-7-smile\""))
+                .andExpect(header().string("Vary", containsString("Accept")))
+                .andReturn();
+
+        // El cuerpo se lee con el mismo ObjectMapper del convertidor y trae los mismos datos que el JSON.
+        FiadosModel[] fiados = smileConverter.getObjectMapper()
+                .readValue(resultado.getResponse().getContentAsByteArray(), FiadosModel[].class);
+        assertEquals(2, fiados.length);
+        assertEquals("Cliente Test 2", fiados[1].getNombreCliente());
+        assertEquals(fiado2.getFecha(), fiados[1].getFecha());
+    }
+
+    @Test
+    void obtenerFiados_conEtagDeOtroFormato_noDeberiaResponder304() throws Exception {
+        when(fiadosService.obtenerFiados()).thenReturn(new ArrayList<>(Arrays.asList(fiado1)));
+
+        // El cliente guardó la versión JSON; la representación Smile es otra y se envía completa.
+        mockMvc.perform(get("/fiados/listar").header("If-None-Match", "\"fiados-7\"")
+                        .accept(FormatosBinariosConfig.APPLICATION_SMILE))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/fiados/listar").header("If-None-Match", "\"fiados-7-smile\"")
+                        .accept(FormatosBinariosConfig.APPLICATION_SMILE))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void obtenerPorId_conAcceptCbor_deberiaResponderEnCbor() throws Exception {
+        fiado1.setVersion(4L);
+        when(fiadosService.obtenerPorId(1L)).thenReturn(fiado1);
+
+        MvcResult resultado = mockMvc.perform(get("/fiados/obtenerPorId/1").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string("ETag", "\"1-4-cbor\""))
+                .andReturn();
+
+        FiadosModel fiado = cborConverter.getObjectMapper()
+                .readValue(resultado.getResponse().getContentAsByteArray(), FiadosModel.class);
+        assertEquals("Cliente Test 1", fiado.getNombreCliente());
+    }
+
+    @Test
+    void obtenerPorId_conAcceptComodin_deberiaSeguirRespondiendoJson() throws Exception {
+        fiado1.setVersion(4L);
+        when(fiadosService.obtenerPorId(1L)).thenReturn(fiado1);
+
+        mockMvc.perform(get("/fiados/obtenerPorId/1").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"1-4\""));
     }
 
     /**
@@ -133,6 +347,20 @@ public class FiadosControllerTest {
                 .andExpect(jsonPath("$.nombreCliente", is("Cliente Test 1")));
     }
 
+    @Test
+    void obtenerPorId_conEtagVigente_deberiaResponder304SinCuerpo() throws Exception {
+        fiado1.setVersion(4L);
+        when(fiadosService.obtenerPorId(1L)).thenReturn(fiado1);
+
+        // El ETag de un fiado es su id y su versión.
+        mockMvc.perform(get("/fiados/obtenerPorId/1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\""));
+        mockMvc.perform(get("/fiados/obtenerPorId/1").header("If-None-Match", "\"1-4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
     /**
      * Prueba que el endpoint GET /fiados/obtenerPorId/{id} retorne un cuerpo vacío (o nulo) y estado OK
      * cuando el ID no existe y el servicio devuelve null.
@@ -195,4 +423,271 @@ public class FiadosControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$", is(false)));
     }
+
+    /**
+     * Prueba que el endpoint GET /fiados/listar/pagina retorne la página y el cursor siguiente.
+     */
+    @Test
+    void obtenerPagina_deberiaRetornarFiadosYCursor() throws Exception {
+        when(fiadosService.obtenerPagina(0L, 2)).thenReturn(new PaginaFiados(Arrays.asList(fiado1, fiado2), 2L));
+
+        mockMvc.perform(get("/fiados/listar/pagina").param("despuesDe", "0").param("limite", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fiados", hasSize(2)))
+                .andExpect(jsonPath("$.fiados[1].id", is(2)))
+                .andExpect(jsonPath("$.siguienteCursor", is(2)));
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/listar/stream escriba un fiado por línea (NDJSON).
+     * - El mock del servicio entrega los dos fiados al consumidor que recibe.
+     * - Como la respuesta es asíncrona, se espera el despacho asíncrono antes de verificar el cuerpo.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamFiados_deberiaEscribirUnFiadoPorLinea() throws Exception {
+        doAnswer(invocacion -> {
+            Consumer<FiadosModel> consumidor = invocacion.getArgument(0);
+            consumidor.accept(fiado1);
+            consumidor.accept(fiado2);
+            return null;
+        }).when(fiadosService).recorrerFiados(any(Consumer.class));
+
+        MvcResult resultado = mockMvc.perform(get("/fiados/listar/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(FiadosController.APPLICATION_NDJSON))
+                .andExpect(content().string(startsWith("{\"id\":1,")))
+                .andExpect(content().string(containsString("\n{\"id\":2,")));
+    }
+
+    /**
+     * Prueba que el endpoint POST /fiados/guardarLote retorne los ids generados y el rendimiento.
+     */
+    @Test
+    void guardarLote_deberiaRetornarIdsGenerados() throws Exception {
+        when(fiadosService.guardarLote(anyList())).thenReturn(new ResultadoLote(List.of(1L, 2L), 2, 5, 400.0));
+
+        mockMvc.perform(post("/fiados/guardarLote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(fiado1, fiado2))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids", contains(1, 2)))
+                .andExpect(jsonPath("$.filas", is(2)))
+                .andExpect(jsonPath("$.filasPorSegundo", is(400.0)));
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/porFecha convierta las fechas ISO y devuelva los resúmenes del rango.
+     */
+    @Test
+    void obtenerPorFecha_deberiaRetornarFiadosDelRango() throws Exception {
+        when(fiadosService.obtenerPorFecha(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), "Pendiente", 100))
+                .thenReturn(List.of(new FiadoResumen(1L, "Cliente Test 1", new BigDecimal("150.75"), null, "Pendiente")));
+
+        mockMvc.perform(get("/fiados/porFecha")
+                .param("desde", "2024-01-01")
+                .param("hasta", "2024-01-31")
+                .param("estado", "Pendiente"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].monto", is(150.75)));
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/porCliente devuelva solo los campos de la proyección.
+     */
+    @Test
+    void obtenerPorCliente_deberiaRetornarResumenes() throws Exception {
+        when(fiadosService.obtenerPorCliente("Cliente Test 1", "Pendiente", 100))
+                .thenReturn(List.of(new FiadoResumen(1L, "Cliente Test 1", new BigDecimal("150.75"), null, "Pendiente")));
+
+        mockMvc.perform(get("/fiados/porCliente")
+                .param("nombreCliente", "Cliente Test 1")
+                .param("estado", "Pendiente"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].nombreCliente", is("Cliente Test 1")))
+                .andExpect(jsonPath("$[0].estado", is("Pendiente")))
+                .andExpect(jsonPath("$[0].fecha").doesNotExist());
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/porEstado/{estado} devuelva los resúmenes del estado pedido.
+     */
+    @Test
+    void obtenerPorEstado_deberiaRetornarResumenes() throws Exception {
+        when(fiadosService.obtenerPorEstado("Pagado", 100))
+                .thenReturn(List.of(new FiadoResumen(2L, "Cliente Test 2", new BigDecimal("250.00"), null, "Pagado")));
+
+        mockMvc.perform(get("/fiados/porEstado/Pagado"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(2)));
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/total devuelva la suma exacta calculada por el servicio.
+     */
+    @Test
+    void sumarMonto_deberiaRetornarTotal() throws Exception {
+        when(fiadosService.sumarMonto(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), null))
+                .thenReturn(new BigDecimal("400.75"));
+
+        mockMvc.perform(get("/fiados/total").param("desde", "2024-01-01").param("hasta", "2024-01-31"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("400.75"));
+    }
+
+    /**
+     * Prueba que el endpoint DELETE /fiados/eliminar borre la lista de ids y devuelva cuántos se eliminaron.
+     */
+    @Test
+    void eliminarFiados_deberiaRetornarCantidadEliminada() throws Exception {
+        when(fiadosService.eliminarFiados(List.of(1L, 2L, 3L))).thenReturn(2);
+
+        mockMvc.perform(delete("/fiados/eliminar")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2, 3]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", is(2)));
+    }
+
+    /**
+     * Prueba que el endpoint GET /fiados/exportar entregue un CSV descargable.
+     */
+    @Test
+    void exportarCsv_deberiaEscribirElCsv() throws Exception {
+        doAnswer(invocacion -> {
+            Writer escritor = invocacion.getArgument(0);
+            escritor.write("id,nombreCliente,monto,fecha,estado\n1,Cliente Test 1,150.75,2024-01-01,Pendiente\n");
+            escritor.flush();
+            return null;
+        }).when(fiadosCsvService).exportar(any(Writer.class));
+
+        MvcResult resultado = mockMvc.perform(get("/fiados/exportar"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", containsString("fiados.csv")))
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string(containsString("1,Cliente Test 1,150.75")));
+    }
+
+    /**
+     * Prueba que el endpoint POST /fiados/importar reciba el archivo y devuelva el resumen de la carga.
+     */
+    @Test
+    void importarCsv_deberiaRetornarResumenDeLaCarga() throws Exception {
+        when(fiadosCsvService.importar(any(Reader.class)))
+                .thenReturn(new ResultadoImportacion(3, 2, List.of(new ErrorLinea(3, "Monto inválido: cien")), 0, 12));
+        MockMultipartFile archivo = new MockMultipartFile("archivo", "fiados.csv", "text/csv",
+                "id,nombreCliente,monto,fecha,estado\n".getBytes());
+
+        mockMvc.perform(multipart("/fiados/importar").file(archivo))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.insertadas", is(2)))
+                .andExpect(jsonPath("$.errores[0].linea", is(3)));
+    }
+
+    @Test
+    void actualizarFiado_deberiaResponder204ConElEtagDeLaVersionNueva() throws Exception {
+        when(fiadosService.actualizarFiado(eq(1L), any(CambiosFiado.class))).thenReturn(5L);
+
+        mockMvc.perform(patch("/fiados/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"estado\":\"Pagado\",\"version\":4}"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("ETag", "\"1-5\""));
+
+        // Al servicio llegan solo los campos enviados; el resto queda en null y no se actualiza.
+        verify(fiadosService).actualizarFiado(1L, new CambiosFiado(null, null, null, "Pagado", 4L));
+    }
+
+    @Test
+    void actualizarFiado_conVersionVieja_deberiaResponder409() throws Exception {
+        when(fiadosService.actualizarFiado(eq(1L), any(CambiosFiado.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(FiadosModel.class, 1L));
+
+        mockMvc.perform(patch("/fiados/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"estado\":\"Pagado\",\"version\":3}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void actualizarFiado_cuandoNoExiste_deberiaResponder404() throws Exception {
+        when(fiadosService.actualizarFiado(eq(99L), any(CambiosFiado.class))).thenReturn(null);
+
+        mockMvc.perform(patch("/fiados/99")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"estado\":\"Pagado\"}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void actualizarFiado_sinCampos_deberiaResponder400() throws Exception {
+        mockMvc.perform(patch("/fiados/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"version\":4}"))
+                .andExpect(status().isBadRequest());
+
+        verify(fiadosService, never()).actualizarFiado(anyLong(), any(CambiosFiado.class));
+    }
+
+    @Test
+    void marcarPagados_deberiaRetornarCantidadActualizada() throws Exception {
+        when(fiadosService.marcarPagados("Cliente Test 1")).thenReturn(3);
+
+        mockMvc.perform(post("/fiados/marcarPagados").param("nombreCliente", "Cliente Test 1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+    }
+
+    @Test
+    void obtenerFiados_conHistorico_deberiaIncluirArchivadosConOtroEtag() throws Exception {
+        when(fiadosService.obtenerFiadosConHistorico()).thenReturn(new ArrayList<>(Arrays.asList(fiado1, fiado2)));
+
+        mockMvc.perform(get("/fiados/listar").param("incluirHistorico", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"fiados-7-historico\""))
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        // El ETag del listado sin histórico no sirve para el listado con histórico.
+        mockMvc.perform(get("/fiados/listar").param("incluirHistorico", "true")
+                        .header("If-None-Match", "\"fiados-7\""))
+                .andExpect(status().isOk());
+        verify(fiadosService, never()).obtenerFiados();
+    }
+
+    @Test
+    void obtenerPorId_conHistorico_deberiaBuscarEnLosArchivados() throws Exception {
+        when(fiadosService.obtenerPorId(2L)).thenReturn(null);
+        when(fiadosService.obtenerDelHistorico(2L)).thenReturn(fiado2);
+
+        // Sin el parámetro solo se consulta la tabla activa.
+        mockMvc.perform(get("/fiados/obtenerPorId/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(""));
+        verify(fiadosService, never()).obtenerDelHistorico(anyLong());
+
+        mockMvc.perform(get("/fiados/obtenerPorId/2").param("incluirHistorico", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estado", is("Pagado")));
+    }
+
+    @Test
+    void cambios_deberiaSuscribirConElUltimoIdRecibido() throws Exception {
+        when(canalCambios.suscribir("abc-41")).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/fiados/cambios").header("Last-Event-ID", "abc-41"))
+                .andExpect(request().asyncStarted());
+
+        verify(canalCambios).suscribir("abc-41");
+    }
 }
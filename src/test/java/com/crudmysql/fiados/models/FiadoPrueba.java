@@ -0,0 +1,64 @@
+package com.crudmysql.fiados.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Fiados para las pruebas: fiado("Ana").crear() es un fiado pendiente de 10.00 del 2024-07-01, sin id
+ * y en la tienda principal; cada prueba cambia solo los campos que le importan.
+ */
+public final class FiadoPrueba {
+
+    private Long id;
+    private final String cliente;
+    private String monto = "10.00";
+    private LocalDate fecha = LocalDate.of(2024, 7, 1);
+    private String estado = FiadosModel.ESTADO_PENDIENTE;
+    private String tienda;
+
+    private FiadoPrueba(String cliente) {
+        this.cliente = cliente;
+    }
+
+    public static FiadoPrueba fiado(String cliente) {
+        return new FiadoPrueba(cliente);
+    }
+
+    public FiadoPrueba id(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public FiadoPrueba monto(String monto) {
+        this.monto = monto;
+        return this;
+    }
+
+    public FiadoPrueba fecha(LocalDate fecha) {
+        this.fecha = fecha;
+        return this;
+    }
+
+    public FiadoPrueba estado(String estado) {
+        this.estado = estado;
+        return this;
+    }
+
+    public FiadoPrueba tienda(String tienda) {
+        this.tienda = tienda;
+        return this;
+    }
+
+    public FiadosModel crear() {
+        FiadosModel fiado = new FiadosModel();
+        fiado.setId(id);
+        fiado.setNombreCliente(cliente);
+        fiado.setMonto(new BigDecimal(monto));
+        fiado.setFecha(fecha);
+        fiado.setEstado(estado);
+        if (tienda != null) {
+            fiado.setTienda(tienda);
+        }
+        return fiado;
+    }
+}
@@ -0,0 +1,120 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de PATCH (actualizarFiado) y marcarPagados contra H2, contando las sentencias
+ * que realmente llegan a la base con las estadísticas de Hibernate.
+ */
+@SpringBootTest(properties = "spring.cache.type=none")
+@ActiveProfiles("test")
+class ActualizacionParcialIntegracionTest {
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    private ContadorCambiosFiados contadorCambios;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    // El índice de clientes relee el fiado en su propio hilo después de cada PATCH; simulado,
+    // las estadísticas cuentan solo las sentencias de actualizarFiado.
+    @MockitoBean
+    private IndiceClientes indiceClientes;
+
+    private Statistics estadisticas;
+
+    @BeforeEach
+    void setUp() {
+        fiadosRepository.deleteAllInBatch();
+        estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void actualizarFiado_deberiaModificarSoloLosCamposEnviadosConUnUpdate() {
+        FiadosModel fiado = fiadosService.guardarFiado(fiado("Ana").crear());
+        long versionTabla = contadorCambios.actual().getVersion();
+
+        estadisticas.clear();
+        Long version = fiadosService.actualizarFiado(fiado.getId(),
+                new CambiosFiado(null, null, null, FiadosModel.ESTADO_PAGADO, fiado.getVersion()));
+
+        // El SELECT ... FOR UPDATE de la fila, el UPDATE del fiado, un upsert por estado en
+        // saldos_clientes (resta en Pendiente, suma en Pagado) y la versión de la tabla.
+        assertEquals(5, estadisticas.getPrepareStatementCount());
+        assertEquals(fiado.getVersion() + 1, version);
+        assertEquals(versionTabla + 1, contadorCambios.actual().getVersion());
+
+        FiadosModel guardado = fiadosRepository.findById(fiado.getId()).orElseThrow();
+        assertEquals(FiadosModel.ESTADO_PAGADO, guardado.getEstado());
+        assertEquals("Ana", guardado.getNombreCliente());
+        assertEquals(0, new BigDecimal("10.00").compareTo(guardado.getMonto()));
+        assertEquals(version, guardado.getVersion());
+    }
+
+    @Test
+    void actualizarFiado_conVersionVieja_noDeberiaPisarElCambioDeOtroCajero() {
+        FiadosModel fiado = fiadosService.guardarFiado(fiado("Ana").crear());
+        Long leida = fiado.getVersion();
+
+        // Dos cajeros leyeron la misma versión; el primero cambia el monto.
+        fiadosService.actualizarFiado(fiado.getId(), new CambiosFiado(null, new BigDecimal("15.00"), null, null, leida));
+
+        // El segundo intenta cambiarlo con la versión que leyó y recibe el conflicto.
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> fiadosService.actualizarFiado(
+                fiado.getId(), new CambiosFiado(null, new BigDecimal("12.00"), null, null, leida)));
+        assertEquals(0, new BigDecimal("15.00").compareTo(
+                fiadosRepository.findById(fiado.getId()).orElseThrow().getMonto()));
+    }
+
+    @Test
+    void actualizarFiado_cuandoNoExiste_deberiaRetornarNull() {
+        assertNull(fiadosService.actualizarFiado(999_999L,
+                new CambiosFiado(null, null, null, FiadosModel.ESTADO_PAGADO, null)));
+    }
+
+    @Test
+    void marcarPagados_deberiaPagarSoloLosPendientesDelCliente() {
+        FiadosModel pendiente1 = fiadosService.guardarFiado(fiado("Ana").crear());
+        fiadosService.guardarFiado(fiado("Ana").crear());
+        fiadosService.guardarFiado(fiado("Ana").estado(FiadosModel.ESTADO_CANCELADO).crear());
+        FiadosModel deOtro = fiadosService.guardarFiado(fiado("Luis").crear());
+
+        estadisticas.clear();
+        assertEquals(2, fiadosService.marcarPagados("Ana"));
+        // Bloqueo de los pendientes, un solo UPDATE para los dos fiados, los dos saldos del cliente
+        // y la versión de la tabla: la cantidad de sentencias no crece con los fiados pagados.
+        assertEquals(5, estadisticas.getPrepareStatementCount());
+
+        FiadosModel pagado = fiadosRepository.findById(pendiente1.getId()).orElseThrow();
+        assertEquals(FiadosModel.ESTADO_PAGADO, pagado.getEstado());
+        // La versión sube, así una edición hecha con la versión anterior falla.
+        assertEquals(pendiente1.getVersion() + 1, pagado.getVersion());
+        assertEquals(FiadosModel.ESTADO_PENDIENTE,
+                fiadosRepository.findById(deOtro.getId()).orElseThrow().getEstado());
+    }
+}
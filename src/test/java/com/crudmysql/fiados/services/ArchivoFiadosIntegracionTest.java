@@ -0,0 +1,111 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.FiadoResumen;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadoHistoricoRepository;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba el archivo de fiados saldados contra H2, con bloques de 2 filas para que
+ * una misma ejecución tenga que recorrer varios bloques.
+ */
+@SpringBootTest(properties = {
+        "fiados.archivo.habilitado=true",
+        // Sin ejecución programada: la prueba llama a archivar() directamente.
+        "fiados.archivo.cron=-",
+        "fiados.archivo.edad-minima=30d",
+        "fiados.archivo.tamano-bloque=2",
+        "fiados.archivo.pausa-entre-bloques=0ms"
+})
+@ActiveProfiles("test")
+class ArchivoFiadosIntegracionTest {
+
+    @Autowired
+    private ArchivoFiados archivoFiados;
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private ContadorCambiosFiados contadorCambios;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    private IFiadoHistoricoRepository historicoRepository;
+
+    private final LocalDate viejo = LocalDate.now().minusDays(90);
+    private final LocalDate reciente = LocalDate.now().minusDays(5);
+
+    @BeforeEach
+    void setUp() {
+        fiadosRepository.deleteAllInBatch();
+        historicoRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void archivar_deberiaMoverSoloLosSaldadosViejos() {
+        // --- ARRANGE ---
+        FiadosModel pagadoViejo = guardar("Ana", FiadosModel.ESTADO_PAGADO, viejo);
+        guardar("Ana", FiadosModel.ESTADO_PAGADO, viejo);
+        guardar("Luis", FiadosModel.ESTADO_PAGADO, viejo);
+        guardar("Luis", FiadosModel.ESTADO_CANCELADO, viejo);
+        FiadosModel pendienteViejo = guardar("Ana", FiadosModel.ESTADO_PENDIENTE, viejo);
+        FiadosModel pagadoReciente = guardar("Ana", FiadosModel.ESTADO_PAGADO, reciente);
+        // Queda en caché antes de archivarse; el archivo debe sacarlo de ahí.
+        assertNotNull(fiadosService.obtenerPorId(pagadoViejo.getId()));
+        long versionTabla = contadorCambios.actual().getVersion();
+
+        // --- ACT ---
+        long movidos = archivoFiados.archivar();
+
+        // --- ASSERT ---
+        // 4 saldados viejos en bloques de 2: dos bloques llenos y uno vacío que corta el recorrido.
+        assertEquals(4, movidos);
+        assertEquals(2, fiadosRepository.count());
+        assertEquals(4, historicoRepository.count());
+        assertTrue(fiadosRepository.existsById(pendienteViejo.getId()));
+        assertTrue(fiadosRepository.existsById(pagadoReciente.getId()));
+        assertEquals(versionTabla + 2, contadorCambios.actual().getVersion());
+
+        // Las lecturas normales ya no lo ven; con el histórico se encuentra con el mismo id y datos.
+        assertNull(fiadosService.obtenerPorId(pagadoViejo.getId()));
+        FiadosModel archivado = fiadosService.obtenerDelHistorico(pagadoViejo.getId());
+        assertEquals("Ana", archivado.getNombreCliente());
+        assertEquals(0, new BigDecimal("10.00").compareTo(archivado.getMonto()));
+        assertEquals(viejo, archivado.getFecha());
+
+        assertEquals(2, fiadosService.obtenerFiados().size());
+        assertEquals(6, fiadosService.obtenerFiadosConHistorico().size());
+        List<FiadoResumen> deAna = fiadosService.obtenerPorClienteConHistorico("Ana", null, 100);
+        assertEquals(4, deAna.size());
+        assertEquals(2, fiadosService.obtenerPorCliente("Ana", null, 100).size());
+    }
+
+    @Test
+    void archivar_sinNadaParaMover_deberiaRetornarCero() {
+        guardar("Ana", FiadosModel.ESTADO_PENDIENTE, viejo);
+        long versionTabla = contadorCambios.actual().getVersion();
+
+        assertEquals(0, archivoFiados.archivar());
+        assertEquals(versionTabla, contadorCambios.actual().getVersion());
+    }
+
+    private FiadosModel guardar(String cliente, String estado, LocalDate fecha) {
+        return fiadosService.guardarFiado(fiado(cliente).estado(estado).fecha(fecha).crear());
+    }
+}
@@ -0,0 +1,282 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.PaginaFiados;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CanalCambiosFiadosTest {
+
+    @Mock
+    private FiadosService fiadosService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CanalCambiosFiados canal;
+
+    // Cliente de prueba: guarda cada mensaje recibido en una cola.
+    private static class Cliente implements CanalCambiosFiados.Envio {
+
+        private final BlockingQueue<CanalCambiosFiados.Mensaje> recibidos = new LinkedBlockingQueue<>();
+        private final CountDownLatch cerrado = new CountDownLatch(1);
+
+        @Override
+        public void enviar(CanalCambiosFiados.Mensaje mensaje) throws IOException {
+            recibidos.add(mensaje);
+        }
+
+        @Override
+        public void latido() {
+        }
+
+        @Override
+        public void cerrar() {
+            cerrado.countDown();
+        }
+
+        CanalCambiosFiados.Mensaje siguiente() throws InterruptedException {
+            CanalCambiosFiados.Mensaje mensaje = recibidos.poll(5, TimeUnit.SECONDS);
+            assertNotNull(mensaje, "El cliente no recibió el mensaje esperado.");
+            return mensaje;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // La instantánea de la base tiene dos fiados.
+        instantanea(2, fila -> { });
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        canal.cerrar();
+    }
+
+    @Test
+    void suscribir_sinUltimoId_deberiaEnviarInstantaneaYLuegoEventosEnVivo() throws Exception {
+        canal = crear(100, 100);
+        Cliente cliente = new Cliente();
+        canal.suscribir(null, cliente);
+
+        assertEquals("instantanea", cliente.siguiente().nombre());
+        assertEquals("instantanea", cliente.siguiente().nombre());
+        CanalCambiosFiados.Mensaje fin = cliente.siguiente();
+        assertEquals("fin-instantanea", fin.nombre());
+
+        canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, 1L, null, null));
+
+        CanalCambiosFiados.Mensaje evento = cliente.siguiente();
+        assertEquals(EventoFiado.ELIMINADO, evento.nombre());
+        assertEquals(1L, ((EventoFiado) evento.datos()).fiadoId());
+        assertNotEquals(fin.id(), evento.id());
+    }
+
+    @Test
+    void suscribir_conUltimoIdReciente_deberiaRetomarDesdeElHistorialSinInstantanea() throws Exception {
+        canal = crear(100, 100);
+        Cliente primero = new Cliente();
+        canal.suscribir(null, primero);
+        for (int i = 0; i < 3; i++) {
+            primero.siguiente();
+        }
+        for (long id = 10; id < 13; id++) {
+            canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, id, null, null));
+        }
+        String idPrimerEvento = primero.siguiente().id();
+
+        // Un cliente que se desconectó después del primer evento se reconecta con su id.
+        Cliente reconectado = new Cliente();
+        canal.suscribir(idPrimerEvento, reconectado);
+
+        assertEquals(11L, ((EventoFiado) reconectado.siguiente().datos()).fiadoId());
+        assertEquals(12L, ((EventoFiado) reconectado.siguiente().datos()).fiadoId());
+        assertNull(reconectado.recibidos.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void suscribir_conUltimoIdFueraDelHistorial_deberiaEnviarInstantanea() throws Exception {
+        // Historial de solo 2 eventos.
+        canal = crear(2, 100);
+        Cliente primero = new Cliente();
+        canal.suscribir(null, primero);
+        for (int i = 0; i < 3; i++) {
+            primero.siguiente();
+        }
+        canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, 10L, null, null));
+        String idViejo = primero.siguiente().id();
+        for (long id = 11; id < 15; id++) {
+            canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, id, null, null));
+        }
+
+        Cliente reconectado = new Cliente();
+        canal.suscribir(idViejo, reconectado);
+        assertEquals("instantanea", reconectado.siguiente().nombre());
+
+        // Un id de otra ejecución de la aplicación tampoco se puede retomar.
+        Cliente deOtraEjecucion = new Cliente();
+        canal.suscribir("otra-1", deOtraEjecucion);
+        assertEquals("instantanea", deOtraEjecucion.siguiente().nombre());
+    }
+
+    @Test
+    void publicar_conUnClienteLento_noDeberiaEsperarloYDeberiaDesconectarlo() throws Exception {
+        // Cola de 5 eventos por cliente.
+        canal = crear(100, 5);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch finInstantanea = new CountDownLatch(1);
+        Cliente lento = new Cliente() {
+            @Override
+            public void enviar(CanalCambiosFiados.Mensaje mensaje) throws IOException {
+                if (mensaje.nombre().equals("fin-instantanea")) {
+                    finInstantanea.countDown();
+                }
+                if (mensaje.id() == null || mensaje.nombre().equals("fin-instantanea")) {
+                    return;
+                }
+                try {
+                    // Se queda trabado en el primer evento en vivo, como una conexión que dejó de leer.
+                    liberar.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        canal.suscribir(null, lento);
+        assertTrue(finInstantanea.await(5, TimeUnit.SECONDS));
+
+        long inicio = System.nanoTime();
+        for (long id = 0; id < 1000; id++) {
+            canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, id, null, null));
+        }
+        // Publicar 1000 eventos no esperó al cliente trabado.
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1.0, meterRegistry.get("fiados.cambios.desconectados").counter().count());
+
+        // Al destrabarse, el cliente ve que quedó fuera y se cierra para reconectarse.
+        liberar.countDown();
+        assertTrue(lento.cerrado.await(5, TimeUnit.SECONDS));
+        assertEquals(0, canal.suscriptores());
+    }
+
+    @Test
+    void instantanea_conMasEventosQueLaCola_deberiaRetomarDesdeElHistorialSinDesconectar() throws Exception {
+        // Cola de 5 eventos por cliente; mientras se lee cada página de la instantánea se publican 10.
+        canal = crear(100, 5);
+        instantanea(3, fila -> {
+            for (int i = 0; i < 10; i++) {
+                canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, fila * 100 + i, null, null));
+            }
+        });
+
+        Cliente cliente = new Cliente();
+        canal.suscribir(null, cliente);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("instantanea", cliente.siguiente().nombre());
+        }
+        assertEquals("fin-instantanea", cliente.siguiente().nombre());
+
+        // Llegan los 30 eventos, en orden y sin repetidos, y el cliente sigue conectado.
+        for (long fila = 1; fila <= 3; fila++) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(fila * 100 + i, ((EventoFiado) cliente.siguiente().datos()).fiadoId());
+            }
+        }
+        canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, 999L, null, null));
+        assertEquals(999L, ((EventoFiado) cliente.siguiente().datos()).fiadoId());
+        assertEquals(0.0, meterRegistry.get("fiados.cambios.desconectados").counter().count());
+        assertEquals(1, canal.suscriptores());
+    }
+
+    @Test
+    void instantanea_conMasEventosQueElHistorial_deberiaDesconectar() throws Exception {
+        // Durante la instantánea se publican 20 eventos y el historial guarda 10.
+        canal = crear(10, 5);
+        instantanea(1, fila -> {
+            for (long id = 0; id < 20; id++) {
+                canal.publicar(new EventoFiado(EventoFiado.ELIMINADO, id, null, null));
+            }
+        });
+
+        Cliente cliente = new Cliente();
+        canal.suscribir(null, cliente);
+
+        assertEquals("instantanea", cliente.siguiente().nombre());
+        assertTrue(cliente.cerrado.await(5, TimeUnit.SECONDS));
+        // No llegó fin-instantanea: el cliente no tiene un id con el que retomar y vuelve a empezar.
+        assertNull(cliente.recibidos.poll());
+        assertEquals(1.0, meterRegistry.get("fiados.cambios.desconectados").counter().count());
+    }
+
+    @Test
+    void instantanea_conElMaximoDeInstantaneasEnCurso_deberiaEsperarSuTurno() throws Exception {
+        // Una sola instantánea a la vez; la primera queda trabada leyendo su página.
+        canal = crear(100, 100, 1);
+        CountDownLatch leyendo = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        instantanea(1, fila -> {
+            leyendo.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Cliente primero = new Cliente();
+        canal.suscribir(null, primero);
+        assertTrue(leyendo.await(5, TimeUnit.SECONDS));
+
+        Cliente segundo = new Cliente();
+        canal.suscribir(null, segundo);
+
+        // El segundo no llega a consultar la base mientras la primera instantánea sigue en curso.
+        assertNull(segundo.recibidos.poll(200, TimeUnit.MILLISECONDS));
+        verify(fiadosService, times(1)).obtenerPaginaEnPrimaria(any(), anyInt());
+
+        liberar.countDown();
+        assertEquals("instantanea", primero.siguiente().nombre());
+        assertEquals("instantanea", segundo.siguiente().nombre());
+        assertEquals("fin-instantanea", segundo.siguiente().nombre());
+    }
+
+    // Instantánea de filas fiados (ids 1..filas), de a una fila por página; alLeer corre al leer cada página.
+    private void instantanea(long filas, LongConsumer alLeer) {
+        when(fiadosService.obtenerPaginaEnPrimaria(any(), anyInt())).thenAnswer(invocacion -> {
+            Long despuesDe = invocacion.getArgument(0);
+            long fila = despuesDe == null ? 1 : despuesDe + 1;
+            alLeer.accept(fila);
+            return new PaginaFiados(List.of(fiado("Cliente " + fila).id(fila).crear()), fila < filas ? fila : null);
+        });
+    }
+
+    private CanalCambiosFiados crear(int capacidadHistorial, int capacidadSuscriptor) {
+        return crear(capacidadHistorial, capacidadSuscriptor, 4);
+    }
+
+    private CanalCambiosFiados crear(int capacidadHistorial, int capacidadSuscriptor, int instantaneasSimultaneas) {
+        return new CanalCambiosFiados(fiadosService, meterRegistry, capacidadHistorial, capacidadSuscriptor,
+                Duration.ofSeconds(15), Duration.ofMinutes(30), 1, instantaneasSimultaneas);
+    }
+}
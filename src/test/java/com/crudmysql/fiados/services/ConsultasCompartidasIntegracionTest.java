@@ -0,0 +1,143 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba contra H2 que los fallos de caché concurrentes de obtenerPorId comparten un solo findById,
+ * con el administrador de transacciones real: la lectura va a la primaria y aun así se agrupa.
+ */
+@SpringBootTest(properties = "fiados.consultas-compartidas.espera-maxima=10s")
+@ActiveProfiles("test")
+class ConsultasCompartidasIntegracionTest {
+
+    private static final int TERMINALES = 8;
+
+    /** Cuenta los SELECT por id de fiados y los retiene hasta que la prueba los libera. */
+    static class InspectorPorId implements StatementInspector {
+
+        private static final Pattern POR_ID = Pattern.compile("from fiados \\w+ where \\w+\\.id=\\?");
+
+        private final AtomicInteger ejecutadas = new AtomicInteger();
+        private volatile CountDownLatch liberar = new CountDownLatch(0);
+
+        @Override
+        public String inspect(String sql) {
+            if (POR_ID.matcher(sql).find()) {
+                ejecutadas.incrementAndGet();
+                try {
+                    liberar.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return sql;
+        }
+    }
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        InspectorPorId inspectorPorId() {
+            return new InspectorPorId();
+        }
+
+        @Bean
+        HibernatePropertiesCustomizer inspectorSentencias(InspectorPorId inspector) {
+            return propiedades -> propiedades.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+        }
+    }
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    private InspectorPorId inspector;
+
+    private final List<Thread> hilos = new ArrayList<>();
+    private ExecutorService ejecutor;
+
+    @BeforeEach
+    void setUp() {
+        ejecutor = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea);
+            hilos.add(hilo);
+            return hilo;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        inspector.liberar.countDown();
+        ejecutor.shutdownNow();
+    }
+
+    @Test
+    void obtenerPorId_fallosDeCacheConcurrentes_deberianCompartirUnSoloFindById() throws Exception {
+        // --- ARRANGE ---
+        // Guardado con el repositorio, para que el id no quede en la caché.
+        FiadosModel fiado = fiadosRepository.save(fiado("Ana").crear());
+        inspector.ejecutadas.set(0);
+        inspector.liberar = new CountDownLatch(1);
+
+        // --- ACT ---
+        // Varias terminales piden el mismo id mientras el primer findById sigue en la base.
+        List<Future<FiadosModel>> resultados = new ArrayList<>();
+        for (int i = 0; i < TERMINALES; i++) {
+            resultados.add(ejecutor.submit(() -> fiadosService.obtenerPorId(fiado.getId())));
+        }
+        esperarQueTodosEsperen(TERMINALES);
+        inspector.liberar.countDown();
+
+        // --- ASSERT ---
+        for (Future<FiadosModel> resultado : resultados) {
+            assertEquals(fiado.getId(), resultado.get(10, TimeUnit.SECONDS).getId());
+        }
+        assertEquals(1, inspector.ejecutadas.get());
+    }
+
+    // Espera a que los hilos estén bloqueados, ya sea en el findById retenido o esperando su resultado.
+    private void esperarQueTodosEsperen(int cantidad) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < limite) {
+            long bloqueados = hilos.stream()
+                    .filter(hilo -> hilo.getState() == Thread.State.WAITING
+                            || hilo.getState() == Thread.State.TIMED_WAITING)
+                    .count();
+            if (inspector.ejecutadas.get() > 0 && hilos.size() >= cantidad && bloqueados >= cantidad) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("Las terminales no llegaron a esperar a tiempo.");
+    }
+}
@@ -0,0 +1,178 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.EventoFiado;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConsultasCompartidasTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private final List<Thread> hilos = new ArrayList<>();
+    private ExecutorService ejecutor;
+
+    // Consulta simulada: cuenta sus ejecuciones y no termina hasta que la prueba la libera.
+    private final AtomicInteger ejecuciones = new AtomicInteger();
+    private final CountDownLatch liberar = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ejecutor = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea);
+            hilos.add(hilo);
+            return hilo;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        liberar.countDown();
+        ejecutor.shutdownNow();
+    }
+
+    private ConsultasCompartidas consultas(Duration esperaMaxima) {
+        // Con un administrador de transacciones simulado, TransactionTemplate solo ejecuta el bloque.
+        return new ConsultasCompartidas(mock(PlatformTransactionManager.class), environment,
+                meterRegistry, true, esperaMaxima);
+    }
+
+    private String consultaLenta() {
+        ejecuciones.incrementAndGet();
+        try {
+            liberar.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "resultado";
+    }
+
+    @Test
+    void compartir_lecturasIdenticasConcurrentes_deberianEjecutarUnaSolaConsulta() throws Exception {
+        ConsultasCompartidas consultas = consultas(Duration.ofSeconds(5));
+
+        // Diez terminales piden el mismo fiado mientras la primera consulta sigue en la base.
+        List<Future<String>> resultados = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            resultados.add(ejecutor.submit(() -> consultas.compartir("por-id", this::consultaLenta, 7L)));
+        }
+        esperarQueTodosEsperen(10);
+        liberar.countDown();
+
+        for (Future<String> resultado : resultados) {
+            assertEquals("resultado", resultado.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, ejecuciones.get(), "Solo una petición debería llegar a la base.");
+        assertEquals(1, contador("fiados.consultas.ejecutadas", "por-id"));
+        assertEquals(9, contador("fiados.consultas.agrupadas", "por-id"));
+    }
+
+    @Test
+    void compartir_conParametrosDistintos_noDeberiaAgruparlas() throws Exception {
+        ConsultasCompartidas consultas = consultas(Duration.ofSeconds(5));
+
+        Future<String> uno = ejecutor.submit(() -> consultas.compartir("por-id", this::consultaLenta, 1L));
+        Future<String> dos = ejecutor.submit(() -> consultas.compartir("por-id", this::consultaLenta, 2L));
+        // Un parámetro nulo (sin filtro de estado) también forma parte de la clave.
+        Future<String> tres = ejecutor.submit(() -> consultas.compartir("por-cliente", this::consultaLenta, "Ana", null));
+        esperarQueTodosEsperen(3);
+        liberar.countDown();
+
+        uno.get(5, TimeUnit.SECONDS);
+        dos.get(5, TimeUnit.SECONDS);
+        tres.get(5, TimeUnit.SECONDS);
+        assertEquals(3, ejecuciones.get());
+        assertEquals(0, contador("fiados.consultas.agrupadas", "por-id"));
+    }
+
+    @Test
+    void compartir_cuandoLaConsultaEnCursoTarda_deberiaConsultarPorSuCuentaAlVencerLaEspera() throws Exception {
+        // Espera propia de por-id más corta que la general.
+        environment.setProperty("fiados.consultas-compartidas.espera.por-id", "50ms");
+        ConsultasCompartidas consultas = consultas(Duration.ofSeconds(5));
+
+        Future<String> trabada = ejecutor.submit(() -> consultas.compartir("por-id", this::consultaLenta, 1L));
+        esperarQueTodosEsperen(1);
+
+        // La segunda petición no espera más de 50 ms y resuelve con su propia consulta.
+        String resultado = consultas.compartir("por-id", () -> "propio", 1L);
+
+        assertEquals("propio", resultado);
+        assertEquals(1, contador("fiados.consultas.vencidas", "por-id"));
+        liberar.countDown();
+        assertEquals("resultado", trabada.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void compartir_cuandoLaConsultaFalla_deberiaPropagarElErrorALasAgrupadas() throws Exception {
+        ConsultasCompartidas consultas = consultas(Duration.ofSeconds(5));
+
+        Future<String> primera = ejecutor.submit(() -> consultas.compartir("listar", () -> {
+            consultaLenta();
+            throw new IllegalStateException("base caída");
+        }));
+        esperarQueTodosEsperen(1);
+        Future<String> agrupada = ejecutor.submit(() -> consultas.compartir("listar", () -> "no debería ejecutarse"));
+        esperarQueTodosEsperen(2);
+        liberar.countDown();
+
+        Exception error = assertThrows(Exception.class, () -> agrupada.get(5, TimeUnit.SECONDS));
+        assertEquals("base caída", error.getCause().getMessage());
+        assertThrows(Exception.class, () -> primera.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void olvidarConsultas_despuesDeUnCambio_deberiaEmpezarUnaConsultaNueva() throws Exception {
+        ConsultasCompartidas consultas = consultas(Duration.ofSeconds(5));
+
+        Future<String> anterior = ejecutor.submit(() -> consultas.compartir("por-id", this::consultaLenta, 1L));
+        esperarQueTodosEsperen(1);
+
+        // Se confirma un cambio: la lectura siguiente no debe recibir lo leído antes del commit.
+        consultas.olvidarConsultas(new EventoFiado(EventoFiado.ACTUALIZADO, 1L, 2L, null));
+        String posterior = consultas.compartir("por-id", () -> "después del cambio", 1L);
+
+        assertEquals("después del cambio", posterior);
+        assertEquals(2, contador("fiados.consultas.ejecutadas", "por-id"));
+        liberar.countDown();
+        anterior.get(5, TimeUnit.SECONDS);
+    }
+
+    // Espera a que los hilos lanzados estén bloqueados, ya sea en la consulta o esperando su resultado.
+    private void esperarQueTodosEsperen(int cantidad) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < limite) {
+            long bloqueados = hilos.stream()
+                    .filter(hilo -> hilo.getState() == Thread.State.WAITING
+                            || hilo.getState() == Thread.State.TIMED_WAITING)
+                    .count();
+            if (hilos.size() >= cantidad && bloqueados >= cantidad) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("Los hilos no llegaron a esperar a tiempo.");
+    }
+
+    private double contador(String metrica, String consulta) {
+        var contador = meterRegistry.find(metrica).tag("consulta", consulta).counter();
+        return contador == null ? 0 : contador.count();
+    }
+}
@@ -0,0 +1,65 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba contra H2 el reintento fiado por fiado cuando falla el commit de un grupo: los
+ * fiados nuevos tienen que volver a darse de alta aunque saveAll ya les haya asignado id.
+ */
+@SpringBootTest(properties = {
+        "spring.cache.type=none",
+        "fiados.escritura-diferida.habilitada=true",
+        // Ventana amplia para que los dos fiados entren en el mismo grupo.
+        "fiados.escritura-diferida.tamano-grupo=2",
+        "fiados.escritura-diferida.espera-grupo=2s"
+})
+@ActiveProfiles("test")
+class EscrituraDiferidaFiadosIntegracionTest {
+
+    @Autowired
+    private EscrituraDiferidaFiados escrituraDiferida;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @BeforeEach
+    void setUp() {
+        fiadosRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void confirmar_cuandoUnaFilaHaceFallarElGrupo_deberiaGuardarLasDemas() throws Exception {
+        // --- ARRANGE ---
+        // nombre_cliente es VARCHAR(255): el segundo fiado hace fallar el commit del grupo.
+        FiadosModel bueno = fiado("Ana").crear();
+        FiadosModel malo = fiado("x".repeat(300)).crear();
+
+        // --- ACT ---
+        CompletableFuture<FiadosModel> futuroBueno = escrituraDiferida.encolar(bueno);
+        CompletableFuture<FiadosModel> futuroMalo = escrituraDiferida.encolar(malo);
+
+        // --- ASSERT ---
+        // Reintentado solo, el bueno se da de alta; el malo falla con su propio error.
+        FiadosModel guardado = futuroBueno.get(10, TimeUnit.SECONDS);
+        assertNotNull(guardado.getId());
+        assertEquals(0L, guardado.getVersion());
+        assertThrows(ExecutionException.class, () -> futuroMalo.get(10, TimeUnit.SECONDS));
+
+        assertEquals(1, fiadosRepository.count());
+        assertEquals("Ana", fiadosRepository.findById(guardado.getId()).orElseThrow().getNombreCliente());
+    }
+}
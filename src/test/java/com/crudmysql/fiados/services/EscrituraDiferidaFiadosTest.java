@@ -0,0 +1,149 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EscrituraDiferidaFiadosTest {
+
+    @Mock
+    private IFiadosRepository fiadosRepository;
+
+    @Mock
+    private ContadorCambiosFiados contadorCambios;
+
+    // Resúmenes simulados; guardando ejecuta la escritura que recibe.
+    @Mock
+    private ResumenesFiados resumenes;
+
+    // Con un administrador de transacciones simulado, TransactionTemplate solo ejecuta el bloque.
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EscrituraDiferidaFiados escritura;
+    private final AtomicLong siguienteId = new AtomicLong(1);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // saveAll asigna ids consecutivos, como haría el generador de la base.
+        when(fiadosRepository.saveAll(anyList())).thenAnswer(invocacion -> {
+            List<FiadosModel> fiados = invocacion.getArgument(0);
+            fiados.forEach(fiado -> fiado.setId(siguienteId.getAndIncrement()));
+            return fiados;
+        });
+        when(resumenes.guardando(anyList(), any())).thenAnswer(invocacion ->
+                invocacion.<UnaryOperator<List<FiadosModel>>>getArgument(1).apply(invocacion.getArgument(0)));
+        when(resumenes.guardando(any(FiadosModel.class), any())).thenAnswer(invocacion ->
+                invocacion.<UnaryOperator<FiadosModel>>getArgument(1).apply(invocacion.getArgument(0)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (escritura != null && escritura.isRunning()) {
+            escritura.stop();
+        }
+    }
+
+    @Test
+    void encolar_variosFiadosSeguidos_deberianConfirmarseEnUnSoloGrupo() throws Exception {
+        // --- ARRANGE ---
+        // Grupos de hasta 5 con una ventana amplia, para que los 5 fiados entren en el mismo commit.
+        escritura = crear(100, 5, Duration.ofSeconds(2));
+        escritura.start();
+
+        // --- ACT ---
+        List<CompletableFuture<FiadosModel>> futuros = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futuros.add(escritura.encolar(fiado("Cliente " + i).crear()));
+        }
+
+        // --- ASSERT ---
+        // Cada llamador recibe su fiado con el id generado, y hubo un único saveAll.
+        for (int i = 0; i < 5; i++) {
+            FiadosModel guardado = futuros.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("Cliente " + i, guardado.getNombreCliente());
+            assertNotNull(guardado.getId());
+        }
+        verify(fiadosRepository, times(1)).saveAll(anyList());
+        verify(transactionManager, times(1)).commit(any());
+        // La versión de la tabla sube una vez por grupo, dentro de la misma transacción.
+        verify(contadorCambios, times(1)).registrarCambio();
+    }
+
+    @Test
+    void encolar_cuandoLaColaEstaLlena_deberiaLanzarColaLlena() throws Exception {
+        // --- ARRANGE ---
+        // La base queda "trabada" en el primer commit y la cola solo admite un fiado más.
+        CountDownLatch dentroDelCommit = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        when(fiadosRepository.saveAll(anyList())).thenAnswer(invocacion -> {
+            dentroDelCommit.countDown();
+            liberar.await();
+            return invocacion.getArgument(0);
+        });
+        escritura = crear(1, 1, Duration.ZERO);
+        escritura.start();
+        CompletableFuture<FiadosModel> primero = escritura.encolar(fiado("Primero").crear());
+        assertTrue(dentroDelCommit.await(5, TimeUnit.SECONDS));
+        CompletableFuture<FiadosModel> segundo = escritura.encolar(fiado("Segundo").crear());
+
+        // --- ACT / ASSERT ---
+        // El tercero no tiene lugar y se rechaza en vez de esperar indefinidamente.
+        assertThrows(ColaLlenaException.class, () -> escritura.encolar(fiado("Tercero").crear()));
+
+        liberar.countDown();
+        assertNotNull(primero.get(5, TimeUnit.SECONDS));
+        assertNotNull(segundo.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stop_deberiaConfirmarTodoLoEncoladoAntesDeTerminar() throws Exception {
+        // --- ARRANGE ---
+        // Una ventana de grupo larga: sin el vaciado al detener, estos fiados seguirían esperando.
+        escritura = crear(100, 1000, Duration.ofSeconds(30));
+        escritura.start();
+        List<CompletableFuture<FiadosModel>> futuros = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futuros.add(escritura.encolar(fiado("Cliente " + i).crear()));
+        }
+
+        // --- ACT ---
+        Thread detener = Thread.ofVirtual().start(escritura::stop);
+
+        // --- ASSERT ---
+        // Todos los fiados aceptados quedan confirmados, y después de detenerse ya no se aceptan más.
+        for (CompletableFuture<FiadosModel> futuro : futuros) {
+            assertNotNull(futuro.get(40, TimeUnit.SECONDS).getId());
+        }
+        detener.join();
+        assertThrows(ColaLlenaException.class, () -> escritura.encolar(fiado("Tarde").crear()));
+    }
+
+    private EscrituraDiferidaFiados crear(int capacidad, int tamanoGrupo, Duration esperaGrupo) {
+        return new EscrituraDiferidaFiados(fiadosRepository, contadorCambios, resumenes,
+                new ShardsFiados(transactionManager), transactionManager, new SimpleMeterRegistry(),
+                capacidad, tamanoGrupo, esperaGrupo, Duration.ofMillis(50));
+    }
+}
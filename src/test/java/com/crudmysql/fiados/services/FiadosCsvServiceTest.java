@@ -0,0 +1,264 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.ResultadoImportacion;
+import com.crudmysql.fiados.models.ResultadoLote;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FiadosCsvServiceTest {
+
+    @Mock
+    private FiadosService fiadosService;
+
+    @Mock
+    private ShardsFiados shards;
+
+    @InjectMocks
+    private FiadosCsvService fiadosCsvService;
+
+    // Copia de cada bloque que llegó a guardarLoteSinAviso (el servicio reutiliza la lista entre bloques).
+    private final List<List<FiadosModel>> bloques = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Bloques de 2 filas para poder observar varias transacciones con pocos datos.
+        ReflectionTestUtils.setField(fiadosCsvService, "filasPorTransaccion", 2);
+        when(shards.shardParaEscribir(anyString())).thenReturn("principal");
+        when(fiadosService.guardarLoteSinAviso(anyList())).thenAnswer(invocacion -> {
+            List<FiadosModel> bloque = invocacion.getArgument(0);
+            bloques.add(new ArrayList<>(bloque));
+            return new ResultadoLote(List.of(), bloque.size(), 0, 0);
+        });
+    }
+
+    @Test
+    void importar_deberiaInsertarPorBloquesEInformarLineasInvalidas() throws Exception {
+        // --- ARRANGE ---
+        // Línea 3: monto inválido. Línea 5: fecha inválida. El resto es válido.
+        String csv = """
+                id,nombreCliente,monto,fecha,estado
+                1,Ana,100.50,2024-07-01,Pendiente
+                2,Beto,cien,2024-07-01,Pendiente
+                3,"Pérez, Carla",20.00,2024-07-02,Pagado
+                4,Dani,5.00,02/07/2024,Pendiente
+                5,Eva,7.25,2024-07-03,Pendiente
+                """;
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv));
+
+        // --- ASSERT ---
+        // Se insertaron las 3 líneas válidas, en un bloque de 2 y otro de 1.
+        assertEquals(3, resultado.insertadas());
+        assertEquals(6, resultado.lineasLeidas());
+        assertEquals(2, bloques.size());
+        assertEquals(2, bloques.get(0).size());
+        assertEquals("Pérez, Carla", bloques.get(0).get(1).getNombreCliente());
+        assertEquals(new BigDecimal("7.25"), bloques.get(1).get(0).getMonto());
+        // Las dos líneas malas quedaron informadas con su número.
+        assertEquals(List.of(3L, 5L), resultado.errores().stream().map(e -> e.linea()).toList());
+        // Un solo RECARGAR para toda la importación, no uno por bloque.
+        verify(fiadosService, times(1)).avisarRecarga();
+    }
+
+    @Test
+    void importar_cuandoFallaUnBloque_deberiaSeguirConLosDemas() throws Exception {
+        // --- ARRANGE ---
+        // El primer bloque falla en la base (por ejemplo, un valor demasiado largo); el segundo entra.
+        when(fiadosService.guardarLoteSinAviso(anyList()))
+                .thenThrow(new IllegalStateException("valor demasiado largo"))
+                .thenReturn(new ResultadoLote(List.of(3L), 1, 0, 0));
+        String csv = """
+                ,Ana,1.00,2024-07-01,Pendiente
+                ,Beto,2.00,2024-07-01,Pendiente
+                ,Carla,3.00,2024-07-01,Pendiente
+                """;
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv));
+
+        // --- ASSERT ---
+        assertEquals(1, resultado.insertadas());
+        // Cada fila del bloque deshecho queda informada con su línea.
+        assertEquals(List.of(1L, 2L), resultado.errores().stream().map(e -> e.linea()).toList());
+        assertTrue(resultado.errores().get(0).mensaje().contains("valor demasiado largo"));
+    }
+
+    @Test
+    void importar_conCamposEntreComillasEnVariasLineas_deberiaLeerLosRegistrosCompletos() throws Exception {
+        // --- ARRANGE ---
+        // El segundo registro ocupa las líneas 3 y 4; el último tiene comillas sin cerrar.
+        String csv = "id,nombreCliente,monto,fecha,estado\r\n"
+                + "1,Ana,1.00,2024-07-01,Pendiente\r\n"
+                + "2,\"Beto \"\"el\"\"\r\nde la esquina\",2.00,2024-07-01,Pendiente\r\n"
+                + "3,Carla,3.00,2024-07-01,Pendiente\r\n"
+                + "4,\"Dani,4.00,2024-07-01,Pendiente\n";
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv));
+
+        // --- ASSERT ---
+        assertEquals(3, resultado.insertadas());
+        assertEquals(6, resultado.lineasLeidas());
+        assertEquals("Beto \"el\"\r\nde la esquina", bloques.get(0).get(1).getNombreCliente());
+        assertEquals("Carla", bloques.get(1).get(0).getNombreCliente());
+        assertEquals(List.of(6L), resultado.errores().stream().map(e -> e.linea()).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportar_deberiaEscribirCabeceraYEscaparCampos() throws Exception {
+        // --- ARRANGE ---
+        FiadosModel fiado = new FiadosModel();
+        fiado.setId(7L);
+        fiado.setNombreCliente("Pérez, \"Carla\"");
+        fiado.setMonto(new BigDecimal("20.00"));
+        fiado.setFecha(LocalDate.of(2024, 7, 2));
+        fiado.setEstado("Pagado");
+        doAnswer(invocacion -> {
+            ((Consumer<FiadosModel>) invocacion.getArgument(0)).accept(fiado);
+            return null;
+        }).when(fiadosService).recorrerFiados(any(Consumer.class));
+        StringWriter salida = new StringWriter();
+
+        // --- ACT ---
+        fiadosCsvService.exportar(salida);
+
+        // --- ASSERT ---
+        assertEquals(FiadosCsvService.CABECERA + "\n7,\"Pérez, \"\"Carla\"\"\",20.00,2024-07-02,Pagado,principal\n",
+                salida.toString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportarEImportar_conSaltosDeLineaYComillas_deberiaConservarLosValores() throws Exception {
+        // --- ARRANGE ---
+        FiadosModel fiado = new FiadosModel();
+        fiado.setId(8L);
+        fiado.setNombreCliente("Kiosco \"La Esquina\",\nlocal 2");
+        fiado.setMonto(new BigDecimal("15.50"));
+        fiado.setFecha(LocalDate.of(2024, 7, 3));
+        fiado.setEstado("Pendiente");
+        fiado.setTienda("Sucursal \"Centro\", 2");
+        doAnswer(invocacion -> {
+            ((Consumer<FiadosModel>) invocacion.getArgument(0)).accept(fiado);
+            return null;
+        }).when(fiadosService).recorrerFiados(any(Consumer.class));
+        StringWriter salida = new StringWriter();
+        fiadosCsvService.exportar(salida);
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(salida.toString()));
+
+        // --- ASSERT ---
+        assertEquals(1, resultado.insertadas());
+        assertTrue(resultado.errores().isEmpty());
+        FiadosModel leido = bloques.get(0).get(0);
+        assertEquals(fiado.getNombreCliente(), leido.getNombreCliente());
+        assertEquals(fiado.getMonto(), leido.getMonto());
+        assertEquals(fiado.getFecha(), leido.getFecha());
+        assertEquals(fiado.getEstado(), leido.getEstado());
+        assertEquals(fiado.getTienda(), leido.getTienda());
+    }
+
+    @Test
+    void importar_conValoresQueNoEntranEnLasColumnas_deberiaInformarSoloEsasLineas() throws Exception {
+        // --- ARRANGE ---
+        // Línea 2: nombre de 300 caracteres. Línea 3: tienda de 65. Línea 4: monto fuera de DECIMAL(12,2).
+        String csv = ",Ana,1.00,2024-07-01,Pendiente\n"
+                + "," + "x".repeat(300) + ",2.00,2024-07-01,Pendiente\n"
+                + ",Beto,3.00,2024-07-01,Pendiente," + "t".repeat(65) + "\n"
+                + ",Carla,12345678901.00,2024-07-01,Pendiente\n"
+                + ",Dani,9999999999.99,2024-07-01,Pendiente\n";
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv));
+
+        // --- ASSERT ---
+        // Las filas válidas entran en sus bloques; ninguna se descarta por culpa de las otras.
+        assertEquals(2, resultado.insertadas());
+        assertEquals(List.of(2L, 3L, 4L), resultado.errores().stream().map(e -> e.linea()).toList());
+        assertEquals(List.of("Ana", "Dani"), bloques.stream().flatMap(List::stream)
+                .map(FiadosModel::getNombreCliente).toList());
+    }
+
+    @Test
+    void importar_conComillasSinCerrar_noDeberiaLeerElRestoDelArchivoEnUnCampo() throws Exception {
+        // --- ARRANGE ---
+        // La línea 2 abre comillas que nunca cierra; las líneas siguientes suman más que el límite.
+        StringBuilder csv = new StringBuilder(",Ana,1.00,2024-07-01,Pendiente\n,\"Beto,2.00,2024-07-01,Pendiente\n");
+        String relleno = "y".repeat(100) + "\n";
+        int lineasRelleno = FiadosCsvService.LARGO_MAXIMO_CAMPO / relleno.length() + 1;
+        csv.append(relleno.repeat(lineasRelleno));
+        csv.append(",Carla,3.00,2024-07-01,Pendiente\n");
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv.toString()));
+
+        // --- ASSERT ---
+        // Se informa el registro de la línea 2 y la lectura sigue después del límite.
+        assertEquals(2L, resultado.errores().get(0).linea());
+        assertTrue(resultado.errores().get(0).mensaje().contains("Campo de más de"));
+        assertEquals(List.of("Ana", "Carla"), bloques.stream().flatMap(List::stream)
+                .map(FiadosModel::getNombreCliente).toList());
+    }
+
+    @Test
+    void importar_sinColumnaTienda_deberiaUsarLaTiendaPrincipal() throws Exception {
+        // --- ACT ---
+        // Formato anterior a los shards: cinco columnas.
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader("""
+                id,nombreCliente,monto,fecha,estado
+                1,Ana,1.00,2024-07-01,Pendiente
+                """));
+
+        // --- ASSERT ---
+        assertEquals(1, resultado.insertadas());
+        assertEquals(FiadosModel.TIENDA_PRINCIPAL, bloques.get(0).get(0).getTienda());
+    }
+
+    @Test
+    void importar_cuandoFallaUnShard_deberiaInformarSoloSusFilas() throws Exception {
+        // --- ARRANGE ---
+        // La tienda "norte" está en otro shard, cuya transacción falla; la principal entra.
+        when(shards.shardParaEscribir("norte")).thenReturn("norte");
+        when(fiadosService.guardarLoteSinAviso(anyList())).thenAnswer(invocacion -> {
+            List<FiadosModel> bloque = invocacion.getArgument(0);
+            if (bloque.get(0).getTienda().equals("norte")) {
+                throw new IllegalStateException("shard norte caído");
+            }
+            return new ResultadoLote(List.of(), bloque.size(), 0, 0);
+        });
+        String csv = """
+                ,Ana,1.00,2024-07-01,Pendiente,principal
+                ,Beto,2.00,2024-07-01,Pendiente,norte
+                """;
+
+        // --- ACT ---
+        ResultadoImportacion resultado = fiadosCsvService.importar(new StringReader(csv));
+
+        // --- ASSERT ---
+        assertEquals(1, resultado.insertadas());
+        assertEquals(List.of(2L), resultado.errores().stream().map(e -> e.linea()).toList());
+        assertTrue(resultado.errores().get(0).mensaje().contains("shard norte caído"));
+    }
+}
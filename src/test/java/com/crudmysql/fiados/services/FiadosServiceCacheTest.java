@@ -0,0 +1,213 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.config.CacheConfig;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.repositories.IFiadoHistoricoRepository;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+import com.crudmysql.fiados.repositories.IVersionTablaRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Pruebas de la caché de obtenerPorId.
+ * A diferencia de FiadosServiceTest, aquí el servicio se crea dentro de un contexto de Spring
+ * para que las anotaciones @Cacheable, @CachePut y @CacheEvict realmente se apliquen.
+ * El repositorio sigue siendo un mock, lo que permite contar las idas a la base de datos.
+ */
+@SpringJUnitConfig
+class FiadosServiceCacheTest {
+
+    @Configuration
+    @Import({ CacheConfig.class, FiadosService.class, ContadorCambiosFiados.class, ConsultasCompartidas.class,
+            ShardsFiados.class })
+    static class Config {
+
+        // Misma especificación que en application.properties.
+        @Bean
+        CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager(CacheConfig.CACHE_FIADOS);
+            cacheManager.setCacheSpecification("maximumSize=10000,expireAfterWrite=5m,recordStats");
+            return cacheManager;
+        }
+
+        // Conversiones de Spring Boot (por ejemplo "2s" a Duration) para los @Value del contexto.
+        @Bean
+        static ConversionService conversionService() {
+            return ApplicationConversionService.getSharedInstance();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @MockitoBean
+    private IFiadosRepository fiadosRepository;
+
+    @MockitoBean
+    private IVersionTablaRepository versionTablaRepository;
+
+    @MockitoBean
+    private IFiadoHistoricoRepository historicoRepository;
+
+    // Resúmenes simulados; guardando ejecuta la escritura que recibe.
+    @MockitoBean
+    private ResumenesFiados resumenes;
+
+    // El servicio declara un EntityManager con @PersistenceContext; basta con una fábrica simulada.
+    @MockitoBean
+    private EntityManagerFactory entityManagerFactory;
+
+    // ConsultasCompartidas abre las lecturas con TransactionTemplate; simulado, solo ejecuta el bloque.
+    @MockitoBean
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private FiadosModel fiado1;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCache(CacheConfig.CACHE_FIADOS).clear();
+
+        fiado1 = new FiadosModel();
+        fiado1.setId(1L);
+        fiado1.setNombreCliente("Cliente 1");
+        fiado1.setEstado("Pendiente");
+        when(resumenes.guardando(any(FiadosModel.class), any())).thenAnswer(invocacion ->
+                invocacion.<UnaryOperator<FiadosModel>>getArgument(1).apply(invocacion.getArgument(0)));
+    }
+
+    @Test
+    void obtenerPorId_repetido_deberiaConsultarLaBaseUnaSolaVez() {
+        when(fiadosRepository.findById(1L)).thenReturn(Optional.of(fiado1));
+        // Las estadísticas se acumulan entre pruebas, por eso se mide la diferencia.
+        CacheStats antes = estadisticas();
+
+        // Diez lecturas del mismo fiado, como las pantallas de caja consultando al mismo cliente.
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Cliente 1", fiadosService.obtenerPorId(1L).getNombreCliente());
+        }
+
+        // Solo la primera lectura llegó al repositorio; las otras nueve salieron de la caché.
+        verify(fiadosRepository, times(1)).findById(1L);
+        CacheStats estadisticas = estadisticas().minus(antes);
+        assertEquals(9, estadisticas.hitCount(), "Deberían registrarse 9 aciertos.");
+        assertEquals(1, estadisticas.missCount(), "Debería registrarse 1 fallo.");
+    }
+
+    @Test
+    void obtenerPorId_cuandoNoExiste_noDeberiaGuardarseEnCache() {
+        when(fiadosRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertNull(fiadosService.obtenerPorId(99L));
+        assertNull(fiadosService.obtenerPorId(99L));
+
+        // Los resultados nulos no se guardan, así que cada lectura va a la base.
+        verify(fiadosRepository, times(2)).findById(99L);
+    }
+
+    @Test
+    void guardarFiado_deberiaActualizarLaCache() {
+        when(fiadosRepository.findById(1L)).thenReturn(Optional.of(fiado1));
+        fiadosService.obtenerPorId(1L);
+
+        // Se guarda una versión nueva del mismo fiado.
+        FiadosModel pagado = new FiadosModel();
+        pagado.setId(1L);
+        pagado.setNombreCliente("Cliente 1");
+        pagado.setEstado("Pagado");
+        pagado.setVersion(0L);
+        when(fiadosRepository.save(pagado)).thenReturn(pagado);
+        fiadosService.guardarFiado(pagado);
+
+        // La lectura siguiente ve el estado nuevo sin volver a la base.
+        assertEquals("Pagado", fiadosService.obtenerPorId(1L).getEstado());
+        verify(fiadosRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void eliminarFiado_deberiaInvalidarLaCache() {
+        when(fiadosRepository.findById(1L)).thenReturn(Optional.of(fiado1));
+        fiadosService.obtenerPorId(1L);
+
+        fiadosService.eliminarFiado(1L);
+        when(fiadosRepository.findById(1L)).thenReturn(Optional.empty());
+
+        // Después de eliminar, la lectura vuelve a la base y ya no encuentra el fiado.
+        assertNull(fiadosService.obtenerPorId(1L));
+        verify(fiadosRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void eliminarFiado_dentroDeUnaTransaccion_deberiaInvalidarLaCacheDespuesDelCommit() {
+        when(fiadosRepository.findById(1L)).thenReturn(Optional.of(fiado1));
+        fiadosService.obtenerPorId(1L);
+
+        // Simula la transacción que abriría el administrador real.
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            fiadosService.eliminarFiado(1L);
+
+            // Hasta el commit otra lectura todavía debe ver la fila confirmada, que sigue en la caché.
+            assertNotNull(cacheManager.getCache(CacheConfig.CACHE_FIADOS).get(1L));
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            assertNull(cacheManager.getCache(CacheConfig.CACHE_FIADOS).get(1L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void obtenerPorId_siSeEliminaMientrasLeeLaBase_noDeberiaGuardarLaFilaAnterior() {
+        // Otra terminal elimina el fiado (y lo desaloja) mientras este fallo de caché sigue en la base.
+        when(fiadosRepository.findById(1L)).thenAnswer(invocacion -> {
+            CompletableFuture.runAsync(() -> fiadosService.eliminarFiado(1L)).join();
+            return Optional.of(fiado1);
+        });
+
+        // La lectura en curso devuelve lo que leyó, pero no lo deja en la caché para las siguientes.
+        assertNotNull(fiadosService.obtenerPorId(1L));
+        assertNull(cacheManager.getCache(CacheConfig.CACHE_FIADOS).get(1L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheStats estadisticas() {
+        Cache<Object, Object> cache = (Cache<Object, Object>) cacheManager.getCache(CacheConfig.CACHE_FIADOS).getNativeCache();
+        return cache.stats();
+    }
+}
@@ -1,17 +1,37 @@
 package com.crudmysql.fiados.services;
 
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadoResumen;
 import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+import com.crudmysql.fiados.models.ResultadoLote;
 import com.crudmysql.fiados.repositories.IFiadosRepository;
 
+import jakarta.persistence.EntityManager;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,6 +44,26 @@ class FiadosServiceTest {
     @Mock
     private IFiadosRepository fiadosRepository;
 
+    // Escritura diferida simulada; solo se inyecta en las pruebas que la activan.
+    @Mock
+    private EscrituraDiferidaFiados escrituraDiferida;
+
+    // Contador de cambios simulado; registrando ejecuta la escritura que recibe.
+    @Mock
+    private ContadorCambiosFiados contadorCambios;
+
+    // Publicador de eventos simulado, para verificar qué se envía a /fiados/cambios.
+    @Mock
+    private ApplicationEventPublisher eventos;
+
+    // Resúmenes simulados; guardando ejecuta la escritura que recibe.
+    @Mock
+    private ResumenesFiados resumenes;
+
+    // EntityManager simulado, usado por el servicio para separar entidades al recorrer la tabla.
+    @Mock
+    private EntityManager entityManager;
+
     // @InjectMocks crea una instancia real de FiadosService e intenta inyectar
     // los mocks creados con @Mock (como fiadosRepository) en ella.
     @InjectMocks
@@ -39,21 +79,35 @@ class FiadosServiceTest {
     void setUp() {
         // Inicializa los mocks y las inyecciones para esta clase de prueba.
         MockitoAnnotations.openMocks(this);
+        // Por defecto la escritura diferida está desactivada, como en application.properties.
+        ReflectionTestUtils.setField(fiadosService, "escrituraDiferida", null);
+        // Consultas compartidas reales sobre un administrador de transacciones simulado:
+        // como las pruebas llaman de a una, cada lectura llega al repositorio.
+        ReflectionTestUtils.setField(fiadosService, "consultas", new ConsultasCompartidas(
+                mock(PlatformTransactionManager.class), new MockEnvironment(), new SimpleMeterRegistry(),
+                true, Duration.ofSeconds(2)));
+        // Un único shard: todo corre en el hilo de la prueba.
+        ReflectionTestUtils.setField(fiadosService, "shards", new ShardsFiados(mock(PlatformTransactionManager.class)));
+        when(contadorCambios.registrando(any())).thenAnswer(invocacion ->
+                invocacion.<java.util.function.Supplier<?>>getArgument(0).get());
+        when(resumenes.guardando(any(FiadosModel.class), any())).thenAnswer(invocacion ->
+                invocacion.<java.util.function.UnaryOperator<FiadosModel>>getArgument(1)
+                        .apply(invocacion.getArgument(0)));
 
         // Creamos un primer objeto FiadosModel de ejemplo.
         fiado1 = new FiadosModel();
         fiado1.setId(1L); // 'L' indica que es un número de tipo Long
         fiado1.setNombreCliente("Cliente 1");
-        fiado1.setMonto(100.0);
-        fiado1.setFecha("2024-07-30");
+        fiado1.setMonto(new BigDecimal("100.00"));
+        fiado1.setFecha(LocalDate.of(2024, 7, 30));
         fiado1.setEstado("Pendiente");
 
         // Creamos un segundo objeto FiadosModel de ejemplo.
         fiado2 = new FiadosModel();
         fiado2.setId(2L);
         fiado2.setNombreCliente("Cliente 2");
-        fiado2.setMonto(200.0);
-        fiado2.setFecha("2024-07-31");
+        fiado2.setMonto(new BigDecimal("200.00"));
+        fiado2.setFecha(LocalDate.of(2024, 7, 31));
         fiado2.setEstado("Pagado");
     }
 
@@ -164,46 +218,283 @@ class FiadosServiceTest {
     @Test
     void eliminarFiado_cuandoExisteId_deberiaRetornarTrue() {
         // --- ARRANGE ---
-        // 1. Configuramos el comportamiento del repositorio simulado para el método deleteById.
-        // Como deleteById devuelve void (nada), no usamos thenReturn().
-        // doNothing() especifica que no se debe lanzar ninguna excepción cuando se llame.
-        // "Cuando se llame al método deleteById() en fiadosRepository con el ID 1L, no hagas nada (simula éxito)".
-        doNothing().when(fiadosRepository).deleteById(1L);
+        // 1. Configuramos el repositorio simulado para que el DELETE afecte una fila.
+        // "Cuando se llame a eliminarPorId() con el ID 1L, devuelve 1 (una fila borrada)".
+        when(fiadosRepository.eliminarPorId(1L)).thenReturn(1);
 
         // --- ACT ---
         // 2. Llamamos al método del servicio que queremos probar.
         boolean resultadoEliminacion = fiadosService.eliminarFiado(1L);
 
         // --- ASSERT ---
-        // 3. Verificamos el resultado.
-        // Comprobamos que el método devolvió true, indicando que la eliminación fue (simuladamente) exitosa.
-        assertTrue(resultadoEliminacion, "La eliminación debería retornar true si tiene éxito.");
+        // 3. Comprobamos que el método devolvió true, porque se borró una fila.
+        assertTrue(resultadoEliminacion, "La eliminación debería retornar true si se borró el fiado.");
+
+        // 4. Verificamos que se usó el DELETE directo y no deleteById(), que carga la entidad antes de borrarla.
+        verify(fiadosRepository, times(1)).eliminarPorId(1L);
+        verify(fiadosRepository, never()).deleteById(anyLong());
+        // 5. La versión de la tabla sube, para que los listados cacheados por los clientes se invaliden,
+        // y se publica el evento para /fiados/cambios.
+        verify(contadorCambios, times(1)).registrarCambio();
+        verify(eventos).publishEvent(new EventoFiado(EventoFiado.ELIMINADO, 1L, null, null));
+    }
 
-        // 4. Verificamos que el método deleteById() del repositorio fue llamado exactamente una vez con el ID 1L.
-        verify(fiadosRepository, times(1)).deleteById(1L);
+    @Test
+    void eliminarFiado_cuandoNoExisteId_deberiaRetornarFalse() {
+        // --- ARRANGE ---
+        // 1. El DELETE no encuentra la fila: el repositorio devuelve 0 filas afectadas.
+        when(fiadosRepository.eliminarPorId(99L)).thenReturn(0);
+
+        // --- ACT ---
+        boolean resultadoEliminacion = fiadosService.eliminarFiado(99L);
+
+        // --- ASSERT ---
+        // 2. El servicio informa false a partir del conteo, sin necesidad de capturar excepciones.
+        assertFalse(resultadoEliminacion, "La eliminación debería retornar false si el fiado no existe.");
+        // 3. Nada cambió, así que la versión de la tabla tampoco.
+        verify(contadorCambios, never()).registrarCambio();
+    }
+
+    @Test
+    void eliminarFiado_cuandoOcurreExcepcion_deberiaPropagarla() {
+        // --- ARRANGE ---
+        // 1. Un fallo real de la base (por ejemplo, conexión perdida) ya no se oculta como "no existe".
+        when(fiadosRepository.eliminarPorId(1L)).thenThrow(new RuntimeException("Error al eliminar"));
+
+        // --- ACT / ASSERT ---
+        // 2. La excepción llega al llamador en vez de convertirse en false.
+        assertThrows(RuntimeException.class, () -> fiadosService.eliminarFiado(1L));
     }
 
     @Test
-    void eliminarFiado_cuandoOcurreExcepcion_deberiaRetornarFalse() {
+    void eliminarFiados_deberiaBorrarTodosEnUnaSolaSentencia() {
         // --- ARRANGE ---
-        // 1. Configuramos el comportamiento del repositorio simulado para que lance un error.
-        // "Cuando se llame al método deleteById() en fiadosRepository con el ID 1L,
-        // entonces lanza una nueva RuntimeException con el mensaje 'Error al eliminar'".
-        // Esto simula un problema durante la eliminación en la capa de persistencia.
-        doThrow(new RuntimeException("Error al eliminar")).when(fiadosRepository).deleteById(1L);
+        // De los tres ids pedidos solo existían dos.
+        when(fiadosRepository.bloquearPorIds(List.of(1L, 2L, 3L))).thenReturn(List.of(fiado1, fiado2));
+        when(fiadosRepository.eliminarPorIds(List.of(1L, 2L))).thenReturn(2);
 
         // --- ACT ---
-        // 2. Llamamos al método del servicio que queremos probar.
-        boolean resultadoEliminacion = fiadosService.eliminarFiado(1L);
+        int eliminados = fiadosService.eliminarFiados(List.of(1L, 2L, 3L));
 
         // --- ASSERT ---
-        // 3. Verificamos el resultado.
-        // Comprobamos que el método devolvió false, porque el servicio debería capturar la excepción
-        // y retornar false para indicar que la eliminación falló.
-        assertFalse(resultadoEliminacion, "La eliminación debería retornar false si ocurre una excepción.");
+        assertEquals(2, eliminados);
+        verify(fiadosRepository, times(1)).eliminarPorIds(List.of(1L, 2L));
+        // Solo los que existían generan un evento.
+        verify(eventos).publishEvent(new EventoFiado(EventoFiado.ELIMINADO, 1L, null, null));
+        verify(eventos).publishEvent(new EventoFiado(EventoFiado.ELIMINADO, 2L, null, null));
+        verify(eventos, never()).publishEvent(new EventoFiado(EventoFiado.ELIMINADO, 3L, null, null));
+    }
+
+    @Test
+    void eliminarFiados_cuandoNingunoExiste_noDeberiaBorrarNiPublicar() {
+        // --- ARRANGE ---
+        when(fiadosRepository.bloquearPorIds(List.of(7L, 8L))).thenReturn(List.of());
+
+        // --- ACT ---
+        int eliminados = fiadosService.eliminarFiados(List.of(7L, 8L));
+
+        // --- ASSERT ---
+        assertEquals(0, eliminados);
+        verify(fiadosRepository, never()).eliminarPorIds(any());
+        verify(eventos, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void eliminarFiados_conListaVacia_noDeberiaIrALaBase() {
+        assertEquals(0, fiadosService.eliminarFiados(List.of()));
+        verify(fiadosRepository, never()).eliminarPorIds(any());
+    }
+
+    @Test
+    void obtenerPagina_cuandoPaginaCompleta_deberiaRetornarCursorSiguiente() {
+        // --- ARRANGE ---
+        // El repositorio devuelve exactamente "limite" fiados, así que puede haber más.
+        when(fiadosRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2)))
+                .thenReturn(Arrays.asList(fiado1, fiado2));
+
+        // --- ACT ---
+        PaginaFiados pagina = fiadosService.obtenerPagina(0L, 2);
+
+        // --- ASSERT ---
+        // El cursor siguiente es el id del último fiado de la página.
+        assertEquals(2, pagina.fiados().size(), "La página debería contener 2 fiados.");
+        assertEquals(2L, pagina.siguienteCursor(), "El cursor debería ser el id del último fiado.");
+    }
+
+    @Test
+    void obtenerPagina_cuandoPaginaIncompleta_deberiaRetornarCursorNulo() {
+        // --- ARRANGE ---
+        // Se piden 10 pero solo quedan 2: es la última página.
+        when(fiadosRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(10)))
+                .thenReturn(Arrays.asList(fiado1, fiado2));
+
+        // --- ACT ---
+        PaginaFiados pagina = fiadosService.obtenerPagina(0L, 10);
+
+        // --- ASSERT ---
+        assertNull(pagina.siguienteCursor(), "En la última página el cursor debería ser nulo.");
+    }
+
+    @Test
+    void obtenerPagina_cuandoLimiteExcedeMaximo_deberiaAcotarlo() {
+        // --- ARRANGE ---
+        when(fiadosRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class)))
+                .thenReturn(List.of());
+
+        // --- ACT ---
+        fiadosService.obtenerPagina(5L, 1_000_000);
+
+        // --- ASSERT ---
+        // El servicio nunca debería pedir más filas que el máximo permitido.
+        verify(fiadosRepository).findByIdGreaterThanOrderByIdAsc(5L, Limit.of(FiadosService.LIMITE_MAXIMO_PAGINA));
+    }
+
+    @Test
+    void recorrerFiados_deberiaEntregarCadaFiadoYSepararlo() {
+        // --- ARRANGE ---
+        when(fiadosRepository.streamAll()).thenReturn(Stream.of(fiado1, fiado2));
+        List<FiadosModel> recibidos = new ArrayList<>();
+
+        // --- ACT ---
+        fiadosService.recorrerFiados(recibidos::add);
+
+        // --- ASSERT ---
+        // Se recibieron los dos fiados en orden y cada uno se separó del contexto de persistencia.
+        assertEquals(Arrays.asList(fiado1, fiado2), recibidos);
+        verify(entityManager).detach(fiado1);
+        verify(entityManager).detach(fiado2);
+    }
+
+    @Test
+    void guardarLote_deberiaRetornarIdsYVaciarContextoCadaLote() {
+        // --- ARRANGE ---
+        // Lotes de 2 filas para poder observar el flush/clear intermedio con solo 3 fiados.
+        ReflectionTestUtils.setField(fiadosService, "tamanoLote", 2);
+        long[] siguienteId = {10L};
+        // Simulamos que persist() asigna el id, como hace el generador por tabla.
+        doAnswer(invocacion -> {
+            FiadosModel fiado = invocacion.getArgument(0);
+            fiado.setId(siguienteId[0]++);
+            return null;
+        }).when(entityManager).persist(any(FiadosModel.class));
+        FiadosModel fiado3 = new FiadosModel();
+        fiado3.setNombreCliente("Cliente 3");
+
+        // --- ACT ---
+        ResultadoLote resultado = fiadosService.guardarLote(Arrays.asList(fiado1, fiado2, fiado3));
+
+        // --- ASSERT ---
+        // Los ids vuelven en el orden de entrada y se contaron las 3 filas.
+        assertEquals(Arrays.asList(10L, 11L, 12L), resultado.ids());
+        assertEquals(3, resultado.filas());
+        assertTrue(resultado.filasPorSegundo() > 0, "El rendimiento debería ser positivo.");
+        // Un flush/clear tras las 2 primeras filas y otro al final.
+        verify(entityManager, times(2)).flush();
+        verify(entityManager, times(2)).clear();
+    }
+
+    @Test
+    void obtenerPorFecha_conEstado_deberiaFiltrarEnLaBase() {
+        // --- ARRANGE ---
+        LocalDate desde = LocalDate.of(2024, 7, 1);
+        LocalDate hasta = LocalDate.of(2024, 7, 31);
+        FiadoResumen resumen1 = new FiadoResumen(1L, "Cliente 1", new BigDecimal("100.00"), null, "Pendiente");
+        when(fiadosRepository.findByEstadoAndFechaBetweenOrderByFechaAscIdAsc("Pendiente", desde, hasta, Limit.of(50)))
+                .thenReturn(List.of(resumen1));
+
+        // --- ACT ---
+        List<FiadoResumen> resultado = fiadosService.obtenerPorFecha(desde, hasta, "Pendiente", 50);
+
+        // --- ASSERT ---
+        // Se usó la consulta con estado y nunca se trajo la tabla completa.
+        assertEquals(List.of(resumen1), resultado);
+        verify(fiadosRepository, never()).findAll();
+        verify(fiadosRepository, never()).findByFechaBetweenOrderByFechaAscIdAsc(any(), any(), any());
+    }
+
+    @Test
+    void sumarMonto_deberiaRetornarLaSumaCalculadaPorLaBase() {
+        // --- ARRANGE ---
+        LocalDate desde = LocalDate.of(2024, 7, 1);
+        LocalDate hasta = LocalDate.of(2024, 7, 31);
+        when(fiadosRepository.sumarMonto(null, desde, hasta)).thenReturn(new BigDecimal("300.00"));
+
+        // --- ACT ---
+        BigDecimal total = fiadosService.sumarMonto(desde, hasta, null);
+
+        // --- ASSERT ---
+        assertEquals(new BigDecimal("300.00"), total);
+    }
+
+    @Test
+    void obtenerPorCliente_sinEstado_deberiaUsarLaConsultaPorCliente() {
+        // --- ARRANGE ---
+        FiadoResumen resumen1 = new FiadoResumen(1L, "Cliente 1", new BigDecimal("100.00"), null, "Pendiente");
+        when(fiadosRepository.findByNombreClienteOrderByIdAsc("Cliente 1", Limit.of(100)))
+                .thenReturn(List.of(resumen1));
+
+        // --- ACT ---
+        List<FiadoResumen> resultado = fiadosService.obtenerPorCliente("Cliente 1", null, 100);
+
+        // --- ASSERT ---
+        assertEquals(List.of(resumen1), resultado);
+        verify(fiadosRepository, never()).findByNombreClienteAndEstadoOrderByIdAsc(any(), any(), any());
+    }
+
+    @Test
+    void guardarFiado_conEscrituraDiferida_deberiaEsperarElCommitDelGrupo() {
+        // --- ARRANGE ---
+        // Con la escritura diferida activa, el fiado pasa por la cola y no por save().
+        ReflectionTestUtils.setField(fiadosService, "escrituraDiferida", escrituraDiferida);
+        when(escrituraDiferida.encolar(fiado2)).thenReturn(CompletableFuture.completedFuture(fiado2));
+
+        // --- ACT ---
+        FiadosModel guardado = fiadosService.guardarFiado(fiado2);
+
+        // --- ASSERT ---
+        assertSame(fiado2, guardado);
+        verify(fiadosRepository, never()).save(any(FiadosModel.class));
+    }
+
+    @Test
+    void guardarFiado_conIdYSinVersion_deberiaUsarLaVersionActual() {
+        // --- ARRANGE ---
+        // Un cliente antiguo actualiza el fiado 1 sin enviar la versión; en la base va por la 3.
+        when(fiadosRepository.buscarVersion(1L)).thenReturn(Optional.of(3L));
+        when(fiadosRepository.save(fiado1)).thenReturn(fiado1);
+
+        // --- ACT ---
+        fiadosService.guardarFiado(fiado1);
+
+        // --- ASSERT ---
+        // Se guarda sobre la versión actual, como antes de existir la columna,
+        // y la versión de la tabla se registra en la misma transacción que el guardado.
+        assertEquals(3L, fiado1.getVersion());
+        verify(fiadosRepository).save(fiado1);
+        verify(contadorCambios).registrando(any());
+    }
+
+    @Test
+    void guardarFiado_conIdInexistenteYSinVersion_deberiaDarDeAlta() {
+        when(fiadosRepository.buscarVersion(1L)).thenReturn(Optional.empty());
+        when(fiadosRepository.save(fiado1)).thenReturn(fiado1);
+
+        fiadosService.guardarFiado(fiado1);
+
+        // Sin fila que actualizar, el fiado se guarda como alta con un id nuevo del generador.
+        assertNull(fiado1.getId());
+        assertNull(fiado1.getVersion());
+    }
+
+    @Test
+    void guardarFiado_nuevo_deberiaPublicarEventoCreado() {
+        FiadosModel nuevo = new FiadosModel();
+        nuevo.setNombreCliente("Cliente 3");
+        when(fiadosRepository.save(nuevo)).thenReturn(fiado1);
+
+        fiadosService.guardarFiado(nuevo);
 
-        // 4. Verificamos que el método deleteById() del repositorio fue llamado exactamente una vez con el ID 1L,
-        // incluso aunque haya lanzado una excepción.
-        verify(fiadosRepository, times(1)).deleteById(1L);
+        // El evento lleva el fiado ya guardado, con su id.
+        verify(eventos).publishEvent(new EventoFiado(EventoFiado.CREADO, 1L, null, fiado1));
     }
 }
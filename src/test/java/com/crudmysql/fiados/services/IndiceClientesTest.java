@@ -0,0 +1,167 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.ClienteEncontrado;
+import com.crudmysql.fiados.models.EventoFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndiceClientesTest {
+
+    @Mock
+    private FiadosService fiadosService;
+
+    // Fiados que devuelve el recorrido de la tabla al construir el índice.
+    private final List<FiadosModel> tabla = new ArrayList<>();
+
+    private IndiceClientes indice;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        doAnswer(invocacion -> {
+            Consumer<FiadosModel> consumidor = invocacion.getArgument(0);
+            tabla.forEach(consumidor);
+            return null;
+        }).when(fiadosService).recorrerFiadosEnPrimaria(any());
+        // Cada actualización se aplica en el mismo hilo, así las pruebas no esperan al hilo del índice.
+        indice = new IndiceClientes(fiadosService, new SimpleMeterRegistry(), Runnable::run);
+    }
+
+    private List<String> nombres(String texto) {
+        return indice.buscar(texto, 10).stream().map(ClienteEncontrado::nombreCliente).toList();
+    }
+
+    @Test
+    void buscar_antesDeConstruir_noDeberiaEncontrarNada() {
+        tabla.add(fiado("José Pérez").id(1).monto("100.00").crear());
+
+        assertFalse(indice.listo());
+        assertTrue(indice.buscar("jose", 10).isEmpty());
+    }
+
+    @Test
+    void buscar_deberiaIgnorarTildesYMayusculas() {
+        tabla.add(fiado("José Pérez").id(1).monto("100.00").crear());
+        tabla.add(fiado("Ana Gómez").id(2).monto("50.00").crear());
+        indice.construir();
+
+        assertTrue(indice.listo());
+        assertEquals(List.of("José Pérez"), nombres("JOSE"));
+        assertEquals(List.of("José Pérez"), nombres("pér"));
+        assertEquals(List.of("Ana Gómez"), nombres("gomez"));
+    }
+
+    @Test
+    void buscar_deberiaEncontrarTextoEnMedioDeUnaPalabra() {
+        tabla.add(fiado("Martina Rodríguez").id(1).monto("10.00").crear());
+        tabla.add(fiado("Rodrigo Paz").id(2).monto("10.00").crear());
+        indice.construir();
+
+        // "igue" no es el comienzo de ninguna palabra: lo encuentran los trigramas.
+        assertEquals(List.of("Martina Rodríguez"), nombres("igue"));
+        // Con varias palabras, todas tienen que coincidir.
+        assertEquals(List.of("Rodrigo Paz"), nombres("rod pa"));
+    }
+
+    @Test
+    void buscar_deberiaOrdenarPorCoincidenciaYDespuesPorSaldo() {
+        tabla.add(fiado("Ana María Luna").id(1).monto("10.00").crear());
+        tabla.add(fiado("Luna").id(2).monto("5.00").crear());
+        tabla.add(fiado("Lunares Díaz").id(3).monto("20.00").crear());
+        tabla.add(fiado("Paula Luna").id(4).monto("90.00").crear());
+        tabla.add(fiado("Salunaje").id(5).monto("99.00").crear());
+        indice.construir();
+
+        // Nombre idéntico, después el que empieza igual, después por palabra (mayor saldo primero)
+        // y al final el que solo lo contiene.
+        assertEquals(List.of("Luna", "Lunares Díaz", "Paula Luna", "Ana María Luna", "Salunaje"), nombres("luna"));
+        assertEquals(2, indice.buscar("luna", 2).size());
+    }
+
+    @Test
+    void buscar_deberiaSumarSoloLosFiadosPendientes() {
+        tabla.add(fiado("José Pérez").id(1).monto("100.00").crear());
+        tabla.add(fiado("José Pérez").id(2).monto("40.50").crear());
+        tabla.add(fiado("José Pérez").id(3).monto("999.00").estado(FiadosModel.ESTADO_PAGADO).crear());
+        indice.construir();
+
+        ClienteEncontrado cliente = indice.buscar("perez", 10).get(0);
+        assertEquals(new BigDecimal("140.50"), cliente.saldoPendiente());
+        assertEquals(2, cliente.fiadosPendientes());
+        assertEquals(3, cliente.fiados());
+    }
+
+    @Test
+    void actualizar_deberiaMantenerElSaldoConCadaCambio() {
+        tabla.add(fiado("José Pérez").id(1).monto("100.00").crear());
+        indice.construir();
+
+        // Alta de otro fiado del mismo cliente.
+        indice.actualizar(new EventoFiado(EventoFiado.CREADO, 2L, 0L,
+                fiado("José Pérez").id(2).monto("30.00").crear()));
+        assertEquals(new BigDecimal("130.00"), indice.buscar("jose", 1).get(0).saldoPendiente());
+
+        // Se paga el primero desde /guardar: el evento trae el fiado completo.
+        indice.actualizar(new EventoFiado(EventoFiado.ACTUALIZADO, 1L, 1L,
+                fiado("José Pérez").id(1).monto("100.00").estado(FiadosModel.ESTADO_PAGADO).crear()));
+        assertEquals(new BigDecimal("30.00"), indice.buscar("jose", 1).get(0).saldoPendiente());
+
+        // PATCH: el evento no trae el fiado y se lee de la base.
+        when(fiadosService.leerPorId(2L)).thenReturn(fiado("José Pérez").id(2).monto("45.00").crear());
+        indice.actualizar(new EventoFiado(EventoFiado.ACTUALIZADO, 2L, 1L, null));
+        assertEquals(new BigDecimal("45.00"), indice.buscar("jose", 1).get(0).saldoPendiente());
+    }
+
+    @Test
+    void actualizar_cambioDeNombre_deberiaMoverElFiadoDeCliente() {
+        tabla.add(fiado("Jose Perez").id(1).monto("100.00").crear());
+        indice.construir();
+
+        indice.actualizar(new EventoFiado(EventoFiado.ACTUALIZADO, 1L, 1L,
+                fiado("José Pérez Ruiz").id(1).monto("100.00").crear()));
+
+        assertEquals(List.of("José Pérez Ruiz"), nombres("perez"));
+        assertTrue(nombres("ruiz").contains("José Pérez Ruiz"));
+    }
+
+    @Test
+    void actualizar_eliminadoYArchivado_deberianQuitarAlClienteSinFiados() {
+        tabla.add(fiado("José Pérez").id(1).monto("100.00").crear());
+        tabla.add(fiado("Ana Gómez").id(2).monto("50.00").estado(FiadosModel.ESTADO_PAGADO).crear());
+        indice.construir();
+
+        indice.actualizar(new EventoFiado(EventoFiado.ELIMINADO, 1L, null, null));
+        indice.actualizar(new EventoFiado(EventoFiado.ARCHIVADO, 2L, null, null));
+
+        assertTrue(nombres("jose").isEmpty());
+        assertTrue(nombres("ana").isEmpty());
+    }
+
+    @Test
+    void actualizar_recargar_deberiaReconstruirDesdeLaTabla() {
+        indice.construir();
+        assertTrue(nombres("ana").isEmpty());
+
+        // Un lote insertó fiados que no llegaron como eventos individuales.
+        tabla.add(fiado("Ana Gómez").id(1).monto("50.00").crear());
+        indice.actualizar(EventoFiado.recargar());
+
+        assertEquals(List.of("Ana Gómez"), nombres("ana"));
+        verify(fiadosService, times(2)).recorrerFiadosEnPrimaria(any());
+    }
+}
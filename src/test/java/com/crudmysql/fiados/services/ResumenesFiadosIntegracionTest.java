@@ -0,0 +1,220 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.ResultadoVerificacion;
+import com.crudmysql.fiados.models.SaldoClienteModel;
+import com.crudmysql.fiados.models.TotalDiarioModel;
+import com.crudmysql.fiados.repositories.IFiadoHistoricoRepository;
+import com.crudmysql.fiados.repositories.IFiadosRepository;
+import com.crudmysql.fiados.repositories.ISaldoClienteRepository;
+import com.crudmysql.fiados.repositories.ITotalDiarioRepository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba contra H2 que saldos_clientes y totales_diarios acompañan cada escritura de fiados
+ * y que la verificación encuentra y corrige las diferencias, con bloques de 2 clientes para
+ * recorrer varios bloques.
+ */
+@SpringBootTest(properties = {
+        "spring.cache.type=none",
+        "fiados.resumenes.verificacion.cron=-",
+        "fiados.resumenes.verificacion.clientes-por-bloque=2",
+        "fiados.resumenes.verificacion.dias-por-bloque=2"
+})
+@ActiveProfiles("test")
+class ResumenesFiadosIntegracionTest {
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private ResumenesFiados resumenes;
+
+    @Autowired
+    private VerificacionResumenes verificacion;
+
+    @Autowired
+    private IFiadosRepository fiadosRepository;
+
+    @Autowired
+    private IFiadoHistoricoRepository historicoRepository;
+
+    @Autowired
+    private ISaldoClienteRepository saldosRepository;
+
+    @Autowired
+    private ITotalDiarioRepository totalesRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final LocalDate dia1 = LocalDate.of(2024, 7, 1);
+    private final LocalDate dia2 = LocalDate.of(2024, 7, 2);
+
+    @BeforeEach
+    void setUp() {
+        fiadosRepository.deleteAllInBatch();
+        historicoRepository.deleteAllInBatch();
+        saldosRepository.deleteAllInBatch();
+        totalesRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void escrituras_deberianMantenerLosResumenesAlDia() {
+        FiadosModel ana1 = fiadosService.guardarFiado(fiado("Ana").monto("10.00").fecha(dia1).crear());
+        fiadosService.guardarFiado(fiado("Ana").monto("5.50").fecha(dia2).crear());
+        FiadosModel luis = fiadosService.guardarFiado(fiado("Luis").monto("7.00").fecha(dia1).crear());
+
+        assertSaldo("Ana", FiadosModel.ESTADO_PENDIENTE, "15.50", 2);
+        assertTotal(dia1, "17.00", 2);
+
+        // PATCH: cambia el monto y el día de un fiado de Ana.
+        fiadosService.actualizarFiado(ana1.getId(), new CambiosFiado(null, new BigDecimal("12.00"), dia2, null, null));
+        assertSaldo("Ana", FiadosModel.ESTADO_PENDIENTE, "17.50", 2);
+        assertTotal(dia1, "7.00", 1);
+        assertTotal(dia2, "17.50", 2);
+
+        // Ana paga todo: el saldo pasa de Pendiente a Pagado y los días no cambian.
+        assertEquals(2, fiadosService.marcarPagados("Ana"));
+        assertEquals(List.of(FiadosModel.ESTADO_PAGADO),
+                resumenes.saldosDeCliente("Ana").stream().map(SaldoClienteModel::getEstado).toList());
+        assertSaldo("Ana", FiadosModel.ESTADO_PAGADO, "17.50", 2);
+
+        // /guardar sobre un fiado existente mueve su saldo al cliente nuevo.
+        FiadosModel renombrado = fiadosRepository.findById(luis.getId()).orElseThrow();
+        renombrado.setNombreCliente("Luisa");
+        fiadosService.guardarFiado(renombrado);
+        assertTrue(resumenes.saldosDeCliente("Luis").isEmpty());
+        assertSaldo("Luisa", FiadosModel.ESTADO_PENDIENTE, "7.00", 1);
+
+        assertTrue(fiadosService.eliminarFiado(luis.getId()));
+        assertTrue(resumenes.saldosDeCliente("Luisa").isEmpty());
+        assertEquals(List.of(dia2),
+                resumenes.totalesDiarios(dia1, dia2).stream().map(TotalDiarioModel::getFecha).toList());
+
+        // Después de todo eso, la verificación no encuentra nada que corregir.
+        ResultadoVerificacion resultado = verificacion.verificar(false);
+        assertEquals(0, resultado.saldosDistintos());
+        assertEquals(0, resultado.diasDistintos());
+    }
+
+    @Test
+    void guardarLote_deberiaSumarTodosLosFiados() {
+        fiadosService.guardarLote(List.of(
+                fiado("Ana").monto("1.00").fecha(dia1).crear(),
+                fiado("Ana").monto("2.00").fecha(dia1).crear(),
+                fiado("Beto").monto("4.00").fecha(dia2).crear()));
+
+        assertSaldo("Ana", FiadosModel.ESTADO_PENDIENTE, "3.00", 2);
+        assertEquals(List.of("Ana", "Beto"), resumenes.saldosPorEstado(FiadosModel.ESTADO_PENDIENTE, 10).stream()
+                .map(SaldoClienteModel::getNombreCliente).sorted().toList());
+        // De mayor a menor saldo y con el límite pedido.
+        assertEquals("Beto", resumenes.saldosPorEstado(FiadosModel.ESTADO_PENDIENTE, 1).get(0).getNombreCliente());
+        assertTotal(dia2, "4.00", 1);
+    }
+
+    @Test
+    void verificar_conCorregir_deberiaReconstruirLosResumenesPorBloques() {
+        for (String cliente : List.of("Ana", "Beto", "Carla", "Dario", "Elena")) {
+            fiadosService.guardarFiado(fiado(cliente).monto("4.00").fecha(dia1).crear());
+        }
+        fiadosService.guardarFiado(fiado(null).monto("1.00").fecha(dia2).crear());
+        fiadosService.guardarFiado(fiado("Beto").monto("6.00").estado(FiadosModel.ESTADO_PAGADO).fecha(dia1.plusDays(3))
+                .crear());
+        // Se pierden los resúmenes y queda una fila de un cliente que ya no tiene fiados.
+        saldosRepository.deleteAllInBatch();
+        totalesRepository.deleteAllInBatch();
+        new TransactionTemplate(transactionManager).executeWithoutResult(estado ->
+                saldosRepository.sumar("Zoe", FiadosModel.ESTADO_PENDIENTE, new BigDecimal("9.00"), 1));
+
+        ResultadoVerificacion resultado = verificacion.verificar(true);
+
+        // 6 saldos de clientes más el de Zoe y 3 días; varios bloques en cada tabla.
+        assertEquals(8, resultado.saldosDistintos());
+        assertEquals(3, resultado.diasDistintos());
+        assertTrue(resultado.bloques() > 3);
+        assertSaldo("Beto", FiadosModel.ESTADO_PAGADO, "6.00", 1);
+        assertSaldo("", FiadosModel.ESTADO_PENDIENTE, "1.00", 1);
+        assertTrue(resumenes.saldosDeCliente("Zoe").isEmpty());
+        assertTotal(dia1, "20.00", 5);
+
+        ResultadoVerificacion otra = verificacion.verificar(false);
+        assertEquals(0, otra.saldosDistintos());
+        assertEquals(0, otra.diasDistintos());
+    }
+
+    @Test
+    void verificar_mientrasOtraEjecucionCorrige_noDeberiaAplicarDosVecesLaDiferencia() throws Exception {
+        fiadosService.guardarFiado(fiado("Ana").monto("4.00").fecha(dia1).crear());
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        transaccion.executeWithoutResult(estado ->
+                saldosRepository.sumar("Ana", FiadosModel.ESTADO_PENDIENTE, new BigDecimal("5.00"), 1));
+
+        // Otra instancia tiene el bloqueo y corrige la diferencia mientras esta verificación espera.
+        AtomicReference<ResultadoVerificacion> segunda = new AtomicReference<>();
+        Thread otra = new Thread(() -> segunda.set(verificacion.verificar(true)));
+        transaccion.executeWithoutResult(estado -> {
+            saldosRepository.bloquearVerificacion().orElseThrow();
+            saldosRepository.sumar("Ana", FiadosModel.ESTADO_PENDIENTE, new BigDecimal("-5.00"), -1);
+            otra.start();
+            esperarBloqueada();
+        });
+        otra.join(TimeUnit.SECONDS.toMillis(10));
+
+        // La segunda compara después del commit de la primera: no queda nada por corregir.
+        assertEquals(0, segunda.get().saldosDistintos());
+        assertSaldo("Ana", FiadosModel.ESTADO_PENDIENTE, "4.00", 1);
+    }
+
+    // Espera a que alguna sesión de H2 quede esperando un bloqueo de fila; el estado del hilo no sirve
+    // para esto porque H2 no lo deja en WAITING mientras espera la fila.
+    private void esperarBloqueada() {
+        JdbcTemplate base = new JdbcTemplate(dataSource);
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < limite) {
+            Integer bloqueadas = base.queryForObject(
+                    "select count(*) from information_schema.sessions where blocker_id is not null", Integer.class);
+            if (bloqueadas != null && bloqueadas > 0) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        fail("La verificación no llegó a esperar el bloqueo.");
+    }
+
+    private void assertSaldo(String cliente, String estado, String monto, long cantidad) {
+        SaldoClienteModel saldo = resumenes.saldosDeCliente(cliente).stream()
+                .filter(s -> s.getEstado().equals(estado)).findFirst().orElseThrow();
+        assertEquals(0, new BigDecimal(monto).compareTo(saldo.getMonto()), cliente + " " + estado);
+        assertEquals(cantidad, saldo.getCantidad());
+    }
+
+    private void assertTotal(LocalDate fecha, String monto, long cantidad) {
+        TotalDiarioModel total = resumenes.totalesDiarios(fecha, fecha).get(0);
+        assertEquals(0, new BigDecimal(monto).compareTo(total.getMonto()), fecha.toString());
+        assertEquals(cantidad, total.getCantidad());
+    }
+}
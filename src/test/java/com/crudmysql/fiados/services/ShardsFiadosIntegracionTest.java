@@ -0,0 +1,178 @@
+package com.crudmysql.fiados.services;
+
+import com.crudmysql.fiados.config.ShardsDataSource;
+import com.crudmysql.fiados.config.ShardsDataSourceConfig;
+import com.crudmysql.fiados.models.CambiosFiado;
+import com.crudmysql.fiados.models.FiadosModel;
+import com.crudmysql.fiados.models.PaginaFiados;
+import com.crudmysql.fiados.models.ResultadoMovimiento;
+import com.crudmysql.fiados.models.SaldoClienteModel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.crudmysql.fiados.models.FiadoPrueba.fiado;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba el reparto por tienda con dos bases H2 en memoria: "principal" (spring.datasource, que
+ * guarda además el directorio de tiendas) y "norte". Cada prueba empieza con las dos vacías.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard-principal;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "fiados.shards.habilitados=true",
+        "fiados.shards.nodos[0].nombre=norte",
+        "fiados.shards.nodos[0].url=jdbc:h2:mem:shard-norte;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "fiados.shards.espera-congelado=0s",
+        "fiados.shards.bloque-movimiento=2",
+        // El directorio se recarga a mano desde la prueba.
+        "fiados.shards.intervalo-directorio=1h",
+        "fiados.resumenes.verificacion.cron=-",
+        "spring.cache.type=none"
+})
+@ActiveProfiles("test")
+class ShardsFiadosIntegracionTest {
+
+    @Autowired
+    private FiadosService fiadosService;
+
+    @Autowired
+    private ResumenesFiados resumenes;
+
+    @Autowired
+    private ShardsFiados shards;
+
+    @Autowired
+    private ShardsDataSource dataSource;
+
+    @Autowired
+    private MovimientoTiendas movimientoTiendas;
+
+    @BeforeEach
+    void setUp() {
+        for (String shard : shards.nombres()) {
+            JdbcTemplate base = base(shard);
+            for (String tabla : List.of("fiados", "fiados_historico", "saldos_clientes", "totales_diarios",
+                    "tiendas_shards")) {
+                base.update("DELETE FROM " + tabla);
+            }
+        }
+        shards.recargarDirectorio();
+    }
+
+    @Test
+    void cadaTiendaDeberiaGuardarseEnSuShardYLosListadosVerTodos() {
+        // 20 tiendas alcanzan para que el anillo use los dos shards.
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(fiadosService.guardarFiado(fiado("Ana").tienda("tienda-" + i).crear()).getId());
+        }
+
+        for (int i = 0; i < 20; i++) {
+            String tienda = "tienda-" + i;
+            assertEquals(1, contar(shards.shardDe(tienda), tienda), tienda);
+        }
+        assertTrue(contar(ShardsDataSource.PRINCIPAL, null) > 0);
+        assertTrue(contar("norte", null) > 0);
+        // Los ids de norte salen de su propio tramo.
+        assertTrue(base("norte").queryForObject("SELECT MIN(id) FROM fiados", Long.class)
+                >= ShardsDataSourceConfig.IDS_POR_SHARD);
+
+        assertEquals(20, fiadosService.obtenerFiados().size());
+        assertEquals(20, fiadosService.obtenerPorCliente("Ana", null, 50).size());
+        PaginaFiados primera = fiadosService.obtenerPagina(null, 15);
+        PaginaFiados segunda = fiadosService.obtenerPagina(primera.siguienteCursor(), 15);
+        List<Long> paginados = new ArrayList<>(primera.fiados().stream().map(FiadosModel::getId).toList());
+        paginados.addAll(segunda.fiados().stream().map(FiadosModel::getId).toList());
+        assertEquals(ids.stream().sorted().toList(), paginados);
+        assertEquals(new BigDecimal("200.00"), resumenes.saldosDeCliente("Ana").get(0).getMonto());
+    }
+
+    @Test
+    void actualizarYEliminar_deberianEncontrarElFiadoEnCualquierShard() {
+        String tienda = tiendaEn("norte");
+        FiadosModel guardado = fiadosService.guardarFiado(fiado("Beto").tienda(tienda).crear());
+
+        assertEquals(1L, fiadosService.actualizarFiado(guardado.getId(),
+                new CambiosFiado(null, new BigDecimal("25.00"), null, null, 0L)));
+        assertEquals(new BigDecimal("25.00"), fiadosService.obtenerPorId(guardado.getId()).getMonto());
+
+        assertTrue(fiadosService.eliminarFiado(guardado.getId()));
+        assertEquals(0, contar("norte", tienda));
+        assertTrue(resumenes.saldosDeCliente("Beto").stream()
+                .allMatch(saldo -> saldo.getMonto().signum() == 0 && saldo.getCantidad() == 0));
+    }
+
+    @Test
+    void moverTienda_deberiaLlevarFiadosYResumenesAlDestino() {
+        String tienda = tiendaEn(ShardsDataSource.PRINCIPAL);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(fiadosService.guardarFiado(fiado("Carla").tienda(tienda).crear()).getId());
+        }
+
+        ResultadoMovimiento resultado = movimientoTiendas.mover(tienda, "norte");
+
+        assertEquals(5, resultado.fiados());
+        assertEquals("norte", shards.shardDe(tienda));
+        assertEquals(0, contar(ShardsDataSource.PRINCIPAL, tienda));
+        assertEquals(5, contar("norte", tienda));
+        // Los resúmenes se movieron con la tienda: el total combinado no cambia.
+        List<SaldoClienteModel> saldos = resumenes.saldosDeCliente("Carla");
+        assertEquals(1, saldos.size());
+        assertEquals(new BigDecimal("50.00"), saldos.get(0).getMonto());
+        assertEquals(5, saldos.get(0).getCantidad());
+        assertEquals(0, base(ShardsDataSource.PRINCIPAL).queryForObject(
+                "SELECT COUNT(*) FROM saldos_clientes WHERE nombre_cliente = 'Carla' AND cantidad <> 0", Integer.class));
+
+        // Los mismos ids siguen sirviendo y las escrituras nuevas van al destino.
+        assertTrue(fiadosService.eliminarFiado(ids.get(0)));
+        fiadosService.guardarFiado(fiado("Carla").tienda(tienda).crear());
+        assertEquals(5, contar("norte", tienda));
+        assertEquals(5, fiadosService.obtenerPorCliente("Carla", null, 50).size());
+    }
+
+    @Test
+    void tiendaEnMovimiento_deberiaRechazarEscrituras() {
+        String tienda = tiendaEn("norte");
+        FiadosModel guardado = fiadosService.guardarFiado(fiado("Dora").tienda(tienda).crear());
+        shards.asignar(tienda, "norte", true);
+
+        assertThrows(TiendaEnMovimientoException.class,
+                () -> fiadosService.guardarFiado(fiado("Dora").tienda(tienda).crear()));
+        assertThrows(TiendaEnMovimientoException.class, () -> fiadosService.actualizarFiado(guardado.getId(),
+                new CambiosFiado("Otra", null, null, null, null)));
+        // Las lecturas siguen funcionando.
+        assertEquals(1, fiadosService.obtenerPorCliente("Dora", null, 10).size());
+
+        shards.asignar(tienda, "norte", false);
+        assertNotNull(fiadosService.guardarFiado(fiado("Dora").tienda(tienda).crear()).getId());
+    }
+
+    // Primera tienda que el anillo ubica en el shard.
+    private String tiendaEn(String shard) {
+        for (int i = 0; ; i++) {
+            if (shards.shardDe("tienda-" + i).equals(shard)) {
+                return "tienda-" + i;
+            }
+        }
+    }
+
+    private int contar(String shard, String tienda) {
+        return tienda == null
+                ? base(shard).queryForObject("SELECT COUNT(*) FROM fiados", Integer.class)
+                : base(shard).queryForObject("SELECT COUNT(*) FROM fiados WHERE tienda = ?", Integer.class, tienda);
+    }
+
+    private JdbcTemplate base(String shard) {
+        return new JdbcTemplate(dataSource.dataSource(shard));
+    }
+}